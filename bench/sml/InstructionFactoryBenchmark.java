@@ -0,0 +1,35 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+import sml.exceptions.FailedToLoadAppConfigException;
+import sml.exceptions.InstructionParseFailedException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating an instruction from a line through the reflective InstructionFactory.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionFactoryBenchmark {
+    @Param({"L0 add 1 2 3", "L0 lin 1 42", "L0 out 1", "L0 bnz 1 L0"})
+    public String line;
+
+    private InstructionFactory instructionFactory;
+
+    @Setup
+    public void setUp() throws FailedToLoadAppConfigException {
+        instructionFactory = new InstructionFactory(AppConfig.getInstance());
+    }
+
+    @Benchmark
+    public Instruction createInstruction() throws InstructionParseFailedException {
+        return instructionFactory.createInstruction(Line.of(line));
+    }
+}
@@ -0,0 +1,52 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+import sml.exceptions.DuplicateLabelException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of Labels.indexOf as the number of labels grows.
+ * The cost of a lookup should not depend on the size of the table, apart from cache effects once
+ * the table no longer fits in the CPU caches.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelsBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"100", "10000", "1000000"})
+    public int labelCount;
+
+    private Labels labels;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws DuplicateLabelException {
+        labels = new Labels();
+        var names = new String[labelCount];
+        for (int i = 0; i < labelCount; i++) {
+            names[i] = "L" + i;
+            labels.addLabel(names[i]);
+        }
+        var random = new Random(42);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = new String(names[random.nextInt(labelCount)]);
+        }
+    }
+
+    @Benchmark
+    public int indexOf() {
+        next = (next + 1) & (QUERIES - 1);
+        return labels.indexOf(queries[next]);
+    }
+}
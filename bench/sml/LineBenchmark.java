@@ -0,0 +1,39 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tokenizing a line: creating it, which scans the label and op code, and scanning its operands.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark {
+    private final String addLine = "L12345 add 10 11 12";
+    private final String bnzLine = "  L12345\tbnz  20   f3  ";
+
+    @Benchmark
+    public Line of() {
+        return Line.of(addLine);
+    }
+
+    @Benchmark
+    public int scanIntOperands() {
+        var line = Line.of(addLine);
+        return line.scanInt() + line.scanInt() + line.scanInt();
+    }
+
+    @Benchmark
+    public String scanOperandsWithWhitespace() {
+        var line = Line.of(bnzLine);
+        line.scanInt();
+        return line.scan();
+    }
+}
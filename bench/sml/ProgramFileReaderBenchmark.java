@@ -0,0 +1,77 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading every line of a large generated program file with java.util.Scanner, which the Translator
+ * used to read files with, and with the memory-mapped ProgramFileReader, decoding each line into a String or reading
+ * it in place.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramFileReaderBenchmark {
+    @Param({"1000000"})
+    public int lines;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("benchmark", ".sml");
+        ProgramGenerator.writeMixedProgram(file, lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public long scanner() throws IOException {
+        long length = 0;
+        try (var scanner = new Scanner(new File(file.toString()), StandardCharsets.UTF_8)) {
+            while (scanner.hasNextLine()) {
+                length += scanner.nextLine().length();
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public long programFileReader() throws IOException {
+        long length = 0;
+        try (var reader = new ProgramFileReader(file.toString())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                length += line.length();
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public long programFileReaderInPlace() throws IOException {
+        long length = 0;
+        try (var reader = new ProgramFileReader(file.toString())) {
+            CharSequence line;
+            while ((line = reader.readLineInPlace()) != null) {
+                length += line.length();
+            }
+        }
+        return length;
+    }
+}
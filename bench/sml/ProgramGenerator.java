@@ -0,0 +1,101 @@
+package sml;
+
+import sml.exceptions.UnknownLabelException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates SML program files for the benchmarks.
+ *
+ * @author Marton Vago
+ */
+public final class ProgramGenerator {
+    private ProgramGenerator() { }
+
+    /**
+     * Write a program of the given number of lines cycling through every instruction of the language.
+     * Every bnz refers to a label a few instructions back, so the program contains many label references.
+     * Register 30 is never written, so no branch is taken if the program is executed.
+     *
+     * @param file the file to write
+     * @param lines the number of lines
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeMixedProgram(Path file, int lines) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                var label = "L" + i;
+                var r = i % 16;
+                switch (i % 8) {
+                    case 0 -> writer.write(label + " lin " + r + " " + i);
+                    case 1 -> writer.write(label + " add " + r + " " + (r + 1) + " " + (r + 2));
+                    case 2 -> writer.write(label + " sub " + r + " " + (r + 1) + " " + (r + 2));
+                    case 3 -> writer.write(label + " mul " + r + " " + (r + 1) + " " + (r + 2));
+                    case 4 -> writer.write(label + " lin 31 7");
+                    case 5 -> writer.write(label + " div " + r + " " + (r + 1) + " 31");
+                    case 6 -> writer.write(label + " bnz 30 L" + (i - 5));
+                    default -> writer.write(label + " out 30");
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Write the loop of sample-files/test2.sml, without its final out, running for the given number of iterations.
+     *
+     * @param file the file to write
+     * @param iterations the number of times the loop body is executed
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeLoopProgram(Path file, int iterations) throws IOException {
+        Files.writeString(file, String.join(System.lineSeparator(),
+                "f0 lin 20 " + iterations,
+                "f1 lin 21 1",
+                "f2 lin 22 1",
+                "f3 mul 21 21 20",
+                "f4 sub 20 20 22",
+                "f5 bnz 20 f3"
+        ), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a loop printing its counter, from the given number of iterations down to 1.
+     *
+     * @param file the file to write
+     * @param iterations the number of values printed
+     * @throws IOException if the file cannot be written
+     */
+    public static void writePrintingLoopProgram(Path file, int iterations) throws IOException {
+        Files.writeString(file, String.join(System.lineSeparator(),
+                "f0 lin 20 " + iterations,
+                "f1 lin 22 1",
+                "f2 out 20",
+                "f3 sub 20 20 22",
+                "f4 bnz 20 f2"
+        ), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Translate and link the program in the given file.
+     *
+     * @param file the program file
+     * @return a machine holding the program
+     */
+    public static Machine load(Path file) {
+        var machine = new Machine();
+        if (!new Translator(file.toString()).readAndTranslate(machine.getLabels(), machine.getProg())) {
+            throw new IllegalStateException("Could not translate " + file);
+        }
+        try {
+            machine.link();
+        } catch (UnknownLabelException e) {
+            throw new IllegalStateException(e);
+        }
+        return machine;
+    }
+}
@@ -0,0 +1,81 @@
+package sml;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading generated program files: translating them, line by line or in parallel, and linking the result,
+ * or loading their compiled form.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TranslatorBenchmark {
+    @Param({"10000", "1000000"})
+    public int lines;
+
+    private Path file;
+    private Path compiledFile;
+    private Machine translated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("benchmark", ".sml");
+        ProgramGenerator.writeMixedProgram(file, lines);
+        translated = ProgramGenerator.load(file);
+        compiledFile = Files.createTempFile("benchmark", BinaryProgramFormat.EXTENSION);
+        if (!BinaryProgramWriter.write(translated, compiledFile)) {
+            throw new IllegalStateException("Could not compile " + file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+        Files.delete(compiledFile);
+    }
+
+    @Benchmark
+    public List<Instruction> readAndTranslate() {
+        var labels = new Labels();
+        var instructions = new ArrayList<Instruction>();
+        if (!new Translator(file.toString()).readAndTranslate(labels, instructions)) {
+            throw new IllegalStateException("Could not translate " + file);
+        }
+        return instructions;
+    }
+
+    @Benchmark
+    public List<Instruction> readAndTranslateInParallel() {
+        var labels = new Labels();
+        var instructions = new ArrayList<Instruction>();
+        if (!new Translator(file.toString()).readAndTranslateInParallel(labels, instructions)) {
+            throw new IllegalStateException("Could not translate " + file);
+        }
+        return instructions;
+    }
+
+    @Benchmark
+    public Machine readBinary() throws Exception {
+        var m = new Machine();
+        BinaryProgramReader.read(compiledFile, m);
+        return m;
+    }
+
+    @Benchmark
+    public Machine link() throws Exception {
+        translated.link();
+        return translated;
+    }
+}
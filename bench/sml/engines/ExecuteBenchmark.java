@@ -0,0 +1,45 @@
+package sml.engines;
+
+import org.openjdk.jmh.annotations.*;
+import sml.AppConfig;
+import sml.Machine;
+import sml.ProgramGenerator;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures executing the loop of sample-files/test2.sml, scaled up to a million iterations, with every engine.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+    private static final int ITERATIONS = 1_000_000;
+
+    @Param({"interpreter", "switch", "compiled", "tiered", "tracing"})
+    public String engine;
+
+    private Machine machine;
+    private Executable executable;
+
+    @Setup
+    public void setUp() throws Exception {
+        var file = Files.createTempFile("loop", ".sml");
+        ProgramGenerator.writeLoopProgram(file, ITERATIONS);
+        machine = ProgramGenerator.load(file);
+        Files.delete(file);
+        executable = new EngineFactory(AppConfig.getInstance()).createEngine(engine).prepare(machine.getProg());
+    }
+
+    @Benchmark
+    public Machine execute() {
+        executable.execute(machine);
+        return machine;
+    }
+}
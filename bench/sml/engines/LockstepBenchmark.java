@@ -0,0 +1,80 @@
+package sml.engines;
+
+import org.openjdk.jmh.annotations.*;
+import sml.AppConfig;
+import sml.ExecutionLimits;
+import sml.Machine;
+import sml.Program;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures executing one program over a chunk of register sets, either in lockstep by a LockstepBatch or one set
+ * after another on the switch engine. The program sums the numbers from register 1 down to 1 and divides the sum by
+ * register 3; the sets start register 1 at 100 to 115, so that their loops end after different numbers of iterations.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockstepBenchmark {
+    @Param({"1024"})
+    public int sets;
+
+    private List<int[]> initialRegisters;
+    private LockstepBatch batch;
+    private Machine machine;
+    private Executable executable;
+
+    @Setup
+    public void setUp() throws Exception {
+        var program = Program.of(List.of(
+                new LinInstruction("f0", 4, 1),
+                new AddInstruction("f1", 2, 2, 1),
+                new SubInstruction("f2", 1, 1, 4),
+                new BnzInstruction("f3", 1, "f1"),
+                new DivInstruction("f4", 5, 2, 3)
+        ));
+        initialRegisters = new ArrayList<>(sets);
+        for (int i = 0; i < sets; i++) {
+            var registers = new int[Registers.NUMBER_OF_REGISTERS];
+            registers[1] = 100 + i % 16;
+            registers[3] = 1 + i % 7;
+            initialRegisters.add(registers);
+        }
+        batch = new LockstepBatch(program);
+        machine = new Machine(program);
+        executable = new EngineFactory(AppConfig.getInstance()).createEngine("switch").prepare(program.getInstructions());
+    }
+
+    @Benchmark
+    public int lockstep() {
+        return batch.execute(initialRegisters).size();
+    }
+
+    @Benchmark
+    public int switchEnginePerSet() {
+        var sum = 0;
+        for (var values : initialRegisters) {
+            var registers = new Registers();
+            registers.setRegisters(values);
+            machine.setRegisters(registers);
+            machine.setPc(0);
+            executable.resume(machine, ExecutionLimits.NONE);
+            sum += machine.getRegisters().getRegister(5);
+        }
+        return sum;
+    }
+}
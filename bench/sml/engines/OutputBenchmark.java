@@ -0,0 +1,65 @@
+package sml.engines;
+
+import org.openjdk.jmh.annotations.*;
+import sml.AppConfig;
+import sml.BufferedOutputSink;
+import sml.ConsoleOutputSink;
+import sml.Machine;
+import sml.ProgramGenerator;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures executing a loop which prints on every iteration, with output going to a PrintStream which discards it,
+ * either line by line through the console sink or in batches through a buffered sink.
+ *
+ * @author Marton Vago
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    private static final int ITERATIONS = 100_000;
+
+    @Param({"interpreter", "compiled"})
+    public String engine;
+
+    @Param({"console", "buffered"})
+    public String sink;
+
+    private PrintStream originalOut;
+    private Machine machine;
+    private Executable executable;
+
+    @Setup
+    public void setUp() throws Exception {
+        originalOut = System.out;
+        // Flush on every line, as System.out does on a console
+        var out = new PrintStream(OutputStream.nullOutputStream(), true);
+        System.setOut(out);
+
+        var file = Files.createTempFile("print", ".sml");
+        ProgramGenerator.writePrintingLoopProgram(file, ITERATIONS);
+        machine = ProgramGenerator.load(file);
+        Files.delete(file);
+        machine.setOutput(sink.equals("buffered") ? new BufferedOutputSink(out) : new ConsoleOutputSink());
+        executable = new EngineFactory(AppConfig.getInstance()).createEngine(engine).prepare(machine.getProg());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public Machine execute() {
+        executable.execute(machine);
+        return machine;
+    }
+}
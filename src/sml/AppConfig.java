@@ -7,12 +7,12 @@ import java.io.InputStream;
 import java.util.Properties;
 
 /**
- * AppConfig is a singleton instruction mapper. It contains the properties defined in the config.properties file.
- * These properties map op codes to the (names of the) classes which implement them.
+ * AppConfig is a singleton instruction and engine mapper. It contains the properties defined in the config.properties
+ * file. These properties map op codes and engine names to the (names of the) classes which implement them.
  *
  * @author Marton Vago
  */
-public class AppConfig implements InstructionMapper {
+public class AppConfig implements InstructionMapper, EngineMapper {
     /**
      * The single config instance
      */
@@ -33,6 +33,11 @@ public class AppConfig implements InstructionMapper {
      */
     public static final String INSTRUCTION_KEY_PREFIX = "sml.instructions.";
 
+    /**
+     * The prefix of the keys for execution engines in the properties file
+     */
+    public static final String ENGINE_KEY_PREFIX = "sml.engines.";
+
     /**
      * Constructor:
      * Instantiate the singleton instance by reading in the mappings defined in the properties file.
@@ -53,7 +58,7 @@ public class AppConfig implements InstructionMapper {
      * @return the instance
      * @throws FailedToLoadAppConfigException if the properties file cannot be loaded
      */
-    public static AppConfig getInstance() throws FailedToLoadAppConfigException {
+    public static synchronized AppConfig getInstance() throws FailedToLoadAppConfigException {
         if (instance == null) {
             instance = new AppConfig();
         }
@@ -72,4 +77,17 @@ public class AppConfig implements InstructionMapper {
         String key = INSTRUCTION_KEY_PREFIX + opCode;
         return properties.getProperty(key);
     }
+
+    /**
+     * Return the name of the class which implements the engine with the given name, or null if no mapping was found
+     * for the name. The class name is defined in the properties file.
+     *
+     * @param engineName the name of the engine
+     * @return the name of the corresponding class
+     */
+    @Override
+    public String getClassNameForEngine(String engineName) {
+        String key = ENGINE_KEY_PREFIX + engineName;
+        return properties.getProperty(key);
+    }
 }
@@ -0,0 +1,47 @@
+package sml;
+
+import java.util.List;
+
+/**
+ * A BatchReport holds the results of a batch of programs, in the order in which the programs were given,
+ * together with the throughput of the batch.
+ *
+ * @param results the result of each execution
+ * @param loadNanos the time spent translating and linking the distinct programs of the batch
+ * @param executeNanos the time spent executing the batch, from the first execution starting to the last one ending
+ * @param threads the number of threads the programs were executed on
+ * @author Marton Vago
+ */
+public record BatchReport(List<BatchResult> results, long loadNanos, long executeNanos, int threads) {
+    /**
+     * Return the number of programs which ran to their end.
+     *
+     * @return the number of successful executions
+     */
+    public long succeeded() {
+        return results.stream().filter(BatchResult::succeeded).count();
+    }
+
+    /**
+     * Return the number of executed programs per second of execution time.
+     *
+     * @return the throughput
+     */
+    public double programsPerSecond() {
+        return executeNanos == 0 ? 0 : results.size() * 1e9 / executeNanos;
+    }
+
+    /**
+     * Return a summary of the batch, e.g. "12 programs (11 succeeded, 1 failed) on 4 threads: loaded in 3.1 ms,
+     * executed in 20.4 ms, 588.2 programs/s".
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("%d programs (%d succeeded, %d failed) on %d threads: loaded in %.1f ms, "
+                        + "executed in %.1f ms, %.1f programs/s",
+                results.size(), succeeded(), results.size() - succeeded(), threads,
+                loadNanos / 1e6, executeNanos / 1e6, programsPerSecond());
+    }
+}
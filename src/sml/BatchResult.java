@@ -0,0 +1,24 @@
+package sml;
+
+import java.nio.file.Path;
+
+/**
+ * A BatchResult describes one execution of a program by the BatchRunner.
+ *
+ * @param file the program file
+ * @param registers the registers at program termination, or null if the program could not be run
+ * @param output everything the program printed
+ * @param error the reason the program could not be loaded or failed while running, or null if it succeeded
+ * @param nanos the time the execution took, excluding loading the program
+ * @author Marton Vago
+ */
+public record BatchResult(Path file, Registers registers, String output, String error, long nanos) {
+    /**
+     * Return true if the program was loaded and ran to its end.
+     *
+     * @return if the program succeeded
+     */
+    public boolean succeeded() {
+        return error == null;
+    }
+}
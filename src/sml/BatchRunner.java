@@ -0,0 +1,331 @@
+package sml;
+
+import sml.engines.Engine;
+import sml.engines.EngineFactory;
+import sml.engines.Executable;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.EngineCreationFailedException;
+import sml.exceptions.FailedToLoadAppConfigException;
+import sml.exceptions.UnknownLabelException;
+import sml.exceptions.VerificationFailedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * BatchRunner executes many independent program files in parallel on a fixed pool of threads.
+ * <p>
+ * Each distinct file is translated into an immutable Program, which is verified and prepared by the engine once,
+ * even if it appears in the batch several times. Every execution then runs the shared program on a Machine of its own,
+ * which only holds the registers, program counter and output of that execution. Programs come from a ProgramCache, so files which
+ * have not changed are not translated again by later batches.
+ *
+ * @author Marton Vago
+ */
+public final class BatchRunner {
+    /**
+     * The command line option selecting the execution engine
+     */
+    private static final String ENGINE_OPTION = "--engine=";
+
+    /**
+     * The command line option setting the number of threads
+     */
+    private static final String THREADS_OPTION = "--threads=";
+
+    /**
+     * The command line option setting the directory of compiled programs
+     */
+    private static final String CACHE_OPTION = "--cache-dir=";
+
+    /**
+     * The command line option setting the number of instructions each program may execute
+     */
+    private static final String MAX_STEPS_OPTION = "--max-steps=";
+
+    /**
+     * The command line option setting the time in milliseconds each program may run for
+     */
+    private static final String TIMEOUT_OPTION = "--timeout=";
+
+    /**
+     * The number of programs a runner keeps in memory by default
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    /**
+     * The extension of the program files collected from directories
+     */
+    private static final String EXTENSION = ".sml";
+
+    private final Engine engine;
+    private final int threads;
+    private final ProgramCache cache;
+    private final ExecutionLimits limits;
+
+    /**
+     * Construct a runner executing programs with the given engine on the given number of threads,
+     * keeping the programs in a cache of the default capacity.
+     *
+     * @param engine the engine executing the programs
+     * @param threads the number of threads
+     */
+    public BatchRunner(Engine engine, int threads) {
+        this(engine, threads, new ProgramCache(DEFAULT_CACHE_CAPACITY));
+    }
+
+    /**
+     * Construct a runner executing programs with the given engine on the given number of threads,
+     * taking the programs from the given cache.
+     *
+     * @param engine the engine executing the programs
+     * @param threads the number of threads
+     * @param cache the cache of programs
+     */
+    public BatchRunner(Engine engine, int threads, ProgramCache cache) {
+        this(engine, threads, cache, ExecutionLimits.NONE);
+    }
+
+    /**
+     * Construct a runner executing programs with the given engine on the given number of threads,
+     * taking the programs from the given cache and stopping each execution which exceeds the given limits.
+     *
+     * @param engine the engine executing the programs
+     * @param threads the number of threads
+     * @param cache the cache of programs
+     * @param limits the limits of each execution
+     */
+    public BatchRunner(Engine engine, int threads, ProgramCache cache, ExecutionLimits limits) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required, but the number of threads was " + threads);
+        }
+        this.engine = engine;
+        this.threads = threads;
+        this.cache = cache;
+        this.limits = limits;
+    }
+
+    /**
+     * Load and execute the given program files.
+     * Programs which cannot be loaded, which fail while running or which exceed their limits are reported in
+     * their result.
+     *
+     * @param files the program files, in the order of the results
+     * @return the report of the batch
+     * @throws InterruptedException if the thread is interrupted while waiting for the programs
+     */
+    public BatchReport run(List<Path> files) throws InterruptedException {
+        var pool = Executors.newFixedThreadPool(threads);
+        try {
+            var loadStart = System.nanoTime();
+            var loading = new HashMap<Path, Future<LoadedProgram>>();
+            for (var file : files) {
+                loading.computeIfAbsent(key(file), key -> pool.submit(() -> load(key)));
+            }
+            var programs = new HashMap<Path, LoadedProgram>();
+            for (Map.Entry<Path, Future<LoadedProgram>> entry : loading.entrySet()) {
+                programs.put(entry.getKey(), await(entry.getValue()));
+            }
+            var loadNanos = System.nanoTime() - loadStart;
+
+            var executeStart = System.nanoTime();
+            var executions = new ArrayList<Future<BatchResult>>(files.size());
+            for (var file : files) {
+                var program = programs.get(key(file));
+                executions.add(pool.submit(() -> execute(file, program)));
+            }
+            var results = new ArrayList<BatchResult>(files.size());
+            for (var execution : executions) {
+                results.add(await(execution));
+            }
+            return new BatchReport(results, loadNanos, System.nanoTime() - executeStart, threads);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Load the program in the given file from the cache and prepare it.
+     */
+    private LoadedProgram load(Path file) {
+        Program program;
+        try {
+            program = cache.get(file);
+        } catch (IOException ex) {
+            return new LoadedProgram(null, null, "Could not read program file: " + ex.getMessage());
+        } catch (DuplicateLabelException | UnknownLabelException ex) {
+            return new LoadedProgram(null, null, "Could not link program: " + ex.getMessage());
+        }
+        if (program == null) {
+            return new LoadedProgram(null, null, "Could not parse program file.");
+        }
+        try {
+            var verified = VerifiedProgram.verify(program.getInstructions());
+            return new LoadedProgram(program, engine.prepare(verified), null);
+        } catch (VerificationFailedException ex) {
+            return new LoadedProgram(null, null, "Could not verify program: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Execute the loaded program on a Machine of its own.
+     */
+    private BatchResult execute(Path file, LoadedProgram program) {
+        if (program.error() != null) {
+            return new BatchResult(file, null, "", program.error(), 0);
+        }
+
+        var m = new Machine(program.program());
+        var output = new ByteArrayOutputStream();
+        m.setOutput(new BufferedOutputSink(output));
+
+        String error = null;
+        var start = System.nanoTime();
+        try {
+            if (limits == ExecutionLimits.NONE) {
+                // Not every engine checks limits, so executions without limits keep to the unchecked path
+                program.executable().execute(m);
+            } else {
+                var result = program.executable().execute(m, limits);
+                if (!result.completed()) {
+                    error = "Program stopped at instruction " + m.getPc() + " after " + result.steps() + " steps: "
+                            + result.status();
+                }
+            }
+        } catch (RuntimeException ex) {
+            error = "Program failed at instruction " + (m.getPc() - 1) + ": " + ex;
+        }
+        var nanos = System.nanoTime() - start;
+        return new BatchResult(file, m.getRegisters(), output.toString(), error, nanos);
+    }
+
+    /**
+     * Wait for the task, which reports its own failures, and rethrow anything it did not expect.
+     */
+    private static <T> T await(Future<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Return the given files, replacing each directory by the program files directly inside it, sorted by name.
+     *
+     * @param paths the files and directories
+     * @return the program files
+     * @throws IOException if a directory cannot be listed
+     */
+    public static List<Path> collectFiles(List<Path> paths) throws IOException {
+        var files = new ArrayList<Path>();
+        for (var path : paths) {
+            if (Files.isDirectory(path)) {
+                try (var entries = Files.list(path)) {
+                    files.addAll(entries
+                            .filter(entry -> entry.getFileName().toString().endsWith(EXTENSION) && Files.isRegularFile(entry))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Executes a batch of programs and prints the output and registers of each, followed by a summary.
+     *
+     * @param args the program files and directories of program files, optionally preceded by --engine=name to
+     *             select the execution engine, by --threads=n to set the number of threads, which defaults to
+     *             the number of processors, by --cache-dir=directory to keep the compiled programs in a
+     *             directory between runs, and by --max-steps=n and --timeout=milliseconds to stop programs
+     *             which run for too long.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        var engineName = EngineFactory.DEFAULT_ENGINE;
+        var threads = Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = null;
+        var limits = ExecutionLimits.NONE;
+        var validLimits = true;
+        var paths = new ArrayList<Path>();
+        for (var arg : args) {
+            if (arg.startsWith(ENGINE_OPTION)) {
+                engineName = arg.substring(ENGINE_OPTION.length());
+            } else if (arg.startsWith(THREADS_OPTION)) {
+                try {
+                    threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+                } catch (NumberFormatException ex) {
+                    threads = 0;
+                }
+            } else if (arg.startsWith(CACHE_OPTION)) {
+                cacheDirectory = Path.of(arg.substring(CACHE_OPTION.length()));
+            } else if (arg.startsWith(MAX_STEPS_OPTION)) {
+                try {
+                    limits = limits.withMaxSteps(Long.parseLong(arg.substring(MAX_STEPS_OPTION.length())));
+                } catch (IllegalArgumentException ex) {
+                    validLimits = false;
+                }
+            } else if (arg.startsWith(TIMEOUT_OPTION)) {
+                try {
+                    limits = limits.withTimeout(Duration.ofMillis(Long.parseLong(arg.substring(TIMEOUT_OPTION.length()))));
+                } catch (IllegalArgumentException ex) {
+                    validLimits = false;
+                }
+            } else {
+                paths.add(Path.of(arg));
+            }
+        }
+        if (paths.isEmpty() || threads < 1 || !validLimits) {
+            System.err.println("Incorrect arguments - BatchRunner [" + ENGINE_OPTION + "<engine>] ["
+                    + THREADS_OPTION + "<n>] [" + CACHE_OPTION + "<directory>] [" + MAX_STEPS_OPTION + "<n>] ["
+                    + TIMEOUT_OPTION + "<milliseconds>] <file or directory>... - required");
+            System.exit(-1);
+        }
+
+        Engine engine = null;
+        try {
+            engine = new EngineFactory(AppConfig.getInstance()).createEngine(engineName);
+        } catch (FailedToLoadAppConfigException | EngineCreationFailedException ex) {
+            System.err.println("Could not create engine: " + ex.getMessage());
+            System.exit(-1);
+        }
+
+        var cache = new ProgramCache(DEFAULT_CACHE_CAPACITY, cacheDirectory);
+        var report = new BatchRunner(engine, threads, cache, limits).run(collectFiles(paths));
+        for (var result : report.results()) {
+            System.out.println("== " + result.file() + " ==");
+            System.out.print(result.output());
+            if (result.succeeded()) {
+                System.out.println("Values of registers at program termination:" + result.registers() + ".");
+            } else {
+                System.out.println(result.error());
+            }
+        }
+        System.out.println(report);
+    }
+
+    /**
+     * A program prepared for execution, or the reason it could not be loaded
+     */
+    private record LoadedProgram(Program program, Executable executable, String error) { }
+}
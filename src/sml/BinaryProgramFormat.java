@@ -0,0 +1,52 @@
+package sml;
+
+import sml.engines.PackedProgram;
+
+/**
+ * BinaryProgramFormat describes the layout of compiled SML program files, which have the extension ".smlc".
+ * <p>
+ * A compiled program file stores a linked program in the packed form of the switch engine, so that it can be loaded
+ * without parsing any text. All numbers are big-endian and strings are UTF-8 bytes preceded by their length as an
+ * int. The file consists of:
+ * <ol>
+ *     <li>the header: the magic number as an int, the version and the slot size as shorts;</li>
+ *     <li>the op code table: the number of entries, then for each entry the packed op code as an int followed by
+ *     its name, so that files do not depend on the numbering of the packed op codes;</li>
+ *     <li>the operands: the number of instructions, then the slots of PackedProgram, in which bnz targets are
+ *     already resolved into slot offsets;</li>
+ *     <li>the labels: the label of each instruction, in program order.</li>
+ * </ol>
+ *
+ * @author Marton Vago
+ */
+final class BinaryProgramFormat {
+    /**
+     * The extension of compiled program files
+     */
+    static final String EXTENSION = ".smlc";
+
+    /**
+     * "SMLC" in ASCII
+     */
+    static final int MAGIC = 0x534D4C43;
+
+    static final int VERSION = 1;
+
+    /**
+     * The names of the packed op codes, indexed by op code
+     */
+    static final String[] OP_CODE_NAMES = new String[PackedProgram.BNZ + 1];
+
+    static {
+        OP_CODE_NAMES[PackedProgram.ADD] = "add";
+        OP_CODE_NAMES[PackedProgram.SUB] = "sub";
+        OP_CODE_NAMES[PackedProgram.MUL] = "mul";
+        OP_CODE_NAMES[PackedProgram.DIV] = "div";
+        OP_CODE_NAMES[PackedProgram.LIN] = "lin";
+        OP_CODE_NAMES[PackedProgram.OUT] = "out";
+        OP_CODE_NAMES[PackedProgram.BNZ] = "bnz";
+    }
+
+    private BinaryProgramFormat() {
+    }
+}
@@ -0,0 +1,179 @@
+package sml;
+
+import sml.engines.PackedProgram;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.InvalidProgramFileException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * BinaryProgramReader loads a compiled program file, in the format described by BinaryProgramFormat, into a Machine.
+ * <p>
+ * The file is memory-mapped and its operands are copied into an int array in bulk. The instructions are then
+ * constructed directly from the packed slots, so no text is parsed and no reflection is involved. The jumps are
+ * stored already resolved, so each bnz is linked to the index in its slot rather than by looking up its label.
+ *
+ * @author Marton Vago
+ */
+final class BinaryProgramReader {
+    /**
+     * The number of op codes a file may use
+     */
+    private static final int MAX_OP_CODES = 256;
+
+    /**
+     * The buffer the bytes of a string are copied into before decoding
+     */
+    private byte[] stringBytes = new byte[64];
+
+    private BinaryProgramReader() {
+    }
+
+    /**
+     * Load the program in the given file, already linked, into the labels and program of the given Machine.
+     *
+     * @param file the path of the compiled program file
+     * @param m the Machine to load the program into
+     * @throws IOException if the file cannot be read
+     * @throws InvalidProgramFileException if the file is not a valid compiled program file
+     */
+    static void read(Path file, Machine m) throws IOException, InvalidProgramFileException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidProgramFileException("Compiled program files must be smaller than 2 GB.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            new BinaryProgramReader().load(buffer, m);
+        } catch (BufferUnderflowException e) {
+            throw new InvalidProgramFileException("The compiled program file ends unexpectedly.", e);
+        }
+    }
+
+    private void load(ByteBuffer buffer, Machine m) throws InvalidProgramFileException {
+        if (buffer.remaining() < Integer.BYTES || buffer.getInt() != BinaryProgramFormat.MAGIC) {
+            throw new InvalidProgramFileException("Not a compiled program file.");
+        }
+        var version = buffer.getShort();
+        if (version != BinaryProgramFormat.VERSION) {
+            throw new InvalidProgramFileException("Unsupported compiled program file version " + version + ".");
+        }
+        if (buffer.getShort() != PackedProgram.SLOT_SIZE) {
+            throw new InvalidProgramFileException("Unsupported slot size.");
+        }
+
+        var opCodes = readOpCodeTable(buffer);
+
+        var size = buffer.getInt();
+        if (size < 0 || (long) size * PackedProgram.SLOT_SIZE * Integer.BYTES > buffer.remaining()) {
+            throw new InvalidProgramFileException("Invalid number of instructions " + size + ".");
+        }
+        var code = new int[size * PackedProgram.SLOT_SIZE];
+        buffer.asIntBuffer().get(code);
+        buffer.position(buffer.position() + code.length * Integer.BYTES);
+
+        var labels = new String[size];
+        for (int i = 0; i < size; i++) {
+            labels[i] = readString(buffer);
+        }
+
+        var prog = new ArrayList<Instruction>(size);
+        for (int i = 0; i < size; i++) {
+            prog.add(createInstruction(code, i * PackedProgram.SLOT_SIZE, opCodes, labels));
+        }
+
+        m.getLabels().reset();
+        m.setProg(prog);
+        try {
+            for (var label : labels) {
+                m.getLabels().addLabel(label);
+            }
+        } catch (DuplicateLabelException e) {
+            throw new InvalidProgramFileException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the op code table and return the packed op code for each op code used in the file.
+     */
+    private int[] readOpCodeTable(ByteBuffer buffer) throws InvalidProgramFileException {
+        var count = buffer.getInt();
+        var opCodes = new int[MAX_OP_CODES];
+        Arrays.fill(opCodes, -1);
+        for (int i = 0; i < count; i++) {
+            var fileOpCode = buffer.getInt();
+            var name = readString(buffer);
+            if (fileOpCode < 0 || fileOpCode >= MAX_OP_CODES) {
+                throw new InvalidProgramFileException("Invalid op code " + fileOpCode + ".");
+            }
+            var opCode = Arrays.asList(BinaryProgramFormat.OP_CODE_NAMES).indexOf(name);
+            if (opCode < 0) {
+                throw new InvalidProgramFileException("Unknown instruction '" + name + "'.");
+            }
+            opCodes[fileOpCode] = opCode;
+        }
+        return opCodes;
+    }
+
+    private static Instruction createInstruction(int[] code, int slot, int[] opCodes, String[] labels)
+            throws InvalidProgramFileException {
+        var fileOpCode = code[slot];
+        var opCode = fileOpCode >= 0 && fileOpCode < opCodes.length ? opCodes[fileOpCode] : -1;
+        var label = labels[slot / PackedProgram.SLOT_SIZE];
+        var a = code[slot + 1];
+        var b = code[slot + 2];
+        var c = code[slot + 3];
+        switch (opCode) {
+            case PackedProgram.ADD:
+                return new AddInstruction(label, a, b, c);
+            case PackedProgram.SUB:
+                return new SubInstruction(label, a, b, c);
+            case PackedProgram.MUL:
+                return new MulInstruction(label, a, b, c);
+            case PackedProgram.DIV:
+                return new DivInstruction(label, a, b, c);
+            case PackedProgram.LIN:
+                return new LinInstruction(label, a, b);
+            case PackedProgram.OUT:
+                return new OutInstruction(label, a);
+            case PackedProgram.BNZ:
+                if (b < 0 || b % PackedProgram.SLOT_SIZE != 0 || b / PackedProgram.SLOT_SIZE >= labels.length) {
+                    throw new InvalidProgramFileException("Instruction '" + label + "' jumps to an invalid offset " + b + ".");
+                }
+                var target = b / PackedProgram.SLOT_SIZE;
+                return new BnzInstruction(label, a, labels[target], target);
+            default:
+                throw new InvalidProgramFileException("Instruction '" + label + "' has an unknown op code " + fileOpCode + ".");
+        }
+    }
+
+    private String readString(ByteBuffer buffer) throws InvalidProgramFileException {
+        var length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new InvalidProgramFileException("Invalid string length " + length + ".");
+        }
+        if (stringBytes.length < length) {
+            stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+        }
+        buffer.get(stringBytes, 0, length);
+        return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package sml;
+
+import sml.engines.PackedProgram;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * BinaryProgramWriter writes the program of a Machine into a compiled program file,
+ * in the format described by BinaryProgramFormat.
+ *
+ * @author Marton Vago
+ */
+final class BinaryProgramWriter {
+    private BinaryProgramWriter() {
+    }
+
+    /**
+     * Write the linked program of the given Machine into the given file.
+     * Only programs made of the instructions of the language can be written; return false for any other program.
+     *
+     * @param m the Machine holding the linked program
+     * @param file the path of the compiled program file
+     * @return if the program was written or not
+     * @throws IOException if the file cannot be written
+     */
+    static boolean write(Machine m, Path file) throws IOException {
+        var packed = PackedProgram.lower(m.getProg());
+        if (packed == null) {
+            return false;
+        }
+        var code = packed.toArray();
+        for (int slot = 0; slot < code.length; slot += PackedProgram.SLOT_SIZE) {
+            // Superinstructions are not part of the format
+            if (code[slot] >= BinaryProgramFormat.OP_CODE_NAMES.length) {
+                return false;
+            }
+        }
+
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(BinaryProgramFormat.MAGIC);
+            out.writeShort(BinaryProgramFormat.VERSION);
+            out.writeShort(PackedProgram.SLOT_SIZE);
+
+            out.writeInt(BinaryProgramFormat.OP_CODE_NAMES.length);
+            for (int opCode = 0; opCode < BinaryProgramFormat.OP_CODE_NAMES.length; opCode++) {
+                out.writeInt(opCode);
+                writeString(out, BinaryProgramFormat.OP_CODE_NAMES[opCode]);
+            }
+
+            out.writeInt(packed.size());
+            for (var operand : code) {
+                out.writeInt(operand);
+            }
+
+            for (var instruction : m.getProg()) {
+                writeString(out, instruction.getLabel());
+            }
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,118 @@
+package sml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BufferedOutputSink collects the printed values as ASCII bytes and writes them to the underlying stream in
+ * batches, when the buffer is full and when the sink is flushed.
+ * <p>
+ * The digits are written straight into the buffer, so printing a value neither allocates nor takes the lock of
+ * a PrintStream. The sink is not thread-safe.
+ *
+ * @author Marton Vago
+ */
+public final class BufferedOutputSink implements OutputSink {
+    /**
+     * The default size of the buffer in bytes
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The length of the longest int, "-2147483648"
+     */
+    private static final int MAX_DIGITS = 11;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+
+    /**
+     * Construct a sink writing to the given stream with a buffer of the default size.
+     *
+     * @param out the stream to write to
+     */
+    public BufferedOutputSink(OutputStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct a sink writing to the given stream with a buffer of the given size.
+     *
+     * @param out the stream to write to
+     * @param capacity the size of the buffer in bytes; it must fit at least one value
+     */
+    public BufferedOutputSink(OutputStream out, int capacity) {
+        if (capacity < MAX_DIGITS + LINE_SEPARATOR.length) {
+            throw new IllegalArgumentException("The buffer must hold at least one value, but its capacity was " + capacity);
+        }
+        this.out = out;
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Print the value followed by a line separator, writing the buffer out first if the value may not fit.
+     *
+     * @param value the value to print
+     * @throws UncheckedIOException if the buffer cannot be written out
+     */
+    @Override
+    public void write(int value) {
+        if (position + MAX_DIGITS + LINE_SEPARATOR.length > buffer.length) {
+            writeBuffer();
+        }
+
+        // Work with the negative value, so that the minimum integer needs no special case
+        if (value < 0) {
+            buffer[position++] = '-';
+        } else {
+            value = -value;
+        }
+        var start = position;
+        do {
+            buffer[position++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        // The digits were written least significant first
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            var digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+
+        for (var b : LINE_SEPARATOR) {
+            buffer[position++] = b;
+        }
+    }
+
+    /**
+     * Write the buffer out and flush the underlying stream.
+     *
+     * @throws UncheckedIOException if the buffer cannot be written out
+     */
+    @Override
+    public void flush() {
+        writeBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeBuffer() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+    }
+}
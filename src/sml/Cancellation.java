@@ -0,0 +1,22 @@
+package sml;
+
+/**
+ * A Cancellation lets one thread ask executions running on other threads to stop.
+ * Executions only notice it when they check their limits, so they stop soon after, but not at once.
+ *
+ * @author Marton Vago
+ */
+public final class Cancellation {
+    private volatile boolean cancelled;
+
+    /**
+     * Ask the executions using this cancellation to stop. Cancelling cannot be undone.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,19 @@
+package sml;
+
+/**
+ * ConsoleOutputSink prints every value to System.out as soon as it is written.
+ * System.out is looked up on every write, so the sink follows System.setOut.
+ *
+ * @author Marton Vago
+ */
+public final class ConsoleOutputSink implements OutputSink {
+    @Override
+    public void write(int value) {
+        System.out.println(value);
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
@@ -0,0 +1,18 @@
+package sml;
+
+/**
+ * An interface implemented by any class which performs a mapping from the name of an execution engine to
+ * the name of the class implementing the engine.
+ *
+ * @author Marton Vago
+ */
+public interface EngineMapper {
+    /**
+     * Return the name of the class which implements the engine with the given name.
+     * It is up to concrete mappers how the mapping is performed.
+     *
+     * @param engineName the name of the engine, e.g. as given on the command line
+     * @return the name of the corresponding class
+     */
+    String getClassNameForEngine(String engineName);
+}
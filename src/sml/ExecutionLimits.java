@@ -0,0 +1,141 @@
+package sml;
+
+import java.time.Duration;
+
+/**
+ * ExecutionLimits bounds an execution by the number of instructions it may execute, by the wall time it may take
+ * and by a Cancellation another thread may trigger. Limits are immutable; the with methods return new limits.
+ * <p>
+ * To keep executions fast, limits are only checked when a bnz jumps backwards, as a program can only run for long
+ * by looping, and the clock is only read every CLOCK_INTERVAL checks. An execution can therefore run past its step
+ * budget by fewer instructions than the program has, and past its deadline by the time of CLOCK_INTERVAL loop
+ * iterations.
+ *
+ * @author Marton Vago
+ */
+public final class ExecutionLimits {
+    /**
+     * The limits of an execution which may run forever
+     */
+    public static final ExecutionLimits NONE = new ExecutionLimits(Long.MAX_VALUE, Long.MAX_VALUE, null);
+
+    /**
+     * The number of checks between two readings of the clock
+     */
+    static final int CLOCK_INTERVAL = 1024;
+
+    private final long maxSteps;
+    private final long timeoutNanos;
+    private final Cancellation cancellation;
+
+    private ExecutionLimits(long maxSteps, long timeoutNanos, Cancellation cancellation) {
+        this.maxSteps = maxSteps;
+        this.timeoutNanos = timeoutNanos;
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Return these limits with a step budget.
+     *
+     * @param steps the number of instructions the execution may execute
+     * @return the new limits
+     */
+    public ExecutionLimits withMaxSteps(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("The step budget cannot be negative, but was " + steps);
+        }
+        return new ExecutionLimits(steps, timeoutNanos, cancellation);
+    }
+
+    /**
+     * Return these limits with a deadline the given time after the execution starts.
+     *
+     * @param timeout the time the execution may take
+     * @return the new limits
+     */
+    public ExecutionLimits withTimeout(Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("The timeout cannot be negative, but was " + timeout);
+        }
+        return new ExecutionLimits(maxSteps, saturatedNanos(timeout), cancellation);
+    }
+
+    /**
+     * Return these limits with a cancellation.
+     *
+     * @param cancellation the cancellation stopping the execution
+     * @return the new limits
+     */
+    public ExecutionLimits withCancellation(Cancellation cancellation) {
+        return new ExecutionLimits(maxSteps, timeoutNanos, cancellation);
+    }
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Start the clock of an execution and return the monitor checking its limits.
+     *
+     * @return the monitor of the execution
+     */
+    public Monitor start() {
+        return new Monitor(this, System.nanoTime());
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A Monitor checks the limits of a single execution.
+     */
+    public static final class Monitor {
+        private final long maxSteps;
+        private final Cancellation cancellation;
+        private final long start;
+        private final long timeoutNanos;
+        private int untilClock = CLOCK_INTERVAL;
+
+        private Monitor(ExecutionLimits limits, long start) {
+            this.maxSteps = limits.maxSteps;
+            this.cancellation = limits.cancellation;
+            this.timeoutNanos = limits.timeoutNanos;
+            this.start = start;
+        }
+
+        /**
+         * Return the reason the execution must stop, or null if it is within its limits.
+         *
+         * @param steps the number of instructions executed so far
+         * @return the status to stop with, or null
+         */
+        public ExecutionResult.Status check(long steps) {
+            if (steps >= maxSteps) {
+                return ExecutionResult.Status.STEP_LIMIT_REACHED;
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                return ExecutionResult.Status.CANCELLED;
+            }
+            if (timeoutNanos != Long.MAX_VALUE && --untilClock <= 0) {
+                untilClock = CLOCK_INTERVAL;
+                if (System.nanoTime() - start >= timeoutNanos) {
+                    return ExecutionResult.Status.TIMED_OUT;
+                }
+            }
+            return null;
+        }
+    }
+}
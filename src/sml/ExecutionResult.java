@@ -0,0 +1,43 @@
+package sml;
+
+/**
+ * An ExecutionResult tells why an execution with limits stopped.
+ * An execution which stopped before the end of the program leaves the registers as they were and the program
+ * counter at the next instruction to execute.
+ *
+ * @param status why the execution stopped
+ * @param steps the number of instructions executed
+ * @author Marton Vago
+ */
+public record ExecutionResult(Status status, long steps) {
+    /**
+     * Return true if the program ran to its end.
+     *
+     * @return if the execution completed
+     */
+    public boolean completed() {
+        return status == Status.COMPLETED;
+    }
+
+    /**
+     * The reasons an execution stops
+     */
+    public enum Status {
+        /**
+         * The program ran to its end
+         */
+        COMPLETED,
+        /**
+         * The execution used up its step budget
+         */
+        STEP_LIMIT_REACHED,
+        /**
+         * The execution ran past its deadline
+         */
+        TIMED_OUT,
+        /**
+         * The execution was cancelled from another thread
+         */
+        CANCELLED
+    }
+}
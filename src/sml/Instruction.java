@@ -1,5 +1,7 @@
 package sml;
 
+import sml.exceptions.UnknownLabelException;
+
 /**
  * This class represents an abstract instruction.
  *
@@ -39,6 +41,15 @@ public abstract class Instruction {
 
 	public abstract void execute(Machine m);
 
+	/**
+	 * Resolve the labels the instruction refers to into instruction indices.
+	 * Instructions which do not refer to other instructions have nothing to resolve.
+	 *
+	 * @param labels the labels of the program the instruction belongs to
+	 * @throws UnknownLabelException if a referenced label is not defined in the program
+	 */
+	public void link(LabelBridge labels) throws UnknownLabelException { }
+
 	@Override
 	public String toString() {
 		return "[" + getLabel() + ": " + getOpcode() + "]";
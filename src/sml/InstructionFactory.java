@@ -4,12 +4,22 @@ import sml.exceptions.InstructionParseFailedException;
 import sml.exceptions.InvalidInstructionException;
 import sml.exceptions.UnknownInstructionException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * InstructionFactory is responsible for parsing a Line from a program file into the Instruction subclass
  * corresponding to the op code.
+ * <p>
+ * The constructor of each op code is resolved through reflection the first time the op code is seen. It is then
+ * cached, together with the types of the operands to read from the line, so that later lines with the same op code
+ * are instantiated through a method handle without any further reflection.
  * 
  * @author Marton Vago
  */
@@ -20,7 +30,13 @@ public class InstructionFactory {
     private final InstructionMapper instructionMapper;
 
     /**
-     * Construct a factory instance with an instruction mapper injected
+     * The resolved instruction templates, by op code
+     */
+    private final Map<String, InstructionTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a factory instance with an instruction mapper injected.
+     * The mapping of an op code is looked up once, so later changes to the mapper are not seen by the factory.
      * @param mapper the instruction mapper
      */
     public InstructionFactory(InstructionMapper mapper) {
@@ -40,19 +56,15 @@ public class InstructionFactory {
             return null;
         }
 
-        // Look up the class implementing the instruction with the given op code
-        var className = instructionMapper.getClassNameForOpCode(line.getOpCode());
-
         try {
-            if (className == null) {
-                throw new UnknownInstructionException(line.getOpCode());
+            var template = templates.get(line.getOpCode());
+            if (template == null) {
+                template = createTemplate(line.getOpCode());
+                templates.put(line.getOpCode(), template);
             }
 
-            var constructor = getConstructor(className);
-            var constructorArguments = getConstructorArguments(constructor, line);
-
             // Instantiate the instruction
-            return (Instruction) constructor.newInstance(constructorArguments);
+            return template.create(line);
 
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException
                  | IllegalArgumentException | UnknownInstructionException | InvalidInstructionException
@@ -63,16 +75,52 @@ public class InstructionFactory {
         }
     }
 
+    /**
+     * Resolve the class implementing the op code and its constructor into a template for creating instructions.
+     *
+     * @param opCode the op code
+     * @return the template
+     * @throws UnknownInstructionException if no class is mapped to the op code
+     * @throws ClassNotFoundException if there is no class corresponding to the class name
+     * @throws InvalidInstructionException if the class does not specify a valid instruction
+     * @throws InstantiationException if the class is abstract
+     * @throws IllegalAccessException if the constructor cannot be accessed
+     * @throws IllegalArgumentException if an operand's type is not string or integer
+     */
+    private InstructionTemplate createTemplate(String opCode) throws UnknownInstructionException, ClassNotFoundException,
+            InvalidInstructionException, InstantiationException, IllegalAccessException, IllegalArgumentException {
+        // Look up the class implementing the instruction with the given op code
+        var className = instructionMapper.getClassNameForOpCode(opCode);
+        if (className == null) {
+            throw new UnknownInstructionException(opCode);
+        }
+
+        var constructor = getConstructor(className);
+        if (Modifier.isAbstract(constructor.getDeclaringClass().getModifiers())) {
+            throw new InstantiationException(className + " is abstract.");
+        }
+        var operandTypes = getOperandTypes(constructor);
+
+        // Adapt the constructor to take its arguments as an array and return an Instruction
+        MethodHandle handle = MethodHandles.publicLookup().unreflectConstructor(constructor)
+                .asSpreader(Object[].class, operandTypes.length + 1)
+                .asType(MethodType.methodType(Instruction.class, Object[].class));
+        return new InstructionTemplate(handle, operandTypes);
+    }
+
     /**
      * Return the first public constructor of the class with the given class name.
      * 
      * @param className the name of the class
      * @return the constructor 
      * @throws ClassNotFoundException if there is no class corresponding to the class name
-     * @throws InvalidInstructionException if the class has no public constructor
+     * @throws InvalidInstructionException if the class is not an instruction or has no public constructor
      */
     private Constructor<?> getConstructor(String className) throws ClassNotFoundException, InvalidInstructionException {
         var instructionClass = Class.forName(className);
+        if (!Instruction.class.isAssignableFrom(instructionClass)) {
+            throw new InvalidInstructionException("Instructions must extend " + Instruction.class.getName() + ".");
+        }
         var constructors = instructionClass.getConstructors();
         if (constructors.length < 1) {
             throw new InvalidInstructionException("Instructions must have a public constructor.");
@@ -81,37 +129,33 @@ public class InstructionFactory {
     }
 
     /**
-     * Extract the arguments required by the given constructor from the line.
+     * Return the types of the operands the given constructor expects after the label.
      * We expect only string or integer arguments.
      * 
      * @param constructor the constructor
-     * @param line the line
-     * @return an array containing the constructor's arguments
+     * @return the types of the operands
      * @throws InvalidInstructionException if the first argument's type is not string
      * @throws IllegalArgumentException if an argument's type is not string or integer
      */
-    private Object[] getConstructorArguments(Constructor<?> constructor, Line line) throws InvalidInstructionException, IllegalArgumentException {
+    private InstructionTemplate.OperandType[] getOperandTypes(Constructor<?> constructor) throws InvalidInstructionException, IllegalArgumentException {
         // Look up the parameters of the constructor
         var paramTypes = constructor.getParameterTypes();
         if (paramTypes.length < 1 || !paramTypes[0].equals(String.class)) {
             throw new InvalidInstructionException("Instructions must have a label as their first component.");
         }
 
-        // Read in values from the program line which match the constructor parameters
-        Object[] constructorArguments = new Object[paramTypes.length];
-        // The first argument is always the label
-        constructorArguments[0] = line.getLabel();
-        // The other arguments depend on the specific implementation
+        // The first argument is always the label, the others depend on the specific implementation
+        var operandTypes = new InstructionTemplate.OperandType[paramTypes.length - 1];
         for (int i = 1; i < paramTypes.length; i++) {
             var paramType = paramTypes[i];
             if (paramType.equals(String.class)) {
-                constructorArguments[i] = line.scan();
+                operandTypes[i - 1] = InstructionTemplate.OperandType.STRING;
             } else if (paramType.equals(int.class) || paramType.equals(Integer.class)) {
-                constructorArguments[i] = line.scanInt();
+                operandTypes[i - 1] = InstructionTemplate.OperandType.INT;
             } else {
                 throw new IllegalArgumentException("Expected operand to have type 'String', 'Integer' or 'int', but operand type was " + paramType);
             }
         }
-        return constructorArguments;
+        return operandTypes;
     }
 }
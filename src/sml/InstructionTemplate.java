@@ -0,0 +1,56 @@
+package sml;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * An InstructionTemplate holds everything the InstructionFactory needs to create the instructions of one op code:
+ * a handle to the constructor of the implementing class, and the types of the operands to read from a Line.
+ *
+ * @author Marton Vago
+ */
+final class InstructionTemplate {
+    /**
+     * The types of operand an instruction constructor may take after the label
+     */
+    enum OperandType { STRING, INT }
+
+    /**
+     * The constructor, taking all its arguments in an Object[] and returning an Instruction
+     */
+    private final MethodHandle constructor;
+
+    private final OperandType[] operandTypes;
+
+    InstructionTemplate(MethodHandle constructor, OperandType[] operandTypes) {
+        this.constructor = constructor;
+        this.operandTypes = operandTypes;
+    }
+
+    /**
+     * Read the operands from the line and instantiate the instruction.
+     *
+     * @param line the line, whose label and op code have been read
+     * @return the instruction
+     * @throws InvocationTargetException if the constructor throws
+     */
+    Instruction create(Line line) throws InvocationTargetException {
+        var arguments = new Object[operandTypes.length + 1];
+        // The first argument is always the label
+        arguments[0] = line.getLabel();
+        for (int i = 0; i < operandTypes.length; i++) {
+            if (operandTypes[i] == OperandType.STRING) {
+                arguments[i + 1] = line.scan();
+            } else {
+                arguments[i + 1] = line.scanInt();
+            }
+        }
+
+        try {
+            return (Instruction) constructor.invokeExact(arguments);
+        } catch (Throwable e) {
+            // Report failures of the constructor the way Constructor.newInstance does
+            throw new InvocationTargetException(e);
+        }
+    }
+}
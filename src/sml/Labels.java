@@ -1,56 +1,142 @@
 package sml;
 
+import sml.exceptions.DuplicateLabelException;
+
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * This class ....
+ * This class holds the labels of an SML program.
  * <p>
  * An instance contains a list of Strings, called "labels", in the order in
- * which they were added to the list.
+ * which they were added to the list, together with an index from each label
+ * to its number in the list, so that looking up a label takes constant time.
+ * The index is an open-addressing hash table of ints rather than a HashMap,
+ * so that the labels of a large program do not each need an entry and a
+ * boxed number, and the index holds no references, which the garbage
+ * collector would have to copy and scan.
+ * Once frozen, the labels can no longer be changed, so they can be shared by
+ * several threads.
  *
  * @author ...
  */
 final class Labels {
+	/**
+	 * The number of slots of an empty index
+	 */
+	private static final int INITIAL_SLOTS = 16;
+
 	private final List<String> labels;
 
+	/**
+	 * The slots of the index, two ints each: the number of a label plus one, or 0 if the slot is free, followed by
+	 * the hash code of the label, so that other labels can be skipped without reading them. Both are kept together
+	 * so that a lookup touches a single cache line. At most half of the slots are used, so that a free slot is
+	 * always found soon.
+	 */
+	private int[] slots;
+
+	/**
+	 * The number of bits of a hash code which do not select a slot, 32 minus the base 2 logarithm of the number
+	 * of slots
+	 */
+	private int shift;
+	private boolean frozen;
+
 	{
 		labels = new ArrayList<>();
+		clearIndex();
 	}
 
 	/**
 	 * Add label lab to this list and return its number in the list (the first one
-	 * added is number 0) Precondition: the list has at most 49 entries
+	 * added is number 0)
 	 *
-	 * @param lab
-	 * @return
+	 * @param lab the label to add
+	 * @return the number of the label
+	 * @throws DuplicateLabelException if lab is already in the list
 	 */
-	public int addLabel(String lab) {
+	public int addLabel(String lab) throws DuplicateLabelException {
+		checkNotFrozen();
+		var hash = lab.hashCode();
+		var slot = find(lab, hash);
+		if (slots[slot] != 0) {
+			throw new DuplicateLabelException(lab);
+		}
+		var index = labels.size();
 		labels.add(lab);
-		return labels.size() - 1;
+		slots[slot] = index + 1;
+		slots[slot + 1] = hash;
+		if (4 * labels.size() > slots.length) {
+			grow();
+		}
+		return index;
 	}
 
 	/**
 	 * = the number of label lab in the list (= -1 if lab is not in the list)
 	 *
-	 * @param lab
-	 * @return
+	 * @param lab the label to look up
+	 * @return the number of the label
 	 */
 	public int indexOf(String lab) {
+		return slots[find(lab, lab.hashCode())] - 1;
+	}
 
-		// invariant: lab is not in labels[0..i-1]
-		for (int i = 0; i != labels.size(); i++) {
-			if (lab.equals(labels.get(i))) {
-				return i;
+	/**
+	 * Return the position in slots of the slot holding the given label, or of the free slot where it belongs if it
+	 * is not there.
+	 */
+	private int find(String lab, int hash) {
+		var mask = slots.length - 1;
+		var slot = start(hash);
+		while (slots[slot] != 0 && (slots[slot + 1] != hash || !labels.get(slots[slot] - 1).equals(lab))) {
+			slot = (slot + 2) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Double the number of slots of the index and move every label to its slot in the new index.
+	 */
+	private void grow() {
+		var old = slots;
+		slots = new int[old.length * 2];
+		shift--;
+		var mask = slots.length - 1;
+		for (int i = 0; i < old.length; i += 2) {
+			if (old[i] != 0) {
+				var slot = start(old[i + 1]);
+				while (slots[slot] != 0) {
+					slot = (slot + 2) & mask;
+				}
+				slots[slot] = old[i];
+				slots[slot + 1] = old[i + 1];
 			}
 		}
-		return -1;
+	}
+
+	/**
+	 * Return the position in slots of the slot where the search for a label with the given hash code starts.
+	 * Labels such as L0, L1, ... have consecutive hash codes, which would form long runs of used slots, so the hash
+	 * code is multiplied by the golden ratio and the slot taken from the highest bits of the product.
+	 */
+	private int start(int hash) {
+		return ((hash * 0x9E3779B9) >>> shift) << 1;
+	}
+
+	/**
+	 * Make the index empty.
+	 */
+	private void clearIndex() {
+		slots = new int[2 * INITIAL_SLOTS];
+		shift = Integer.numberOfLeadingZeros(INITIAL_SLOTS) + 1;
 	}
 
 	/**
 	 * representation of this instance, "(label 0, label 1, ..., label (n-1))"
 	 *
-	 * @return
+	 * @return the representation
 	 */
 	@Override
 	public String toString() {
@@ -74,6 +160,21 @@ final class Labels {
 	 * Set the number of elements in the list to 0
 	 */
 	public void reset() {
+		checkNotFrozen();
 		labels.clear();
+		clearIndex();
+	}
+
+	/**
+	 * Prevent any further changes to the labels
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new UnsupportedOperationException("The labels of a program cannot be changed.");
+		}
 	}
 }
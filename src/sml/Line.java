@@ -4,14 +4,27 @@ package sml;
  * A Line represents a line in a .sml program file.
  * By default, the contents of the line that can vary between instructions (everything other than label and op code)
  * are not processed. Classes interacting with the line can consume this content according to their own needs.
+ * <p>
+ * The line is consumed through a cursor into the original content, so scanning copies nothing but the words it
+ * returns, and scanning an integer copies nothing at all.
  *
  * @author Classroom[bot] and Marton Vago
  */
 public class Line {
     /**
-     * The unprocessed part of the line
+     * The content of the line
      */
-    private String content;
+    private final CharSequence content;
+
+    /**
+     * The end of the content, without trailing whitespace
+     */
+    private final int end;
+
+    /**
+     * The position of the first unprocessed character of the content
+     */
+    private int position;
 
     /**
      * The first element in the line
@@ -28,8 +41,13 @@ public class Line {
      *
      * @param lineContent the raw content of the line
      */
-    private Line(String lineContent) {
+    private Line(CharSequence lineContent) {
         content = lineContent;
+        var length = lineContent.length();
+        while (length > 0 && isWhitespace(lineContent.charAt(length - 1))) {
+            length--;
+        }
+        end = length;
     }
 
     /**
@@ -42,11 +60,12 @@ public class Line {
 
     /**
      * Create a Line and parse the label and op code.
+     * The content is read as the line is scanned, so it must not change until the line has been consumed.
      *
      * @param content the raw content of the line
      * @return the preprocessed Line
      */
-    public static Line of(String content) {
+    public static Line of(CharSequence content) {
         Line line = new Line(content);
         line.init();
         return line;
@@ -88,33 +107,80 @@ public class Line {
      * @return the first word of the line
      */
     public String scan() {
-        content = content.trim();
-        if (content.length() == 0) {
+        var start = skipWord();
+        if (start == position) {
             return "";
         }
-
-        int i = 0;
-        while (i < content.length() && content.charAt(i) != ' ' && content.charAt(i) != '\t') {
-            i++;
-        }
-        String word = content.substring(0, i);
-        content = content.substring(i);
-        return word;
+        return content.subSequence(start, position).toString();
     }
 
     /**
      * Remove the first word from the content and return it parsed as an integer.
      * If the word is not parseable as an integer, return the maximum integer.
+     * The word is parsed in place, following the rules of Integer.parseInt.
      *
      * @return the first word of the line as an integer
      */
     public int scanInt() {
-        String word = scan();
-
-        try {
-            return Integer.parseInt(word);
-        } catch (NumberFormatException e) {
+        var start = skipWord();
+        var i = start;
+        if (i == position) {
             return Integer.MAX_VALUE;
         }
+
+        // Accumulate negatively, as Integer.parseInt does, so that the minimum integer can be parsed
+        var negative = false;
+        var limit = -Integer.MAX_VALUE;
+        var first = content.charAt(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            } else if (first != '+') {
+                return Integer.MAX_VALUE;
+            }
+            i++;
+            if (i == position) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        var multiplicationLimit = limit / 10;
+        var result = 0;
+        while (i < position) {
+            var digit = Character.digit(content.charAt(i++), 10);
+            if (digit < 0 || result < multiplicationLimit) {
+                return Integer.MAX_VALUE;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return Integer.MAX_VALUE;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Move the cursor past the next word and return the position where the word starts.
+     * Words are separated by spaces and tabs; any whitespace before a word is skipped.
+     *
+     * @return the start of the word
+     */
+    private int skipWord() {
+        while (position < end && isWhitespace(content.charAt(position))) {
+            position++;
+        }
+        var start = position;
+        while (position < end && content.charAt(position) != ' ' && content.charAt(position) != '\t') {
+            position++;
+        }
+        return start;
+    }
+
+    /**
+     * Return true for the characters String.trim removes.
+     */
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
     }
 }
@@ -1,5 +1,7 @@
 package sml;
 
+import sml.exceptions.UnknownLabelException;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -28,10 +30,37 @@ public final class Machine {
 	// of the next instruction to be executed.
 	private int pc;
 
+	// The sink receiving the values printed by the program
+	private OutputSink output;
+
+	// The immutable program the machine runs, if it was created for one
+	private final Program program;
+
 	{
+		pc = 0;
+		output = new ConsoleOutputSink();
+	}
+
+	/**
+	 * Create a machine with an empty program, to be filled by a Translator.
+	 */
+	public Machine() {
 		labels = new Labels();
 		prog = new ArrayList<>();
-		pc = 0;
+		program = null;
+	}
+
+	/**
+	 * Create a machine running the given program. The machine shares the instructions
+	 * and labels of the program, which cannot be changed, and only holds the state of
+	 * a single run, so any number of machines can run the same program concurrently.
+	 *
+	 * @param program the program to run
+	 */
+	public Machine(Program program) {
+		labels = program.getLabels();
+		prog = program.getInstructions();
+		this.program = program;
 	}
 
 	/**
@@ -50,16 +79,91 @@ public final class Machine {
 
 	/**
 	 * Execute the program in prog, beginning at instruction 0. Precondition: the
-	 * program and its labels have been store properly.
+	 * program and its labels have been store properly. The output is flushed
+	 * when the program ends.
 	 */
 	public void execute() {
 		setPc(0);
 		setRegisters(new Registers());
-		while (getPc() < getProg().size()) {
-			Instruction ins = getProg().get(getPc());
-			setPc(getPc() + 1);
-			ins.execute(this); // so convoluted
+		try {
+			while (getPc() < getProg().size()) {
+				Instruction ins = getProg().get(getPc());
+				setPc(getPc() + 1);
+				ins.execute(this); // so convoluted
+			}
+		} finally {
+			getOutput().flush();
+		}
+	}
+
+	/**
+	 * Execute the program in prog like execute(), stopping early if the execution
+	 * exceeds the given limits, which are checked whenever a jump goes backwards.
+	 * An execution which stops early leaves the program counter at the next
+	 * instruction to execute. The output is flushed when the execution stops.
+	 *
+	 * @param limits the limits of the execution
+	 * @return why the execution stopped
+	 */
+	public ExecutionResult execute(ExecutionLimits limits) {
+		setPc(0);
+		setRegisters(new Registers());
+		return resume(limits);
+	}
+
+	/**
+	 * Continue executing the program in prog from the current program counter and
+	 * registers, e.g. those restored from a MachineSnapshot, stopping early if the
+	 * execution exceeds the given limits like execute(ExecutionLimits) does. The
+	 * steps of the result only count the instructions executed by this call.
+	 *
+	 * @param limits the limits of the execution
+	 * @return why the execution stopped
+	 */
+	public ExecutionResult resume(ExecutionLimits limits) {
+		var monitor = limits.start();
+		long steps = 0;
+		try {
+			while (getPc() < getProg().size()) {
+				int index = getPc();
+				Instruction ins = getProg().get(index);
+				setPc(index + 1);
+				ins.execute(this);
+				steps++;
+				if (getPc() <= index) {
+					var status = monitor.check(steps);
+					if (status != null) {
+						return new ExecutionResult(status, steps);
+					}
+				}
+			}
+		} finally {
+			getOutput().flush();
 		}
+		return new ExecutionResult(ExecutionResult.Status.COMPLETED, steps);
+	}
+
+	/**
+	 * Resolve the label references of the instructions in prog into instruction indices, so that
+	 * jumps do not have to search the program while it runs. Precondition: the labels have been
+	 * stored in the same order as the instructions (as done by the Translator).
+	 *
+	 * @throws UnknownLabelException if an instruction refers to a label which is not defined in the program
+	 */
+	public void link() throws UnknownLabelException {
+		var labelBridge = new LabelBridge(this);
+		for (Instruction ins : getProg()) {
+			ins.link(labelBridge);
+		}
+	}
+
+	/**
+	 * Return the program the machine was created for, or null if it was created with an empty program.
+	 *
+	 * @return the program
+	 */
+	public Program getProgram() {
+		return this.program;
 	}
 
 	public Labels getLabels() {
@@ -94,6 +198,14 @@ public final class Machine {
 		this.pc = programCounter;
 	}
 
+	public OutputSink getOutput() {
+		return this.output;
+	}
+
+	public void setOutput(OutputSink out) {
+		this.output = out;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
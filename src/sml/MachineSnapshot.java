@@ -0,0 +1,273 @@
+package sml;
+
+import sml.engines.PackedProgram;
+import sml.exceptions.InvalidSnapshotException;
+import sml.optimizer.CountedLoopInstruction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A MachineSnapshot is the execution state of a Machine: its registers, its program counter and the fingerprint of
+ * the program it runs. A snapshot taken of a stopped execution, e.g. one which exceeded its ExecutionLimits, can be
+ * restored into another Machine running the same program, even in another JVM, and the execution resumed from there.
+ * <p>
+ * The binary form of a snapshot is, in big-endian order:
+ * <pre>
+ * int     MAGIC
+ * int     VERSION
+ * byte[]  the fingerprint of the program, FINGERPRINT_LENGTH bytes
+ * int     the program counter
+ * int     the number of registers, followed by the value of each
+ * </pre>
+ * The output of the program is not part of the snapshot; it is flushed whenever an execution stops.
+ *
+ * @author Marton Vago
+ */
+public final class MachineSnapshot {
+    /**
+     * The extension of snapshot files
+     */
+    public static final String EXTENSION = ".smls";
+
+    /**
+     * The first four bytes of a snapshot, "SMLS"
+     */
+    static final int MAGIC = 0x534D4C53;
+
+    /**
+     * The version of the format, increased whenever the format changes
+     */
+    static final int VERSION = 2;
+
+    /**
+     * The length of a program fingerprint, a SHA-256 hash
+     */
+    static final int FINGERPRINT_LENGTH = 32;
+
+    private final byte[] fingerprint;
+    private final int pc;
+    private final int[] registers;
+
+    private MachineSnapshot(byte[] fingerprint, int pc, int[] registers) {
+        this.fingerprint = fingerprint;
+        this.pc = pc;
+        this.registers = registers;
+    }
+
+    /**
+     * Take a snapshot of the execution state of the given machine.
+     *
+     * @param m the machine, which must have registers, i.e. have started executing
+     * @return the snapshot
+     * @throws IllegalArgumentException if the program of the machine has instructions which have no packed form
+     */
+    public static MachineSnapshot of(Machine m) {
+        var program = m.getProgram();
+        var fingerprint = program != null ? program.getFingerprint() : fingerprint(m.getProg());
+        return new MachineSnapshot(fingerprint, m.getPc(), m.getRegisters().toArray());
+    }
+
+    /**
+     * Restore the registers and the program counter of the snapshot into the given machine, which can then resume
+     * the execution.
+     *
+     * @param m the machine, which must run the program the snapshot was taken of
+     * @throws InvalidSnapshotException if the machine runs another program, or one which cannot be part of a snapshot
+     */
+    public void restore(Machine m) throws InvalidSnapshotException {
+        var program = m.getProgram();
+        byte[] expected;
+        try {
+            expected = program != null ? program.getFingerprint() : fingerprint(m.getProg());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSnapshotException(e.getMessage(), e);
+        }
+        if (!Arrays.equals(expected, fingerprint)) {
+            throw new InvalidSnapshotException("The snapshot was taken of another program.");
+        }
+        if (pc < 0 || pc > m.getProg().size()) {
+            throw new InvalidSnapshotException("The program counter " + pc + " of the snapshot is outside the program.");
+        }
+        var regs = new Registers();
+        regs.setRegisters(registers);
+        m.setRegisters(regs);
+        m.setPc(pc);
+    }
+
+    /**
+     * Return the fingerprint identifying a program, the SHA-256 hash of a canonical encoding of its instructions:
+     * for each instruction its label, its opcode and the operands of its slot in the PackedProgram of the switch
+     * engine, in which jumps are already resolved, followed for a counted loop by the encoding of its body and its
+     * decrement register. Unlike the descriptions of the instructions, the encoding does not change with their
+     * wording.
+     *
+     * @param instructions the linked instructions of the program
+     * @return the fingerprint
+     * @throws IllegalArgumentException if the program has instructions which have no packed form
+     */
+    static byte[] fingerprint(List<Instruction> instructions) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        encode(instructions, digest);
+        return digest.digest();
+    }
+
+    private static void encode(List<Instruction> instructions, MessageDigest digest) {
+        var packed = PackedProgram.lower(instructions);
+        if (packed == null) {
+            throw new IllegalArgumentException("The program has instructions which cannot be part of a snapshot.");
+        }
+        var code = packed.toArray();
+        var slot = ByteBuffer.allocate(PackedProgram.SLOT_SIZE * Integer.BYTES);
+        for (int i = 0; i < instructions.size(); i++) {
+            var instruction = instructions.get(i);
+            update(digest, instruction.getLabel());
+            update(digest, instruction.getOpcode());
+            slot.clear();
+            slot.asIntBuffer().put(code, i * PackedProgram.SLOT_SIZE, PackedProgram.SLOT_SIZE);
+            digest.update(slot.array());
+            if (instruction instanceof CountedLoopInstruction loop) {
+                // The slot of a loop only holds its index among the loops, not its body
+                encode(loop.getBody(), digest);
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(loop.getDecrementRegister()).array());
+            }
+        }
+    }
+
+    /**
+     * Add the string to the digest, preceded by its length, so that consecutive strings cannot run into each other.
+     */
+    private static void update(MessageDigest digest, String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Return the binary form of the snapshot.
+     *
+     * @return the bytes of the snapshot
+     */
+    public byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream(4 * (4 + registers.length) + FINGERPRINT_LENGTH);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(fingerprint);
+            out.writeInt(pc);
+            out.writeInt(registers.length);
+            for (var value : registers) {
+                out.writeInt(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a snapshot from its binary form.
+     *
+     * @param bytes the bytes of the snapshot
+     * @return the snapshot
+     * @throws InvalidSnapshotException if the bytes are not a snapshot
+     */
+    public static MachineSnapshot fromByteArray(byte[] bytes) throws InvalidSnapshotException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC) {
+                throw new InvalidSnapshotException("The data is not a machine snapshot.");
+            }
+            var version = in.readInt();
+            if (version != VERSION) {
+                throw new InvalidSnapshotException("Snapshot version " + version + " is not supported.");
+            }
+            var fingerprint = in.readNBytes(FINGERPRINT_LENGTH);
+            if (fingerprint.length != FINGERPRINT_LENGTH) {
+                throw new EOFException();
+            }
+            var pc = in.readInt();
+            var count = in.readInt();
+            if (count != Registers.NUMBER_OF_REGISTERS) {
+                throw new InvalidSnapshotException("The snapshot has " + count + " registers instead of "
+                        + Registers.NUMBER_OF_REGISTERS + ".");
+            }
+            var registers = new int[count];
+            for (int i = 0; i < count; i++) {
+                registers[i] = in.readInt();
+            }
+            if (in.available() > 0) {
+                throw new InvalidSnapshotException("The snapshot has unexpected data at its end.");
+            }
+            return new MachineSnapshot(fingerprint, pc, registers);
+        } catch (EOFException e) {
+            throw new InvalidSnapshotException("The snapshot ends unexpectedly.", e);
+        } catch (IOException e) {
+            // Reading from memory cannot fail otherwise
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the snapshot to the given file, replacing it if it exists.
+     * The snapshot is written under a temporary name and then moved into place, so that a crash while writing
+     * leaves the previous snapshot intact.
+     *
+     * @param file the path of the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        var absolute = file.toAbsolutePath();
+        var temporary = Files.createTempFile(absolute.getParent(), "snapshot", ".tmp");
+        try {
+            Files.write(temporary, toByteArray());
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot from the given file.
+     *
+     * @param file the path of the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read
+     * @throws InvalidSnapshotException if the file is not a snapshot
+     */
+    public static MachineSnapshot read(Path file) throws IOException, InvalidSnapshotException {
+        return fromByteArray(Files.readAllBytes(file));
+    }
+
+    public int getPc() {
+        return pc;
+    }
+
+    /**
+     * Return a copy of the registers of the snapshot.
+     *
+     * @return the values of the registers
+     */
+    public int[] getRegisters() {
+        return registers.clone();
+    }
+}
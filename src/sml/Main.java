@@ -1,32 +1,264 @@
 package sml;
 
+import sml.engines.Engine;
+import sml.engines.EngineFactory;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.EngineCreationFailedException;
+import sml.exceptions.FailedToLoadAppConfigException;
+import sml.exceptions.InvalidProgramFileException;
+import sml.exceptions.InvalidSnapshotException;
+import sml.exceptions.UnknownLabelException;
+import sml.exceptions.VerificationFailedException;
+import sml.optimizer.Optimizer;
+import sml.profiler.Profile;
+import sml.profiler.Profiler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
 public class Main {
+	/**
+	 * The command line option selecting the execution engine
+	 */
+	private static final String ENGINE_OPTION = "--engine=";
+
+	/**
+	 * The command line option translating the program file in parallel
+	 */
+	private static final String PARALLEL_OPTION = "--parallel";
+
+	/**
+	 * The command line option writing the program into a compiled program file instead of running it
+	 */
+	private static final String COMPILE_OPTION = "--compile-to=";
+
+	/**
+	 * The command line option optimizing the program before running it
+	 */
+	private static final String OPTIMIZE_OPTION = "--optimize";
+
+	/**
+	 * The command line option printing the program before and after each optimization pass
+	 */
+	private static final String DUMP_OPTION = "--dump-optimization";
+
+	/**
+	 * The command line option profiling the execution, optionally followed by =text or =json to choose the
+	 * format of the report
+	 */
+	private static final String PROFILE_OPTION = "--profile";
+
+	/**
+	 * The command line option setting the number of instructions the program may execute
+	 */
+	private static final String MAX_STEPS_OPTION = "--max-steps=";
+
+	/**
+	 * The command line option setting the time in milliseconds the program may run for
+	 */
+	private static final String TIMEOUT_OPTION = "--timeout=";
+
+	/**
+	 * The command line option writing a snapshot of the machine if the program stops before its end
+	 */
+	private static final String SNAPSHOT_OPTION = "--snapshot=";
+
+	/**
+	 * The command line option resuming the program from a snapshot instead of starting it from the beginning
+	 */
+	private static final String RESUME_OPTION = "--resume=";
+
 	/**
 	 * Initialises the system and executes the program.
 	 *
-	 * @param args name of the file containing the program text.
+	 * @param args name of the file containing the program text, or of a compiled program file ending in .smlc,
+	 *             optionally preceded by --engine=name to select the execution engine, by --parallel to
+	 *             translate the file in parallel and by --compile-to=file.smlc to write the program into a
+	 *             compiled program file instead of running it, by --optimize to optimize the program before
+	 *             running it, by --dump-optimization to print the program before and after each
+	 *             optimization pass and by --profile[=text|json] to run the program with the profiler,
+	 *             instead of the engine, and print its report, which cannot be combined with the options
+	 *             below, and by --max-steps=n and
+	 *             --timeout=milliseconds to stop the program if it runs for too long, by
+	 *             --snapshot=file.smls to write the state of a stopped program into a snapshot file and by
+	 *             --resume=file.smls to resume the program from a snapshot file.
 	 */
 	public static void main(String... args) {
-		if (args.length != 1) {
-			System.err.println("Incorrect number of arguments - Machine <file> - required");
+		String fileName = null;
+		String engineName = EngineFactory.DEFAULT_ENGINE;
+		var parallel = false;
+		String compiledFileName = null;
+		var optimize = false;
+		var dump = false;
+		String profileFormat = null;
+		var limits = ExecutionLimits.NONE;
+		var validLimits = true;
+		String snapshotFileName = null;
+		String resumeFileName = null;
+		for (var arg : args) {
+			if (arg.startsWith(ENGINE_OPTION)) {
+				engineName = arg.substring(ENGINE_OPTION.length());
+			} else if (arg.equals(PARALLEL_OPTION)) {
+				parallel = true;
+			} else if (arg.startsWith(COMPILE_OPTION)) {
+				compiledFileName = arg.substring(COMPILE_OPTION.length());
+			} else if (arg.equals(OPTIMIZE_OPTION)) {
+				optimize = true;
+			} else if (arg.equals(DUMP_OPTION)) {
+				dump = true;
+			} else if (arg.equals(PROFILE_OPTION)) {
+				profileFormat = "text";
+			} else if (arg.startsWith(PROFILE_OPTION + "=")) {
+				profileFormat = arg.substring(PROFILE_OPTION.length() + 1);
+			} else if (arg.startsWith(SNAPSHOT_OPTION)) {
+				snapshotFileName = arg.substring(SNAPSHOT_OPTION.length());
+			} else if (arg.startsWith(RESUME_OPTION)) {
+				resumeFileName = arg.substring(RESUME_OPTION.length());
+			} else if (arg.startsWith(MAX_STEPS_OPTION)) {
+				try {
+					limits = limits.withMaxSteps(Long.parseLong(arg.substring(MAX_STEPS_OPTION.length())));
+				} catch (IllegalArgumentException ex) {
+					validLimits = false;
+				}
+			} else if (arg.startsWith(TIMEOUT_OPTION)) {
+				try {
+					limits = limits.withTimeout(Duration.ofMillis(Long.parseLong(arg.substring(TIMEOUT_OPTION.length()))));
+				} catch (IllegalArgumentException ex) {
+					validLimits = false;
+				}
+			} else if (fileName == null) {
+				fileName = arg;
+			} else {
+				fileName = null;
+				break;
+			}
+		}
+		if (!validLimits || profileFormat != null && !profileFormat.equals("text") && !profileFormat.equals("json")) {
+			fileName = null;
+		}
+		if (fileName == null) {
+			System.err.println("Incorrect number of arguments - Machine [" + ENGINE_OPTION + "<engine>] ["
+					+ PARALLEL_OPTION + "] [" + COMPILE_OPTION + "<file.smlc>] [" + OPTIMIZE_OPTION + "] [" + DUMP_OPTION + "] [" + PROFILE_OPTION + "[=text|json]] [" + MAX_STEPS_OPTION + "<n>] [" + TIMEOUT_OPTION
+					+ "<milliseconds>] [" + SNAPSHOT_OPTION + "<file.smls>] [" + RESUME_OPTION + "<file.smls>] <file> - required");
+			System.exit(-1);
+		}
+		if (profileFormat != null && (limits != ExecutionLimits.NONE || !validLimits || resumeFileName != null
+				|| snapshotFileName != null)) {
+			// The profiler runs the program to its end from its first instruction, so it cannot honour these
+			System.err.println("Could not profile program: " + PROFILE_OPTION
+					+ " cannot be combined with --max-steps, --timeout, --snapshot or --resume.");
+			System.exit(-1);
+		}
+
+		Engine engine = null;
+		try {
+			engine = new EngineFactory(AppConfig.getInstance()).createEngine(engineName);
+		} catch (FailedToLoadAppConfigException | EngineCreationFailedException ex) {
+			System.err.println("Could not create engine: " + ex.getMessage());
 			System.exit(-1);
 		}
 
 		Machine m = new Machine();
-		Translator t = new Translator(args[0]);
-		var success = t.readAndTranslate(m.getLabels(), m.getProg());
-		if (!success) {
-			System.err.println("Could not parse program file.");
+		if (fileName.endsWith(BinaryProgramFormat.EXTENSION)) {
+			try {
+				BinaryProgramReader.read(Path.of(fileName), m);
+			} catch (IOException | InvalidProgramFileException ex) {
+				System.err.println("Could not load compiled program file: " + ex.getMessage());
+				System.exit(-1);
+			}
+		} else {
+			Translator t = new Translator(fileName);
+			var success = parallel
+					? t.readAndTranslateInParallel(m.getLabels(), m.getProg())
+					: t.readAndTranslate(m.getLabels(), m.getProg());
+			if (!success) {
+				System.err.println("Could not parse program file.");
+				System.exit(-1);
+			}
+
+			try {
+				m.link();
+			} catch (UnknownLabelException ex) {
+				System.err.println("Could not link program: " + ex.getMessage());
+				System.exit(-1);
+			}
+		}
+
+		if (compiledFileName != null) {
+			try {
+				if (!BinaryProgramWriter.write(m, Path.of(compiledFileName))) {
+					System.err.println("Could not compile program: it uses instructions which have no compiled form.");
+					System.exit(-1);
+				}
+			} catch (IOException ex) {
+				System.err.println("Could not write compiled program file: " + ex.getMessage());
+				System.exit(-1);
+			}
+			System.out.println("Compiled " + m.getProg().size() + " instructions into " + compiledFileName + ".");
+			return;
+		}
+
+		if (optimize) {
+			try {
+				var optimizer = Optimizer.standard().dumpTo(dump ? System.out : null);
+				m = new Machine(Program.of(optimizer.optimize(m.getProg())));
+			} catch (DuplicateLabelException | UnknownLabelException ex) {
+				System.err.println("Could not optimize program: " + ex.getMessage());
+				System.exit(-1);
+			}
+		}
+
+		// Check the registers and jumps of the program once, so that the engine need not check them as it runs
+		VerifiedProgram verified = null;
+		try {
+			verified = VerifiedProgram.verify(m.getProg());
+		} catch (VerificationFailedException ex) {
+			System.err.println("Could not verify program: " + ex.getMessage());
 			System.exit(-1);
 		}
 
+		if (resumeFileName != null) {
+			try {
+				MachineSnapshot.read(Path.of(resumeFileName)).restore(m);
+			} catch (IOException | InvalidSnapshotException ex) {
+				System.err.println("Could not resume from snapshot: " + ex.getMessage());
+				System.exit(-1);
+			}
+		}
+
 		System.out.println("Here is the program; it has " + m.getProg().size() + " instructions.");
 		System.out.println(m);
 
+		// Print the output in batches rather than line by line; the engine flushes it when the program ends
+		m.setOutput(new BufferedOutputSink(System.out));
 		System.out.println("Beginning program execution.");
-		m.execute();
+		Profile profile = null;
+		if (profileFormat != null) {
+			profile = Profiler.execute(m);
+		} else if (limits == ExecutionLimits.NONE && resumeFileName == null) {
+			engine.prepare(verified).execute(m);
+		} else {
+			var executable = engine.prepare(verified);
+			var result = resumeFileName != null ? executable.resume(m, limits) : executable.execute(m, limits);
+			if (!result.completed()) {
+				System.out.println("Program stopped at instruction " + m.getPc() + " after " + result.steps()
+						+ " steps: " + result.status() + ".");
+				if (snapshotFileName != null) {
+					try {
+						MachineSnapshot.of(m).write(Path.of(snapshotFileName));
+						System.out.println("Wrote snapshot to " + snapshotFileName + ".");
+					} catch (IOException | IllegalArgumentException ex) {
+						System.err.println("Could not write snapshot: " + ex.getMessage());
+					}
+				}
+			}
+		}
 		System.out.println("Ending program execution.");
 
 		System.out.println("Values of registers at program termination:" + m.getRegisters() + ".");
+		if (profile != null) {
+			System.out.println(profileFormat.equals("json") ? profile.toJson() : profile.toText());
+		}
 	}
 }
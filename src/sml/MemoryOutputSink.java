@@ -0,0 +1,56 @@
+package sml;
+
+import java.util.Arrays;
+
+/**
+ * MemoryOutputSink keeps the printed values in memory, in the order in which they were printed.
+ * It is meant for tests and for embedding programs whose output is processed further.
+ *
+ * @author Marton Vago
+ */
+public final class MemoryOutputSink implements OutputSink {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    @Override
+    public void write(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Return the values printed so far.
+     *
+     * @return the printed values
+     */
+    public int[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Forget the values printed so far.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Return the values printed so far, one per line, as they would appear on the console.
+     *
+     * @return the printed values
+     */
+    @Override
+    public String toString() {
+        var s = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            s.append(values[i]).append(System.lineSeparator());
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package sml;
+
+/**
+ * An OutputSink receives the values printed by a program.
+ * Each value is printed on its own line. Sinks may hold values back until they are flushed, which the engines do
+ * when a program ends.
+ *
+ * @author Marton Vago
+ */
+public interface OutputSink {
+    /**
+     * A sink which drops every value, for executions whose output is not needed
+     */
+    OutputSink DISCARD = new OutputSink() {
+        @Override
+        public void write(int value) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    /**
+     * Print the value followed by a line separator.
+     *
+     * @param value the value to print
+     */
+    void write(int value);
+
+    /**
+     * Print any values held back.
+     */
+    void flush();
+}
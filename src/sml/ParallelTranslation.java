@@ -0,0 +1,210 @@
+package sml;
+
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.InstructionParseFailedException;
+import sml.exceptions.TranslationFailedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelTranslation translates a program file on a fork-join pool.
+ * <p>
+ * The file is split into chunks which end on line boundaries, and the lines of each chunk are translated into
+ * instructions independently. The chunks are then stitched back together in their original order, which is also
+ * when the labels are defined, so the result and the first error reported are the same as when the file is
+ * translated line by line.
+ *
+ * @author Marton Vago
+ */
+final class ParallelTranslation {
+    /**
+     * The smallest chunk worth translating on its own
+     */
+    static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The number of chunks per worker thread, so that uneven chunks still keep every worker busy
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final String pathToFile;
+    private final InstructionFactory instructionFactory;
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+
+    /**
+     * Prepare the translation of the given file in chunks of roughly the given size.
+     *
+     * @param path the path to the program file
+     * @param factory the factory creating the instructions; it is shared by all chunks
+     * @param pool the pool translating the chunks
+     * @param chunkSize the number of bytes after which a chunk ends at the next line boundary
+     */
+    ParallelTranslation(String path, InstructionFactory factory, ForkJoinPool pool, long chunkSize) {
+        pathToFile = path;
+        instructionFactory = factory;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Return a chunk size which spreads a file of the given size over the threads of the pool.
+     *
+     * @param fileSize the size of the file in bytes
+     * @param pool the pool translating the chunks
+     * @return the chunk size
+     */
+    static long chunkSizeFor(long fileSize, ForkJoinPool pool) {
+        var chunks = (long) pool.getParallelism() * CHUNKS_PER_THREAD;
+        return Math.max(MIN_CHUNK_SIZE, (fileSize + chunks - 1) / chunks);
+    }
+
+    /**
+     * Translate the file into the given labels and instructions, which are expected to be empty.
+     *
+     * @param labels the labels of a Machine
+     * @param instructions the program instructions of a Machine
+     * @throws IOException if the file cannot be read
+     * @throws TranslationFailedException if a line cannot be translated
+     */
+    void translate(Labels labels, List<Instruction> instructions) throws IOException, TranslationFailedException {
+        var boundaries = split();
+        var tasks = new ArrayList<ForkJoinTask<Chunk>>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            var start = boundaries[i];
+            var end = boundaries[i + 1];
+            tasks.add(pool.submit(() -> translateChunk(start, end)));
+        }
+
+        try {
+            // Lines are numbered from 1, so this is the number of the line before the chunk
+            var linesBefore = 0;
+            for (var task : tasks) {
+                var chunk = task.join();
+                for (int i = 0; i < chunk.instructions.size(); i++) {
+                    var instruction = chunk.instructions.get(i);
+                    try {
+                        labels.addLabel(instruction.getLabel());
+                    } catch (DuplicateLabelException e) {
+                        throw new TranslationFailedException(linesBefore + chunk.lineNumbers[i], e);
+                    }
+                    instructions.add(instruction);
+                }
+                if (chunk.failure instanceof IOException e) {
+                    throw e;
+                } else if (chunk.failure != null) {
+                    throw new TranslationFailedException(linesBefore + chunk.lineCount, chunk.failure);
+                }
+                linesBefore += chunk.lineCount;
+            }
+        } finally {
+            // Chunks after a failure are not needed
+            tasks.forEach(task -> task.cancel(false));
+        }
+    }
+
+    /**
+     * Return the offsets at which the chunks start, followed by the size of the file.
+     * Every chunk but the last ends just after a line feed.
+     */
+    private long[] split() throws IOException {
+        try (var channel = FileChannel.open(Path.of(pathToFile), StandardOpenOption.READ)) {
+            var size = channel.size();
+            var boundaries = new long[]{0};
+            var count = 1;
+            var buffer = ByteBuffer.allocate(8192);
+            var next = chunkSize;
+            while (next < size) {
+                var lineFeed = findLineFeed(channel, next, buffer);
+                if (lineFeed < 0 || lineFeed + 1 == size) {
+                    break;
+                }
+                if (count == boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, count * 2);
+                }
+                boundaries[count++] = lineFeed + 1;
+                next = lineFeed + 1 + chunkSize;
+            }
+            boundaries = Arrays.copyOf(boundaries, count + 1);
+            boundaries[count] = size;
+            return boundaries;
+        }
+    }
+
+    /**
+     * Return the offset of the first line feed at or after the given offset, or -1 if there is none.
+     */
+    private static long findLineFeed(FileChannel channel, long from, ByteBuffer buffer) throws IOException {
+        var position = from;
+        while (true) {
+            buffer.clear();
+            var read = channel.read(buffer, position);
+            if (read < 0) {
+                return -1;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Translate the lines between the given offsets.
+     * Failures are recorded in the chunk, so that they are reported in the order of the file.
+     */
+    private Chunk translateChunk(long start, long end) {
+        var chunk = new Chunk();
+        try (var reader = new ProgramFileReader(pathToFile, start, end, ProgramFileReader.DEFAULT_WINDOW_SIZE)) {
+            CharSequence content;
+            while ((content = reader.readLineInPlace()) != null) {
+                chunk.lineCount++;
+                var instruction = instructionFactory.createInstruction(Line.of(content));
+                if (instruction != null) {
+                    chunk.add(instruction);
+                }
+            }
+        } catch (IOException | InstructionParseFailedException e) {
+            chunk.failure = e;
+        }
+        return chunk;
+    }
+
+    /**
+     * The instructions translated from a chunk of the file
+     */
+    private static final class Chunk {
+        private final List<Instruction> instructions = new ArrayList<>();
+
+        /**
+         * The number of the line of each instruction within the chunk
+         */
+        private int[] lineNumbers = new int[64];
+
+        /**
+         * The number of lines read; if the chunk failed, the failing line is the last one read
+         */
+        private int lineCount;
+
+        private Exception failure;
+
+        private void add(Instruction instruction) {
+            if (instructions.size() == lineNumbers.length) {
+                lineNumbers = Arrays.copyOf(lineNumbers, lineNumbers.length * 2);
+            }
+            lineNumbers[instructions.size()] = lineCount;
+            instructions.add(instruction);
+        }
+    }
+}
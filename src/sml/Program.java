@@ -0,0 +1,112 @@
+package sml;
+
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+
+import java.util.List;
+
+/**
+ * A Program is a linked SML program which cannot be changed: its instructions and its labels are fixed when it is
+ * created. A program holds no execution state, so it can be shared by any number of threads, each running it on a
+ * Machine of its own.
+ *
+ * @author Marton Vago
+ */
+public final class Program {
+    private final List<Instruction> instructions;
+    private final Labels labels;
+
+    /**
+     * The fingerprint of the program, computed when it is first needed
+     */
+    private volatile byte[] fingerprint;
+
+    private Program(List<Instruction> instructions, Labels labels) {
+        this.instructions = instructions;
+        this.labels = labels;
+    }
+
+    /**
+     * Create a program from the given instructions and link it.
+     * The instructions are linked to their positions in this program, so they must not be used in another
+     * program afterwards.
+     *
+     * @param instructions the instructions of the program, in order
+     * @return the program
+     * @throws DuplicateLabelException if two instructions have the same label
+     * @throws UnknownLabelException if an instruction refers to a label which is not defined in the program
+     */
+    public static Program of(List<Instruction> instructions) throws DuplicateLabelException, UnknownLabelException {
+        var copy = List.copyOf(instructions);
+        var labels = new Labels();
+        for (var instruction : copy) {
+            labels.addLabel(instruction.getLabel());
+        }
+        labels.freeze();
+
+        var program = new Program(copy, labels);
+        new Machine(program).link();
+        return program;
+    }
+
+    /**
+     * Return the instructions of the program. The list cannot be modified.
+     *
+     * @return the instructions
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Return the labels of the program, which cannot be changed.
+     *
+     * @return the labels
+     */
+    Labels getLabels() {
+        return labels;
+    }
+
+    /**
+     * Return the index of the instruction with the given label, or -1 if there is none.
+     *
+     * @param label the label
+     * @return the index of the instruction
+     */
+    public int indexOf(String label) {
+        return labels.indexOf(label);
+    }
+
+    /**
+     * Return the fingerprint identifying the program in machine snapshots, a hash of its instructions.
+     *
+     * @return the fingerprint
+     * @throws IllegalArgumentException if the program has instructions which cannot be part of a snapshot
+     */
+    byte[] getFingerprint() {
+        var hash = fingerprint;
+        if (hash == null) {
+            hash = MachineSnapshot.fingerprint(instructions);
+            fingerprint = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Return the number of instructions in the program.
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return instructions.size();
+    }
+
+    @Override
+    public String toString() {
+        var s = new StringBuilder();
+        for (var instruction : instructions) {
+            s.append(instruction).append("\n");
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,230 @@
+package sml;
+
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.InvalidProgramFileException;
+import sml.exceptions.UnknownLabelException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ProgramCache keeps the programs translated from program files, so that a file which is loaded again is neither
+ * read nor translated a second time while it is unchanged.
+ * <p>
+ * Programs are kept in memory by path, up to a fixed number of programs, the least recently used being evicted
+ * first. A cached program is reused while the modification time and size of its file are unchanged; otherwise the
+ * file is hashed, and the program is reused if the content has not changed. Optionally, programs are also stored
+ * in their compiled form in a cache directory, by content hash, so that a program loaded by another process or
+ * after a restart does not need to be translated either.
+ * <p>
+ * The cache is thread-safe. If several threads load the same file at the same time, it may be translated more
+ * than once.
+ *
+ * @author Marton Vago
+ */
+public final class ProgramCache {
+    private final int capacity;
+    private final Path directory;
+    private final Map<Path, Entry> entries;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * Construct a cache holding at most the given number of programs in memory.
+     *
+     * @param capacity the maximum number of programs in memory
+     */
+    public ProgramCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Construct a cache holding at most the given number of programs in memory, and storing their compiled form
+     * in the given directory.
+     *
+     * @param capacity the maximum number of programs in memory
+     * @param directory the directory of compiled programs, which is created if necessary, or null for none
+     */
+    public ProgramCache(int capacity, Path directory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one program, but its capacity was " + capacity);
+        }
+        this.capacity = capacity;
+        this.directory = directory;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                return size() > ProgramCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the program in the given file, from the cache if the file has not changed since it was cached.
+     * Return null if the file cannot be translated; the Translator reports the reason.
+     *
+     * @param file the program file
+     * @return the program
+     * @throws IOException if the file cannot be read
+     * @throws DuplicateLabelException if two instructions of the program have the same label
+     * @throws UnknownLabelException if an instruction refers to a label which is not defined in the program
+     */
+    public Program get(Path file) throws IOException, DuplicateLabelException, UnknownLabelException {
+        var key = file.toAbsolutePath().normalize();
+        var modified = Files.getLastModifiedTime(key).toMillis();
+        var size = Files.size(key);
+
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if (cached != null && cached.modified == modified && cached.size == size) {
+                hits++;
+                return cached.program;
+            }
+        }
+
+        var hash = hash(key);
+        if (cached != null && Arrays.equals(cached.hash, hash)) {
+            // The file was touched but not changed
+            put(key, new Entry(modified, size, hash, cached.program));
+            synchronized (this) {
+                hits++;
+            }
+            return cached.program;
+        }
+
+        var program = readCompiled(hash);
+        if (program != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        } else {
+            program = translate(key);
+            if (program == null) {
+                return null;
+            }
+            writeCompiled(hash, program);
+            synchronized (this) {
+                misses++;
+            }
+        }
+        put(key, new Entry(modified, size, hash, program));
+        return program;
+    }
+
+    private synchronized void put(Path key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    private static Program translate(Path file) throws DuplicateLabelException, UnknownLabelException {
+        var m = new Machine();
+        if (!new Translator(file.toString()).readAndTranslate(m.getLabels(), m.getProg())) {
+            return null;
+        }
+        return Program.of(m.getProg());
+    }
+
+    /**
+     * Return the program stored in the cache directory under the given hash, or null if there is none.
+     * A stored file which cannot be loaded is treated as missing, and is replaced once the program is translated.
+     */
+    private Program readCompiled(byte[] hash) throws IOException {
+        if (directory == null) {
+            return null;
+        }
+        var file = compiledFile(hash);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            var m = new Machine();
+            BinaryProgramReader.read(file, m);
+            return Program.of(m.getProg());
+        } catch (InvalidProgramFileException | DuplicateLabelException | UnknownLabelException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store the program in the cache directory under the given hash, unless it has no compiled form.
+     * The file is written under a temporary name and then moved into place, so that readers never see it partly
+     * written.
+     */
+    private void writeCompiled(byte[] hash, Program program) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        var temporary = Files.createTempFile(directory, "program", ".tmp");
+        try {
+            if (BinaryProgramWriter.write(new Machine(program), temporary)) {
+                Files.move(temporary, compiledFile(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path compiledFile(byte[] hash) {
+        // The version is part of the name, so that files in an older format are not read
+        return directory.resolve(HexFormat.of().formatHex(hash) + "-v" + BinaryProgramFormat.VERSION
+                + BinaryProgramFormat.EXTENSION);
+    }
+
+    private static byte[] hash(Path file) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return the number of loads answered from memory.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Return the number of loads answered from the cache directory.
+     *
+     * @return the number of hits on disk
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Return the number of loads which translated the file.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the number of programs in memory.
+     *
+     * @return the number of programs
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry(long modified, long size, byte[] hash, Program program) { }
+}
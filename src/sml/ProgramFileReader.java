@@ -0,0 +1,258 @@
+package sml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * ProgramFileReader reads the lines of a UTF-8 encoded program file.
+ * <p>
+ * The file is memory-mapped, one window at a time, and lines are found by scanning the mapped bytes for line
+ * feeds, so no regular expressions are involved and each line is copied only once, into its String. Lines read in
+ * place are not even decoded into a String: their bytes are copied into a buffer the reader reuses, which Line
+ * tokenizes directly, so only the words it returns become Strings.
+ * Lines end with "\n" or "\r\n". As with java.util.Scanner, a line feed at the very end of the file does not
+ * start another line.
+ *
+ * @author Marton Vago
+ */
+final class ProgramFileReader implements Closeable {
+    /**
+     * The default number of bytes mapped at once
+     */
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    /**
+     * The offset in the file where reading stops
+     */
+    private final long endOffset;
+    private final int windowSize;
+
+    /**
+     * The currently mapped part of the file
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * The offset of the window in the file
+     */
+    private long windowStart;
+
+    /**
+     * The position of the next line in the window
+     */
+    private int position;
+
+    /**
+     * The buffer the bytes of a line are copied into before decoding
+     */
+    private byte[] lineBytes = new byte[256];
+
+    /**
+     * The view of lineBytes returned for lines read in place
+     */
+    private final AsciiLine asciiLine = new AsciiLine();
+
+    /**
+     * The bits set in any byte of the line found by the last findLineFeed, which has only ASCII characters if the
+     * highest bit is clear
+     */
+    private int lineBits;
+
+    /**
+     * The start and the end, without its line terminator, of the line in the window last found by nextLine
+     */
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * Open the file with the given path for reading.
+     *
+     * @param path the path to the file
+     * @throws IOException if the file cannot be opened
+     */
+    ProgramFileReader(String path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Open the file with the given path for reading, mapping at most windowSize bytes at once.
+     * No line may be longer than the window.
+     *
+     * @param path the path to the file
+     * @param windowSize the number of bytes to map at once
+     * @throws IOException if the file cannot be opened
+     */
+    ProgramFileReader(String path, int windowSize) throws IOException {
+        this(path, 0, -1, windowSize);
+    }
+
+    /**
+     * Open the file with the given path for reading the lines between the given offsets, mapping at most
+     * windowSize bytes at once. The part of the file read is treated as if it were the whole file.
+     * No line may be longer than the window.
+     *
+     * @param path the path to the file
+     * @param start the offset of the first byte to read
+     * @param end the offset after the last byte to read, or -1 to read to the end of the file
+     * @param windowSize the number of bytes to map at once
+     * @throws IOException if the file cannot be opened
+     */
+    ProgramFileReader(String path, long start, long end, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        endOffset = end < 0 ? channel.size() : end;
+        mapWindow(start);
+    }
+
+    /**
+     * Return the next line without its line terminator, or null if the end of the file has been reached.
+     *
+     * @return the next line
+     * @throws IOException if the file cannot be read or a line is longer than the window
+     */
+    String readLine() throws IOException {
+        return nextLine() ? decode(lineStart, lineEnd - lineStart) : null;
+    }
+
+    /**
+     * Return the next line without its line terminator like readLine, or null if the end of the file has been
+     * reached. A line made only of ASCII characters, as the lines of SML programs are, is returned as a view of a
+     * buffer which the reader reuses, so it only holds the line until the next line is read.
+     *
+     * @return the next line
+     * @throws IOException if the file cannot be read or a line is longer than the window
+     */
+    CharSequence readLineInPlace() throws IOException {
+        if (!nextLine()) {
+            return null;
+        }
+        var length = lineEnd - lineStart;
+        if ((lineBits & 0x80) != 0) {
+            return decode(lineStart, length);
+        }
+        copy(lineStart, length);
+        asciiLine.length = length;
+        return asciiLine;
+    }
+
+    /**
+     * Find the next line in the window, mapping the next window if the line continues past it.
+     *
+     * @return false if the end of the file has been reached
+     */
+    private boolean nextLine() throws IOException {
+        var end = findLineFeed();
+        if (end < 0) {
+            if (windowStart + window.limit() < endOffset) {
+                // The line continues past the window, so map the next window from the start of the line
+                mapWindow(windowStart + position);
+                end = findLineFeed();
+            }
+            if (end < 0 && windowStart + window.limit() < endOffset) {
+                throw new IOException("Line at byte " + (windowStart + position) + " is longer than " + windowSize + " bytes.");
+            }
+        }
+        if (end < 0) {
+            // The last line of the file has no line feed
+            if (position == window.limit()) {
+                return false;
+            }
+            end = window.limit();
+        }
+
+        var next = Math.min(end + 1, window.limit());
+        if (end > position && window.get(end - 1) == '\r') {
+            end--;
+        }
+        lineStart = position;
+        lineEnd = end;
+        position = next;
+        return true;
+    }
+
+    /**
+     * Return the position of the first line feed from the current position in the window, or -1 if there is none.
+     */
+    private int findLineFeed() {
+        var limit = window.limit();
+        var bits = 0;
+        for (int i = position; i < limit; i++) {
+            var b = window.get(i);
+            if (b == '\n') {
+                lineBits = bits;
+                return i;
+            }
+            bits |= b;
+        }
+        lineBits = bits;
+        return -1;
+    }
+
+    private String decode(int offset, int length) {
+        copy(offset, length);
+        return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void copy(int offset, int length) {
+        if (lineBytes.length < length) {
+            lineBytes = Arrays.copyOf(lineBytes, Math.max(length, lineBytes.length * 2));
+        }
+        window.get(offset, lineBytes, 0, length);
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, endOffset - start));
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The characters of an ASCII line held in lineBytes, one per byte
+     */
+    private final class AsciiLine implements CharSequence {
+        private int length;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) lineBytes[index];
+        }
+
+        /**
+         * Return the characters between the given indices as a String of their own, which stays valid when the
+         * next line is read.
+         */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || start > end || end > length) {
+                throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length);
+            }
+            return new String(lineBytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(lineBytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
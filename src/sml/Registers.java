@@ -11,7 +11,7 @@ import java.util.Arrays;
  * @author ...
  */
 public final class Registers {
-	private static final int NUMBER_OF_REGISTERS = 32;
+	public static final int NUMBER_OF_REGISTERS = 32;
 	private final int[] registers;
 
 	// Constructor: an instance whose registers are set to 0
@@ -43,9 +43,18 @@ public final class Registers {
 		return registers;
 	}
 
-//  public void setRegisters(int[] regs) {
-//    System.arraycopy(getRegisters(), 0, regs, 0, getRegisters().length);
-//  }
+	// Set every register to the value at the same index of regs.
+	// Precondition: regs.length == NUMBER_OF_REGISTERS
+
+	public void setRegisters(int[] regs) {
+		System.arraycopy(regs, 0, getRegisters(), 0, getRegisters().length);
+	}
+
+	// Return a copy of the values of all registers.
+
+	public int[] toArray() {
+		return getRegisters().clone();
+	}
 
 	@Override
 	public boolean equals(Object o) {
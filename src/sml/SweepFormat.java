@@ -0,0 +1,205 @@
+package sml;
+
+import sml.engines.LaneResult;
+import sml.exceptions.InvalidSweepInputException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A SweepFormat is the form of the rows read and written by a SweepRunner.
+ * <p>
+ * Each input row holds the initial values of the registers of one execution, and each output row the final values
+ * of the registers and whether the execution succeeded. Rows are read and written one at a time, so a sweep never
+ * needs to hold its whole input or output.
+ *
+ * @author Marton Vago
+ */
+public enum SweepFormat {
+    /**
+     * One row per line, with the values of registers 0, 1, ... separated by commas. Registers left out at the end of
+     * an input row start at 0, and blank lines are skipped. An output row lists all registers followed by "ok", or by
+     * the reason the execution failed or was stopped.
+     */
+    CSV {
+        @Override
+        public RowReader reader(InputStream in) {
+            var lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return new RowReader() {
+                private long line;
+
+                @Override
+                public int[] read() throws IOException, InvalidSweepInputException {
+                    String text;
+                    do {
+                        text = lines.readLine();
+                        line++;
+                        if (text == null) {
+                            return null;
+                        }
+                    } while (text.isBlank());
+                    return parse(text, line);
+                }
+            };
+        }
+
+        @Override
+        public RowWriter writer(OutputStream out) {
+            var lines = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            return new RowWriter() {
+                @Override
+                public void write(LaneResult result) throws IOException {
+                    var registers = result.registers();
+                    for (int r = 0; r < Registers.NUMBER_OF_REGISTERS; r++) {
+                        lines.write(Integer.toString(registers.getRegister(r)));
+                        lines.write(',');
+                    }
+                    if (result.succeeded()) {
+                        lines.write("ok");
+                    } else if (result.error() != null) {
+                        var reason = "failed at instruction " + (result.pc() - 1) + ": " + result.error();
+                        lines.write(reason.replace(',', ';'));
+                    } else {
+                        lines.write("stopped at instruction " + result.pc() + ": " + result.status());
+                    }
+                    lines.newLine();
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    lines.flush();
+                }
+            };
+        }
+
+        private int[] parse(String text, long line) throws InvalidSweepInputException {
+            var fields = text.split(",", -1);
+            if (fields.length > Registers.NUMBER_OF_REGISTERS) {
+                throw new InvalidSweepInputException("Line " + line + " has " + fields.length
+                        + " values, but there are only " + Registers.NUMBER_OF_REGISTERS + " registers.");
+            }
+            var registers = new int[Registers.NUMBER_OF_REGISTERS];
+            for (int r = 0; r < fields.length; r++) {
+                try {
+                    registers[r] = Integer.parseInt(fields[r].trim());
+                } catch (NumberFormatException e) {
+                    throw new InvalidSweepInputException("Line " + line + " has an invalid value '" + fields[r]
+                            + "' for register " + r + ".", e);
+                }
+            }
+            return registers;
+        }
+    },
+
+    /**
+     * Rows of big-endian ints without any header. An input row is the value of every register, and an output row is
+     * 0 if the execution succeeded, 1 if it failed and 2 if it was stopped by its limits, then the program counter,
+     * then the value of every register.
+     */
+    BINARY {
+        @Override
+        public RowReader reader(InputStream in) {
+            var bytes = new BufferedInputStream(in);
+            var row = new byte[Registers.NUMBER_OF_REGISTERS * Integer.BYTES];
+            return new RowReader() {
+                private long index;
+
+                @Override
+                public int[] read() throws IOException, InvalidSweepInputException {
+                    var length = bytes.readNBytes(row, 0, row.length);
+                    if (length == 0) {
+                        return null;
+                    }
+                    if (length < row.length) {
+                        throw new InvalidSweepInputException("Row " + index + " ends after " + length + " of "
+                                + row.length + " bytes.");
+                    }
+                    index++;
+                    var registers = new int[Registers.NUMBER_OF_REGISTERS];
+                    ByteBuffer.wrap(row).asIntBuffer().get(registers);
+                    return registers;
+                }
+            };
+        }
+
+        @Override
+        public RowWriter writer(OutputStream out) {
+            var data = new DataOutputStream(new BufferedOutputStream(out));
+            return new RowWriter() {
+                @Override
+                public void write(LaneResult result) throws IOException {
+                    data.writeInt(result.succeeded() ? 0 : result.error() != null ? 1 : 2);
+                    data.writeInt(result.pc());
+                    for (var value : result.registers().toArray()) {
+                        data.writeInt(value);
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    data.flush();
+                }
+            };
+        }
+    };
+
+    /**
+     * Return a reader of rows from the given stream, which it does not close.
+     *
+     * @param in the stream of rows
+     * @return the reader
+     */
+    public abstract RowReader reader(InputStream in);
+
+    /**
+     * Return a writer of rows to the given stream, which it does not close.
+     *
+     * @param out the stream the rows are written to
+     * @return the writer
+     */
+    public abstract RowWriter writer(OutputStream out);
+
+    /**
+     * A RowReader reads the initial registers of one execution after another.
+     */
+    public interface RowReader {
+        /**
+         * Read the next row.
+         *
+         * @return the value of every register, or null if there are no more rows
+         * @throws IOException if the stream cannot be read
+         * @throws InvalidSweepInputException if the row is not in the format
+         */
+        int[] read() throws IOException, InvalidSweepInputException;
+    }
+
+    /**
+     * A RowWriter writes the result of one execution after another.
+     */
+    public interface RowWriter {
+        /**
+         * Write the result of an execution, which may be held back until the writer is flushed.
+         *
+         * @param result the result
+         * @throws IOException if the stream cannot be written
+         */
+        void write(LaneResult result) throws IOException;
+
+        /**
+         * Write any rows held back.
+         *
+         * @throws IOException if the stream cannot be written
+         */
+        void flush() throws IOException;
+    }
+}
@@ -0,0 +1,35 @@
+package sml;
+
+/**
+ * A SweepReport holds the number of executions of a parameter sweep and its throughput.
+ * The results of the executions themselves are streamed out while the sweep runs.
+ *
+ * @param rows the number of rows executed
+ * @param failed the number of executions which failed
+ * @param stopped the number of executions which were stopped by their limits
+ * @param nanos the time spent on the sweep, from reading the first row to writing the last one
+ * @param threads the number of threads the rows were executed on
+ * @author Marton Vago
+ */
+public record SweepReport(long rows, long failed, long stopped, long nanos, int threads) {
+    /**
+     * Return the number of executed rows per second.
+     *
+     * @return the throughput
+     */
+    public double rowsPerSecond() {
+        return nanos == 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    /**
+     * Return a summary of the sweep, e.g. "100000 rows (99997 succeeded, 2 failed, 1 stopped) on 4 threads
+     * in 210.3 ms, 475511.2 rows/s".
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d succeeded, %d failed, %d stopped) on %d threads in %.1f ms, "
+                        + "%.1f rows/s", rows, rows - failed - stopped, failed, stopped, threads, nanos / 1e6, rowsPerSecond());
+    }
+}
@@ -0,0 +1,300 @@
+package sml;
+
+import sml.engines.LaneResult;
+import sml.engines.LockstepBatch;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.InvalidSweepInputException;
+import sml.exceptions.UnknownLabelException;
+import sml.exceptions.VerificationFailedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SweepRunner executes one program once for each row of initial registers in a stream, in parallel on a fixed pool
+ * of threads, and streams out the final registers of each execution in the order of the rows.
+ * <p>
+ * The program is translated and prepared once into a LockstepBatch shared by all threads. Rows are read in chunks of
+ * chunkSize, and each chunk is executed in lockstep on one thread. Each time a chunk has been read, the chunks done
+ * so far are written in order, and at most two chunks per thread are read ahead of the oldest chunk not yet written,
+ * so the memory a sweep needs does not depend on the number of rows. The values the program prints are discarded, so
+ * they take no memory either. A sweep may be given ExecutionLimits, whose step budget applies to every row and whose
+ * deadline to each chunk; rows which exceed them are reported as stopped.
+ *
+ * @author Marton Vago
+ */
+public final class SweepRunner {
+    /**
+     * The command line option setting the number of threads
+     */
+    private static final String THREADS_OPTION = "--threads=";
+
+    /**
+     * The command line option setting the number of rows executed together
+     */
+    private static final String CHUNK_SIZE_OPTION = "--chunk-size=";
+
+    /**
+     * The command line option selecting the format of the rows
+     */
+    private static final String FORMAT_OPTION = "--format=";
+
+    /**
+     * The command line option setting the number of instructions each row may execute
+     */
+    private static final String MAX_STEPS_OPTION = "--max-steps=";
+
+    /**
+     * The command line option setting the time in milliseconds each chunk of rows may run for
+     */
+    private static final String TIMEOUT_OPTION = "--timeout=";
+
+    /**
+     * The number of rows executed together by default
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /**
+     * The number of chunks per thread read ahead of the oldest chunk not yet written
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private final LockstepBatch batch;
+    private final int threads;
+    private final int chunkSize;
+    private final ExecutionLimits limits;
+
+    /**
+     * Construct a runner executing the given program on the given number of threads, in chunks of the default size.
+     *
+     * @param program the program
+     * @param threads the number of threads
+     */
+    public SweepRunner(Program program, int threads) {
+        this(program, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Construct a runner executing the given program on the given number of threads, in chunks of the given size.
+     *
+     * @param program the program
+     * @param threads the number of threads
+     * @param chunkSize the number of rows executed together
+     */
+    public SweepRunner(Program program, int threads, int chunkSize) {
+        this(program, threads, chunkSize, ExecutionLimits.NONE);
+    }
+
+    /**
+     * Construct a runner executing the given program on the given number of threads, in chunks of the given size,
+     * stopping each row which exceeds the given limits.
+     *
+     * @param program the program
+     * @param threads the number of threads
+     * @param chunkSize the number of rows executed together
+     * @param limits the limits of each row
+     */
+    public SweepRunner(Program program, int threads, int chunkSize, ExecutionLimits limits) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required, but the number of threads was " + threads);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunks must have at least one row, but the chunk size was " + chunkSize);
+        }
+        batch = new LockstepBatch(program);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.limits = limits;
+    }
+
+    /**
+     * Execute the program for every row the reader reads and write the results, in the same order, to the writer.
+     * Executions which fail or are stopped are reported in their result. The writer is flushed whenever a chunk has been written.
+     *
+     * @param rows the reader of initial registers
+     * @param results the writer of results
+     * @return the report of the sweep
+     * @throws IOException if the rows cannot be read or the results cannot be written
+     * @throws InvalidSweepInputException if a row is not in the format, in which case the results of the rows before
+     *                                    it have been written
+     * @throws InterruptedException if the thread is interrupted while waiting for the executions
+     */
+    public SweepReport run(SweepFormat.RowReader rows, SweepFormat.RowWriter results)
+            throws IOException, InvalidSweepInputException, InterruptedException {
+        var pool = Executors.newFixedThreadPool(threads);
+        try {
+            var start = System.nanoTime();
+            var pending = new ArrayDeque<Future<List<LaneResult>>>();
+            var counts = new long[3];
+            InvalidSweepInputException invalid = null;
+            var more = true;
+            while (more) {
+                var chunk = new ArrayList<int[]>(chunkSize);
+                try {
+                    more = readChunk(rows, chunk);
+                } catch (InvalidSweepInputException e) {
+                    // The rows read before the invalid one are still executed
+                    invalid = e;
+                    more = false;
+                }
+                if (!chunk.isEmpty()) {
+                    pending.add(pool.submit(() -> batch.execute(chunk, limits, lane -> OutputSink.DISCARD)));
+                }
+                while (!pending.isEmpty() && (!more || pending.size() == threads * CHUNKS_PER_THREAD
+                        || pending.peek().isDone())) {
+                    write(await(pending.remove()), results, counts);
+                }
+            }
+            if (invalid != null) {
+                throw invalid;
+            }
+            return new SweepReport(counts[0], counts[1], counts[2], System.nanoTime() - start, threads);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Read rows into the chunk until it is full.
+     *
+     * @return false if the rows have ended
+     */
+    private boolean readChunk(SweepFormat.RowReader rows, List<int[]> chunk)
+            throws IOException, InvalidSweepInputException {
+        while (chunk.size() < chunkSize) {
+            var row = rows.read();
+            if (row == null) {
+                return false;
+            }
+            chunk.add(row);
+        }
+        return true;
+    }
+
+    /**
+     * Write the results of a chunk and count them and the failed and stopped ones among them.
+     */
+    private static void write(List<LaneResult> chunk, SweepFormat.RowWriter results, long[] counts) throws IOException {
+        for (var result : chunk) {
+            results.write(result);
+            counts[0]++;
+            if (result.error() != null) {
+                counts[1]++;
+            } else if (result.stopped()) {
+                counts[2]++;
+            }
+        }
+        results.flush();
+    }
+
+    /**
+     * Wait for the chunk, whose executions report their own failures, and rethrow anything they did not expect.
+     */
+    private static <T> T await(Future<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Executes a program for every row of initial registers read from a file or the standard input, writes the final
+     * registers of each execution to the standard output and prints a summary to the standard error.
+     *
+     * @param args the program file and optionally the file of rows, optionally preceded by --threads=n to set the
+     *             number of threads, which defaults to the number of processors, by --chunk-size=n to set the
+     *             number of rows executed together, by --format=csv or --format=binary to select the format
+     *             of the rows, which defaults to csv, and by --max-steps=n and --timeout=milliseconds to stop
+     *             rows which run for too long.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        var threads = Runtime.getRuntime().availableProcessors();
+        var chunkSize = DEFAULT_CHUNK_SIZE;
+        SweepFormat format = SweepFormat.CSV;
+        var limits = ExecutionLimits.NONE;
+        var validLimits = true;
+        var paths = new ArrayList<Path>();
+        for (var arg : args) {
+            if (arg.startsWith(THREADS_OPTION)) {
+                threads = parsePositive(arg.substring(THREADS_OPTION.length()));
+            } else if (arg.startsWith(CHUNK_SIZE_OPTION)) {
+                chunkSize = parsePositive(arg.substring(CHUNK_SIZE_OPTION.length()));
+            } else if (arg.startsWith(FORMAT_OPTION)) {
+                try {
+                    format = SweepFormat.valueOf(arg.substring(FORMAT_OPTION.length()).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException ex) {
+                    format = null;
+                }
+            } else if (arg.startsWith(MAX_STEPS_OPTION)) {
+                try {
+                    limits = limits.withMaxSteps(Long.parseLong(arg.substring(MAX_STEPS_OPTION.length())));
+                } catch (IllegalArgumentException ex) {
+                    validLimits = false;
+                }
+            } else if (arg.startsWith(TIMEOUT_OPTION)) {
+                try {
+                    limits = limits.withTimeout(Duration.ofMillis(Long.parseLong(arg.substring(TIMEOUT_OPTION.length()))));
+                } catch (IllegalArgumentException ex) {
+                    validLimits = false;
+                }
+            } else {
+                paths.add(Path.of(arg));
+            }
+        }
+        if (paths.isEmpty() || paths.size() > 2 || threads < 1 || chunkSize < 1 || format == null || !validLimits) {
+            System.err.println("Incorrect arguments - SweepRunner [" + THREADS_OPTION + "<n>] [" + CHUNK_SIZE_OPTION
+                    + "<n>] [" + FORMAT_OPTION + "csv|binary] [" + MAX_STEPS_OPTION + "<n>] [" + TIMEOUT_OPTION
+                    + "<milliseconds>] <file> [<rows file>] - required");
+            System.exit(-1);
+        }
+
+        Program program = null;
+        try {
+            program = new ProgramCache(1).get(paths.get(0));
+            if (program != null) {
+                VerifiedProgram.verify(program.getInstructions());
+            }
+        } catch (DuplicateLabelException | UnknownLabelException ex) {
+            System.err.println("Could not link program: " + ex.getMessage());
+            System.exit(-1);
+        } catch (VerificationFailedException ex) {
+            System.err.println("Could not verify program: " + ex.getMessage());
+            System.exit(-1);
+        }
+        if (program == null) {
+            System.err.println("Could not parse program file.");
+            System.exit(-1);
+        }
+
+        try (InputStream in = paths.size() == 2 ? Files.newInputStream(paths.get(1)) : System.in) {
+            var report = new SweepRunner(program, threads, chunkSize, limits)
+                    .run(format.reader(in), format.writer(System.out));
+            System.err.println(report);
+        } catch (InvalidSweepInputException ex) {
+            System.err.println("Could not read row: " + ex.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    private static int parsePositive(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package sml;
 
+import sml.exceptions.DuplicateLabelException;
 import sml.exceptions.FailedToLoadAppConfigException;
 import sml.exceptions.InstructionParseFailedException;
+import sml.exceptions.TranslationFailedException;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Translator encapsulates the logic for parsing a .sml file into an SML program. It reads the program file
@@ -35,6 +37,7 @@ public final class Translator {
 	 * Parses an SML program from a file with the given file name.
 	 * A file is parsed successfully if each line is translated into an Instruction without errors.
 	 * If one line fails, the entire file is deemed invalid and translation is terminated.
+	 * A file which defines the same label more than once is invalid.
 	 * Empty lines are skipped.
 	 * An empty program file is a valid program file.
 	 *
@@ -43,25 +46,39 @@ public final class Translator {
 	 * @return if the file was parsed successfully or not
 	 */
 	public boolean readAndTranslate(Labels labels, List<Instruction> instructions) {
+		return translate(labels, instructions, this::translateSequentially);
+	}
+
+	/**
+	 * Parses an SML program from a file with the given file name like readAndTranslate, but translates
+	 * chunks of the file in parallel on the common fork-join pool.
+	 * The result, and the line reported if the file is invalid, are the same as for readAndTranslate.
+	 *
+	 * @param labels the labels of a Machine
+	 * @param instructions the program instructions of a Machine
+	 * @return if the file was parsed successfully or not
+	 */
+	public boolean readAndTranslateInParallel(Labels labels, List<Instruction> instructions) {
+		return translate(labels, instructions, (factory, l, i) -> {
+			var pool = ForkJoinPool.commonPool();
+			var chunkSize = ParallelTranslation.chunkSizeFor(Files.size(Path.of(pathToFile)), pool);
+			new ParallelTranslation(pathToFile, factory, pool, chunkSize).translate(l, i);
+		});
+	}
+
+	/**
+	 * Resets the labels and instructions, fills them using the given translation and reports any errors.
+	 */
+	private boolean translate(Labels labels, List<Instruction> instructions, Translation translation) {
 		var success = false;
-		// Initialise instruction factory to null
-		InstructionFactory instructionFactory;
-		try (var scanner = new Scanner(new File(pathToFile), StandardCharsets.UTF_8)) {
+		try {
 			// Inject singleton app config instance into instruction factory
-			instructionFactory = new InstructionFactory(AppConfig.getInstance());
+			var instructionFactory = new InstructionFactory(AppConfig.getInstance());
 
 			labels.reset();
 			instructions.clear();
 
-			// Each iteration parses a line from the .sml file
-			while (scanner.hasNextLine()) {
-				var line = Line.of(scanner.nextLine());
-				var instruction = instructionFactory.createInstruction(line);
-				if (instruction != null) {
-					labels.addLabel(line.getLabel());
-					instructions.add(instruction);
-				}
-			}
+			translation.translate(instructionFactory, labels, instructions);
 			success = true;
 		} catch (FailedToLoadAppConfigException ex) {
 			System.err.println("Error while loading " + AppConfig.FILE_NAME + ".");
@@ -69,10 +86,45 @@ public final class Translator {
 		} catch (IOException ex) {
 			System.err.println("Error while reading the program file.");
 			ex.printStackTrace();
-		} catch (InstructionParseFailedException ex) {
-			System.err.println("Error while parsing an instruction.");
-			ex.printStackTrace();
+		} catch (TranslationFailedException ex) {
+			if (ex.getCause() instanceof DuplicateLabelException) {
+				System.err.println(ex.getMessage());
+			} else {
+				System.err.println("Error while parsing the instruction on line " + ex.getLineNumber() + ".");
+				ex.getCause().printStackTrace();
+			}
 		}
 		return success;
 	}
+
+	/**
+	 * Translates the file line by line.
+	 */
+	private void translateSequentially(InstructionFactory instructionFactory, Labels labels, List<Instruction> instructions)
+			throws IOException, TranslationFailedException {
+		try (var reader = new ProgramFileReader(pathToFile)) {
+			// Each iteration parses a line from the .sml file
+			var lineNumber = 0;
+			CharSequence content;
+			while ((content = reader.readLineInPlace()) != null) {
+				lineNumber++;
+				try {
+					var line = Line.of(content);
+					var instruction = instructionFactory.createInstruction(line);
+					if (instruction != null) {
+						labels.addLabel(line.getLabel());
+						instructions.add(instruction);
+					}
+				} catch (InstructionParseFailedException | DuplicateLabelException ex) {
+					throw new TranslationFailedException(lineNumber, ex);
+				}
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Translation {
+		void translate(InstructionFactory instructionFactory, Labels labels, List<Instruction> instructions)
+				throws IOException, TranslationFailedException;
+	}
 }
@@ -0,0 +1,134 @@
+package sml;
+
+import sml.exceptions.VerificationFailedException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.DataflowOptimizer;
+import sml.optimizer.FusedInstruction;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A VerifiedProgram is a linked program which has been checked before it runs: every register its instructions use
+ * is one of the registers of the machine and every bnz has been linked to an instruction of the program. It also
+ * knows which divisions can never divide by zero. Engines can rely on this to leave out the checks they would
+ * otherwise make while the program runs.
+ * <p>
+ * Only the instructions of the language and those the optimizer creates are verified. Instructions of other
+ * classes are accepted as they are; engines which do not know them execute them with the interpreter, where they
+ * check their operands themselves.
+ *
+ * @author Marton Vago
+ */
+public final class VerifiedProgram {
+    private final List<Instruction> instructions;
+    private final BitSet nonZeroDivisors;
+
+    private VerifiedProgram(List<Instruction> instructions, BitSet nonZeroDivisors) {
+        this.instructions = instructions;
+        this.nonZeroDivisors = nonZeroDivisors;
+    }
+
+    /**
+     * Verify the given linked program.
+     *
+     * @param program the instructions of the program, which must not change afterwards
+     * @return the verified program
+     * @throws VerificationFailedException if an instruction uses a register which does not exist or a bnz
+     *                                     has not been linked to an instruction of the program
+     */
+    public static VerifiedProgram verify(List<Instruction> program) throws VerificationFailedException {
+        var instructions = List.copyOf(program);
+        for (var ins : instructions) {
+            verify(ins, instructions.size());
+        }
+        return new VerifiedProgram(instructions, DataflowOptimizer.nonZeroDivisors(instructions));
+    }
+
+    private static void verify(Instruction ins, int size) throws VerificationFailedException {
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            verifyRegisters(ins, add.getResultRegister(), add.getRegister1(), add.getRegister2());
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            verifyRegisters(ins, sub.getResultRegister(), sub.getRegister1(), sub.getRegister2());
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            verifyRegisters(ins, mul.getResultRegister(), mul.getRegister1(), mul.getRegister2());
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            verifyRegisters(ins, div.getResultRegister(), div.getRegister1(), div.getRegister2());
+        } else if (type == LinInstruction.class) {
+            verifyRegisters(ins, ((LinInstruction) ins).getRegister());
+        } else if (type == OutInstruction.class) {
+            verifyRegisters(ins, ((OutInstruction) ins).getRegister());
+        } else if (type == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            verifyRegisters(ins, bnz.getRegister());
+            var target = bnz.getJumpToIndex();
+            if (target == BnzInstruction.UNRESOLVED) {
+                throw new VerificationFailedException("Instruction '" + ins.getLabel() + "' has not been linked.");
+            }
+            if (target < 0 || target >= size) {
+                throw new VerificationFailedException("Instruction '" + ins.getLabel() + "' jumps to instruction "
+                        + target + ", but the program has " + size + " instructions.");
+            }
+        } else if (type == FusedInstruction.class) {
+            var fused = (FusedInstruction) ins;
+            verify(fused.getFirst(), size);
+            verify(fused.getSecond(), size);
+        } else if (type == CountedLoopInstruction.class) {
+            var loop = (CountedLoopInstruction) ins;
+            verifyRegisters(ins, loop.getCounterRegister(), loop.getDecrementRegister());
+            for (var bodyInstruction : loop.getBody()) {
+                verify(bodyInstruction, size);
+            }
+        }
+    }
+
+    private static void verifyRegisters(Instruction ins, int... registers) throws VerificationFailedException {
+        for (var register : registers) {
+            if (register < 0 || register >= Registers.NUMBER_OF_REGISTERS) {
+                throw new VerificationFailedException("Instruction '" + ins.getLabel() + "' uses register " + register
+                        + ", but the registers are numbered from 0 to " + (Registers.NUMBER_OF_REGISTERS - 1) + ".");
+            }
+        }
+    }
+
+    /**
+     * Return the instructions of the program. The list cannot be modified.
+     *
+     * @return the instructions
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Return whether the instruction with the given index is a div whose divisor is never zero when the program
+     * is executed from instruction 0 with every register set to 0.
+     *
+     * @param index the index of the instruction
+     * @return whether the division never throws
+     */
+    public boolean hasNonZeroDivisor(int index) {
+        return nonZeroDivisors.get(index);
+    }
+
+    /**
+     * Return the indices of the divisions whose divisor is never zero.
+     *
+     * @return a copy of the indices
+     */
+    public BitSet getNonZeroDivisors() {
+        return (BitSet) nonZeroDivisors.clone();
+    }
+}
@@ -0,0 +1,220 @@
+package sml.engines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClassFileBuilder assembles a JVM class file containing only methods.
+ * It covers just what the compiling engines need: a constant pool, interfaces and methods with a Code attribute.
+ * <p>
+ * Classes are emitted with class file version 50, for which the JVM infers the stack map frames itself when
+ * verifying the class, so that the generated code does not have to declare them.
+ *
+ * @author Marton Vago
+ */
+final class ClassFileBuilder {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 50;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolSize = 0;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * Start building a public final class.
+     *
+     * @param className the internal name of the class, e.g. "sml/engines/GeneratedProgram"
+     * @param superName the internal name of the super class
+     * @param interfaceNames the internal names of the interfaces the class implements
+     */
+    ClassFileBuilder(String className, String superName, String... interfaceNames) {
+        thisClass = classRef(className);
+        superClass = classRef(superName);
+        for (var interfaceName : interfaceNames) {
+            interfaces.add(classRef(interfaceName));
+        }
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        var name = utf8(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(name);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        var ownerIndex = classRef(owner);
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var nameAndType = constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * Return the index of the constant with the given key, adding it to the pool if it is not there yet.
+     */
+    private int constant(String key, PoolWriter writer) {
+        var index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            writer.write(pool);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndices.put(key, ++poolSize);
+        return poolSize;
+    }
+
+    /**
+     * Add a method to the class.
+     *
+     * @param access the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param code the body of the method
+     */
+    void addMethod(int access, String name, String descriptor, CodeBuffer code) {
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var codeAttribute = utf8("Code");
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            var body = code.toByteArray();
+            var handlers = code.exceptionHandlers();
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(2 + 2 + 4 + body.length + 2 + 8 * handlers.size() + 2);
+            out.writeShort(code.maxStack());
+            out.writeShort(code.maxLocals());
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(handlers.size());
+            for (var handler : handlers) {
+                out.writeShort(handler[0]);
+                out.writeShort(handler[1]);
+                out.writeShort(handler[2]);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * Add a public constructor which calls the no-argument constructor of the super class.
+     *
+     * @param superName the internal name of the super class
+     */
+    void addDefaultConstructor(String superName) {
+        var code = new CodeBuffer(this, 1, 1);
+        code.op(Opcodes.ALOAD_0);
+        code.op(Opcodes.INVOKESPECIAL);
+        code.u2(methodRef(superName, "<init>", "()V"));
+        code.op(Opcodes.RETURN);
+        addMethod(ACC_PUBLIC, "<init>", "()V", code);
+    }
+
+    /**
+     * Return the assembled class file.
+     *
+     * @return the bytes of the class file
+     */
+    byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolSize + 1);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (var index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (var method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,258 @@
+package sml.engines;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CodeBuffer collects the bytecode of a single method.
+ * Jumps are emitted against labels, which may be marked before or after the jump.
+ *
+ * @author Marton Vago
+ */
+final class CodeBuffer {
+    /**
+     * The largest body whose jumps can all be encoded with 16-bit offsets
+     */
+    static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+    private final ClassFileBuilder classFile;
+    private final int maxStack;
+    private final int maxLocals;
+    private final List<Jump> jumps = new ArrayList<>();
+    private final List<Label[]> exceptionHandlers = new ArrayList<>();
+    private byte[] code = new byte[256];
+    private int length = 0;
+
+    /**
+     * A position in the code. Its offset is -1 until it is marked.
+     */
+    static final class Label {
+        private int offset = -1;
+    }
+
+    /**
+     * A jump offset at the given position, relative to the jump instruction at origin,
+     * which is filled in once the code is complete. Wide offsets take four bytes instead of two.
+     */
+    private record Jump(int origin, int position, Label target, boolean wide) { }
+
+    /**
+     * Create an empty method body.
+     *
+     * @param classFile the class file whose constant pool the code refers to
+     * @param maxStack the maximum depth of the operand stack
+     * @param maxLocals the number of local variables
+     */
+    CodeBuffer(ClassFileBuilder classFile, int maxStack, int maxLocals) {
+        this.classFile = classFile;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    void op(int opcode) {
+        u1(opcode);
+    }
+
+    void u1(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+
+    void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    void u4(int value) {
+        u2(value >> 16);
+        u2(value);
+    }
+
+    void loadInt(int local) {
+        op(Opcodes.ILOAD);
+        u1(local);
+    }
+
+    void storeInt(int local) {
+        op(Opcodes.ISTORE);
+        u1(local);
+    }
+
+    void loadReference(int local) {
+        op(Opcodes.ALOAD);
+        u1(local);
+    }
+
+    void storeReference(int local) {
+        op(Opcodes.ASTORE);
+        u1(local);
+    }
+
+    /**
+     * Push an int constant with the shortest suitable instruction.
+     *
+     * @param value the constant
+     */
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(Opcodes.BIPUSH);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(Opcodes.SIPUSH);
+            u2(value);
+        } else {
+            op(Opcodes.LDC_W);
+            u2(classFile.integer(value));
+        }
+    }
+
+    void getStatic(String owner, String name, String descriptor) {
+        op(Opcodes.GETSTATIC);
+        u2(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    void invokeVirtual(String owner, String name, String descriptor) {
+        op(Opcodes.INVOKEVIRTUAL);
+        u2(classFile.methodRef(owner, name, descriptor));
+    }
+
+    /**
+     * Invoke an interface method.
+     *
+     * @param owner the internal name of the interface
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param argumentSlots the number of stack slots taken by the receiver and the arguments
+     */
+    void invokeInterface(String owner, String name, String descriptor, int argumentSlots) {
+        op(Opcodes.INVOKEINTERFACE);
+        u2(classFile.interfaceMethodRef(owner, name, descriptor));
+        u1(argumentSlots);
+        u1(0);
+    }
+
+    Label newLabel() {
+        return new Label();
+    }
+
+    void mark(Label label) {
+        label.offset = length;
+    }
+
+    /**
+     * Emit a jump instruction to the given label.
+     *
+     * @param opcode a jump opcode with a 16-bit offset
+     * @param target the label to jump to
+     */
+    void jump(int opcode, Label target) {
+        jumps.add(new Jump(length, length + 1, target, false));
+        op(opcode);
+        u2(0);
+    }
+
+    /**
+     * Emit a lookupswitch on the int on top of the stack.
+     *
+     * @param keys the keys of the cases in ascending order
+     * @param targets the label to jump to for each key
+     * @param defaultTarget the label to jump to if no key matches
+     */
+    void lookupSwitch(int[] keys, Label[] targets, Label defaultTarget) {
+        var origin = length;
+        op(Opcodes.LOOKUPSWITCH);
+        // The operands are aligned to a multiple of four bytes from the start of the method
+        while (length % 4 != 0) {
+            u1(0);
+        }
+        jumps.add(new Jump(origin, length, defaultTarget, true));
+        u4(0);
+        u4(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            u4(keys[i]);
+            jumps.add(new Jump(origin, length, targets[i], true));
+            u4(0);
+        }
+    }
+
+    /**
+     * Create an instance of the given class with its no-argument constructor and leave it on the stack.
+     *
+     * @param className the internal name of the class
+     */
+    void construct(String className) {
+        op(Opcodes.NEW);
+        u2(classFile.classRef(className));
+        op(Opcodes.DUP);
+        op(Opcodes.INVOKESPECIAL);
+        u2(classFile.methodRef(className, "<init>", "()V"));
+    }
+
+    /**
+     * Register a handler for any exception thrown by the code between the two labels.
+     *
+     * @param start the first instruction covered by the handler
+     * @param end the instruction following the last instruction covered by the handler
+     * @param handler the first instruction of the handler
+     */
+    void catchAny(Label start, Label end, Label handler) {
+        exceptionHandlers.add(new Label[]{start, end, handler});
+    }
+
+    int length() {
+        return length;
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Return the exception handlers as triples of start, end and handler offsets.
+     *
+     * @return the exception table of the method
+     */
+    List<int[]> exceptionHandlers() {
+        var table = new ArrayList<int[]>();
+        for (var handler : exceptionHandlers) {
+            table.add(new int[]{handler[0].offset, handler[1].offset, handler[2].offset});
+        }
+        return table;
+    }
+
+    /**
+     * Return the code with all jump offsets filled in.
+     *
+     * @return the bytes of the method body
+     * @throws IllegalStateException if a jump target was never marked or the code is too long
+     */
+    byte[] toByteArray() {
+        if (length > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Method body of " + length + " bytes is too long.");
+        }
+        var bytes = Arrays.copyOf(code, length);
+        for (var jump : jumps) {
+            if (jump.target().offset < 0) {
+                throw new IllegalStateException("Jump to a label which was never marked.");
+            }
+            var offset = jump.target().offset - jump.origin();
+            var position = jump.position();
+            if (jump.wide()) {
+                bytes[position++] = (byte) (offset >> 24);
+                bytes[position++] = (byte) (offset >> 16);
+            }
+            bytes[position++] = (byte) (offset >> 8);
+            bytes[position] = (byte) offset;
+        }
+        return bytes;
+    }
+}
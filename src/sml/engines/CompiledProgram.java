@@ -0,0 +1,32 @@
+package sml.engines;
+
+import sml.Machine;
+
+/**
+ * The interface implemented by the classes the CompilingEngine generates for SML programs.
+ *
+ * @author Marton Vago
+ */
+public interface CompiledProgram {
+    /**
+     * Run the program from the given instruction, which must be instruction 0 or the target of a backward bnz.
+     * The registers are read from the given array when the program starts and written back to it when it ends,
+     * even if the program ends with an exception.
+     *
+     * @param registers the values of the registers
+     * @param machine the machine the program is running on
+     * @param start the index of the instruction to start at
+     * @throws IllegalArgumentException if the program cannot start at the given instruction
+     */
+    void run(int[] registers, Machine machine, int start);
+
+    /**
+     * Run the program from instruction 0.
+     *
+     * @param registers the values of the registers
+     * @param machine the machine the program is running on
+     */
+    default void run(int[] registers, Machine machine) {
+        run(registers, machine, 0);
+    }
+}
@@ -0,0 +1,21 @@
+package sml.engines;
+
+import sml.Machine;
+
+/**
+ * The interface implemented by the classes the TracingEngine generates for the traces of hot loops.
+ *
+ * @author Marton Vago
+ */
+interface CompiledTrace {
+    /**
+     * Run the loop from its header until one of its guards fails or it exits through its closing bnz.
+     * The registers the trace uses are read from the given array when it starts, and the registers it writes are
+     * written back to the array when it exits, even if it exits with an exception.
+     *
+     * @param registers the values of the registers
+     * @param machine the machine the trace is running on
+     * @return the index of the instruction the interpreter continues at
+     */
+    int run(int[] registers, Machine machine);
+}
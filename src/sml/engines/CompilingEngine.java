@@ -0,0 +1,113 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Machine;
+import sml.Registers;
+import sml.VerifiedProgram;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * CompilingEngine compiles programs into JVM classes, defined as hidden classes, so that the JIT compiler
+ * can optimise an SML program like any other Java code.
+ * Programs which cannot be compiled are executed by the interpreter instead.
+ *
+ * @author Marton Vago
+ */
+public class CompilingEngine implements Engine {
+    /**
+     * The engine used for programs which cannot be compiled
+     */
+    private final Engine fallback = new InterpretingEngine();
+
+    @Override
+    public Executable prepare(List<Instruction> program) {
+        return prepare(program, compile(program));
+    }
+
+    /**
+     * Prepare the verified program, without keeping the program counter for divisions which never divide by zero.
+     */
+    @Override
+    public Executable prepare(VerifiedProgram program) {
+        return prepare(program.getInstructions(), compile(program));
+    }
+
+    private Executable prepare(List<Instruction> program, CompiledProgram compiled) {
+        if (compiled == null) {
+            return fallback.prepare(program);
+        }
+
+        var size = program.size();
+        return m -> run(compiled, new int[Registers.NUMBER_OF_REGISTERS], m, 0, size);
+    }
+
+    /**
+     * Run a compiled program from the given instruction with the given register values, leaving the machine
+     * in the same state as the interpreter would, and flush the output.
+     *
+     * @param compiled the compiled program
+     * @param registers the values of the registers when the program starts
+     * @param m the machine the program is running on
+     * @param start the instruction to start at, which must be an entry point of the compiled program
+     * @param size the number of instructions in the program
+     */
+    static void run(CompiledProgram compiled, int[] registers, Machine m, int start, int size) {
+        try {
+            compiled.run(registers, m, start);
+            m.setPc(size);
+        } finally {
+            var regs = new Registers();
+            regs.setRegisters(registers);
+            m.setRegisters(regs);
+            m.getOutput().flush();
+        }
+    }
+
+    /**
+     * Compile the program into a new hidden class and return an instance of it.
+     * Return null if the program cannot be compiled.
+     *
+     * @param program the linked instructions of the program
+     * @return the compiled program
+     */
+    public CompiledProgram compile(List<Instruction> program) {
+        return compile(program, new BitSet());
+    }
+
+    /**
+     * Compile the verified program like compile(List), relying on the divisions it knows never to divide by zero.
+     *
+     * @param program the verified program
+     * @return the compiled program
+     */
+    public CompiledProgram compile(VerifiedProgram program) {
+        return compile(program.getInstructions(), program.getNonZeroDivisors());
+    }
+
+    private CompiledProgram compile(List<Instruction> program, BitSet nonZeroDivisors) {
+        var classFile = ProgramCompiler.compile(program, nonZeroDivisors);
+        return classFile == null ? null : (CompiledProgram) instantiate(classFile);
+    }
+
+    /**
+     * Define the given class file as a hidden class in this package and return a new instance of it.
+     *
+     * @param classFile the class file of a class with a public no-argument constructor
+     * @return the instance
+     */
+    static Object instantiate(byte[] classFile) {
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return constructor.invoke();
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load compiled program.", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.VerifiedProgram;
+
+import java.util.List;
+
+/**
+ * An interface implemented by any strategy for executing SML programs.
+ * An engine prepares a translated program once, so that the result can be executed any number of times.
+ *
+ * @author Marton Vago
+ */
+public interface Engine {
+    /**
+     * Prepare the given linked program for execution.
+     *
+     * @param program the instructions of the program
+     * @return an executable form of the program
+     */
+    Executable prepare(List<Instruction> program);
+
+    /**
+     * Prepare the given verified program for execution, leaving out the checks the verification makes unnecessary.
+     * By default the program is prepared like any other.
+     *
+     * @param program the verified program
+     * @return an executable form of the program
+     */
+    default Executable prepare(VerifiedProgram program) {
+        return prepare(program.getInstructions());
+    }
+}
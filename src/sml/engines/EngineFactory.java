@@ -0,0 +1,53 @@
+package sml.engines;
+
+import sml.EngineMapper;
+import sml.exceptions.EngineCreationFailedException;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * EngineFactory is responsible for creating the execution engine registered under a given name.
+ *
+ * @author Marton Vago
+ */
+public class EngineFactory {
+    /**
+     * The name of the engine used when no engine is requested
+     */
+    public static final String DEFAULT_ENGINE = "interpreter";
+
+    /**
+     * The mapping service used by the factory to obtain the class name for the engine name
+     */
+    private final EngineMapper engineMapper;
+
+    /**
+     * Construct a factory instance with an engine mapper injected
+     * @param mapper the engine mapper
+     */
+    public EngineFactory(EngineMapper mapper) {
+        engineMapper = mapper;
+    }
+
+    /**
+     * Instantiate the engine registered under the given name through its public no-argument constructor.
+     *
+     * @param engineName the name of the engine
+     * @return the engine
+     * @throws EngineCreationFailedException if no engine is registered under the name or it cannot be instantiated
+     */
+    public Engine createEngine(String engineName) throws EngineCreationFailedException {
+        var className = engineMapper.getClassNameForEngine(engineName);
+        if (className == null) {
+            throw new EngineCreationFailedException("No engine found with name '" + engineName + "'.");
+        }
+
+        try {
+            var engineClass = Class.forName(className);
+            return (Engine) engineClass.getConstructor().newInstance();
+        } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+                 | InvocationTargetException | ClassCastException e) {
+            throw new EngineCreationFailedException(engineName, e);
+        }
+    }
+}
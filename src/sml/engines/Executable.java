@@ -0,0 +1,49 @@
+package sml.engines;
+
+import sml.ExecutionLimits;
+import sml.ExecutionResult;
+import sml.Machine;
+
+/**
+ * An executable form of an SML program, as produced by an Engine.
+ *
+ * @author Marton Vago
+ */
+@FunctionalInterface
+public interface Executable {
+    /**
+     * Execute the program on the given machine, beginning at instruction 0 with all registers set to 0.
+     * The machine must hold the program the executable was prepared from.
+     * When execution ends, the registers and the program counter of the machine are in the same state
+     * as after Machine.execute().
+     *
+     * @param m the machine to execute on
+     */
+    void execute(Machine m);
+
+    /**
+     * Execute the program on the given machine like execute(Machine), stopping early if the execution exceeds
+     * the given limits, as Machine.execute(ExecutionLimits) does.
+     * By default the program is executed by the interpreter of the machine.
+     *
+     * @param m the machine to execute on
+     * @param limits the limits of the execution
+     * @return why the execution stopped
+     */
+    default ExecutionResult execute(Machine m, ExecutionLimits limits) {
+        return m.execute(limits);
+    }
+
+    /**
+     * Continue executing the program on the given machine from its current program counter and registers,
+     * e.g. those restored from a MachineSnapshot, as Machine.resume(ExecutionLimits) does.
+     * By default the program is executed by the interpreter of the machine.
+     *
+     * @param m the machine to execute on
+     * @param limits the limits of the execution
+     * @return why the execution stopped
+     */
+    default ExecutionResult resume(Machine m, ExecutionLimits limits) {
+        return m.resume(limits);
+    }
+}
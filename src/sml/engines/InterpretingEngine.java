@@ -0,0 +1,18 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Machine;
+
+import java.util.List;
+
+/**
+ * InterpretingEngine executes programs with the fetch-decode-execute cycle of the Machine itself.
+ *
+ * @author Marton Vago
+ */
+public class InterpretingEngine implements Engine {
+    @Override
+    public Executable prepare(List<Instruction> program) {
+        return Machine::execute;
+    }
+}
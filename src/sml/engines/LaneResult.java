@@ -0,0 +1,35 @@
+package sml.engines;
+
+import sml.ExecutionResult;
+import sml.Registers;
+
+/**
+ * A LaneResult describes the execution of a program in one lane of a LockstepBatch.
+ *
+ * @param registers the registers when the execution ended
+ * @param pc the program counter when the execution ended
+ * @param output the values the program printed, in order, or null if they were written to a sink of the caller
+ * @param status why the execution ended, which is only not COMPLETED if it exceeded its limits
+ * @param error the exception the program failed with, or null if it did not fail
+ * @author Marton Vago
+ */
+public record LaneResult(Registers registers, int pc, int[] output, ExecutionResult.Status status,
+                         RuntimeException error) {
+    /**
+     * Return true if the program ran to its end.
+     *
+     * @return if the program succeeded
+     */
+    public boolean succeeded() {
+        return error == null && status == ExecutionResult.Status.COMPLETED;
+    }
+
+    /**
+     * Return true if the program was stopped by its limits.
+     *
+     * @return if the program was stopped
+     */
+    public boolean stopped() {
+        return status != ExecutionResult.Status.COMPLETED;
+    }
+}
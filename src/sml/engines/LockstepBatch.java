@@ -0,0 +1,575 @@
+package sml.engines;
+
+import sml.ExecutionLimits;
+import sml.ExecutionResult;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.OutputSink;
+import sml.Program;
+import sml.Registers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * LockstepBatch executes one program over many sets of initial registers at once, each set in a lane of its own.
+ * <p>
+ * The registers of the lanes are laid out column-wise: register k of every lane is held in one array, so that every
+ * instruction of the packed program becomes a loop over the lanes which the JIT compiler can turn into SIMD
+ * instructions. The lanes at the same instruction run together as a group, selected by a mask of 0 or -1 per lane,
+ * which the loops apply without branching. When a bnz goes different ways in different lanes, the group follows the
+ * majority, and the other lanes wait at the instruction they continue with until the group gets there and they
+ * rejoin it, as happens when lanes leave a loop after different numbers of iterations. Once a group has ended, the
+ * lanes waiting at the earliest instruction form the next group.
+ * <p>
+ * Groups of fewer than MIN_GROUP_SIZE lanes are not worth running in lockstep, so their lanes are finished one at a
+ * time by the interpreter, as are all lanes of a program which cannot be lowered into a PackedProgram.
+ * <p>
+ * Each lane may be given ExecutionLimits, which are checked like Machine.resume(ExecutionLimits) checks them: the
+ * steps of every lane are counted, and a lane which has used up its step budget when it jumps backwards is stopped
+ * there. The deadline and cancellation apply to the whole batch. Without limits, a lane which never ends keeps the
+ * batch from ending.
+ *
+ * @author Marton Vago
+ */
+public final class LockstepBatch {
+    /**
+     * The smallest number of lanes run in lockstep
+     */
+    public static final int MIN_GROUP_SIZE = 4;
+
+    private static final int ACTIVE = -1;
+
+    private final Program program;
+    private final PackedProgram packed;
+    private final int minGroupSize;
+
+    /**
+     * Prepare the given program for execution in lockstep.
+     *
+     * @param program the program
+     */
+    public LockstepBatch(Program program) {
+        this(program, MIN_GROUP_SIZE);
+    }
+
+    /**
+     * Prepare the given program for execution in lockstep, in groups of at least the given number of lanes.
+     *
+     * @param program the program
+     * @param minGroupSize the smallest number of lanes run in lockstep
+     */
+    LockstepBatch(Program program, int minGroupSize) {
+        this.program = program;
+        this.minGroupSize = minGroupSize;
+        packed = PackedProgram.lower(program.getInstructions());
+    }
+
+    /**
+     * Execute the program once for each of the given sets of initial registers, each from instruction 0 and without
+     * limits. The results hold what each lane printed.
+     *
+     * @param initialRegisters the initial values of the registers of each lane
+     * @return the result of each lane, in the same order
+     * @throws IllegalArgumentException if a set does not have a value for every register
+     */
+    public List<LaneResult> execute(List<int[]> initialRegisters) {
+        return new Execution(initialRegisters, ExecutionLimits.NONE, null).run();
+    }
+
+    /**
+     * Execute the program once for each of the given sets of initial registers, each from instruction 0, stopping
+     * the lanes which exceed the given limits. What each lane prints is written to the sink the given function
+     * returns for the index of the lane, e.g. OutputSink.DISCARD, so the results do not hold it.
+     *
+     * @param initialRegisters the initial values of the registers of each lane
+     * @param limits the limits of each lane
+     * @param outputs the function returning the output sink of each lane
+     * @return the result of each lane, in the same order
+     * @throws IllegalArgumentException if a set does not have a value for every register
+     */
+    public List<LaneResult> execute(List<int[]> initialRegisters, ExecutionLimits limits,
+                                    IntFunction<OutputSink> outputs) {
+        return new Execution(initialRegisters, limits, outputs).run();
+    }
+
+    /**
+     * The state of the lanes of one execution of the batch.
+     */
+    private final class Execution {
+        private final int lanes;
+
+        /**
+         * The registers, one array per register holding its value in every lane
+         */
+        private final int[][] columns = new int[Registers.NUMBER_OF_REGISTERS][];
+
+        /**
+         * ACTIVE for the lanes in the running group, 0 for the others
+         */
+        private final int[] mask;
+
+        /**
+         * The instruction each lane outside the running group waits at, or ended at
+         */
+        private final int[] pcs;
+        private final boolean[] ended;
+
+        /**
+         * The number of lanes waiting at each instruction
+         */
+        private final int[] waiting;
+        private final OutputSink[] outputs;
+
+        /**
+         * Whether the outputs are MemoryOutputSinks whose values go into the results
+         */
+        private final boolean keepOutput;
+        private final RuntimeException[] errors;
+        private final ExecutionResult.Status[] statuses;
+
+        private final ExecutionLimits limits;
+        private final boolean limited;
+        private final ExecutionLimits.Monitor monitor;
+        private final long startNanos;
+
+        /**
+         * The number of instructions each lane outside the running group has executed
+         */
+        private final long[] steps;
+
+        /**
+         * The number of instructions each lane in the running group had executed when the group had executed none,
+         * so that a lane has executed groupSteps + base[lane] instructions while it is in the group
+         */
+        private final long[] base;
+        private long groupSteps;
+
+        /**
+         * At least the largest base of the lanes in the running group
+         */
+        private long maxBase;
+
+        /**
+         * The number of lanes in the running group
+         */
+        private int groupSize;
+
+        private Execution(List<int[]> initialRegisters, ExecutionLimits limits, IntFunction<OutputSink> outputs) {
+            lanes = initialRegisters.size();
+            for (int r = 0; r < columns.length; r++) {
+                columns[r] = new int[lanes];
+            }
+            for (int l = 0; l < lanes; l++) {
+                var registers = initialRegisters.get(l);
+                if (registers.length != Registers.NUMBER_OF_REGISTERS) {
+                    throw new IllegalArgumentException("Lane " + l + " has " + registers.length
+                            + " registers instead of " + Registers.NUMBER_OF_REGISTERS + ".");
+                }
+                for (int r = 0; r < columns.length; r++) {
+                    columns[r][l] = registers[r];
+                }
+            }
+            mask = new int[lanes];
+            pcs = new int[lanes];
+            ended = new boolean[lanes];
+            waiting = new int[program.size() + 1];
+            waiting[0] = lanes;
+            this.outputs = new OutputSink[lanes];
+            keepOutput = outputs == null;
+            for (int l = 0; l < lanes; l++) {
+                this.outputs[l] = keepOutput ? new MemoryOutputSink() : outputs.apply(l);
+            }
+            errors = new RuntimeException[lanes];
+            statuses = new ExecutionResult.Status[lanes];
+            Arrays.fill(statuses, ExecutionResult.Status.COMPLETED);
+            this.limits = limits;
+            limited = limits != ExecutionLimits.NONE;
+            startNanos = System.nanoTime();
+            monitor = limits.start();
+            steps = new long[lanes];
+            base = new long[lanes];
+        }
+
+        List<LaneResult> run() {
+            var size = program.size();
+            var start = 0;
+            while (true) {
+                while (start < size && waiting[start] == 0) {
+                    start++;
+                }
+                if (start >= size) {
+                    break;
+                }
+                groupSteps = 0;
+                maxBase = Long.MIN_VALUE;
+                join(start);
+                if (packed == null || groupSize < minGroupSize) {
+                    interpretGroup(start);
+                } else {
+                    runGroup(start);
+                }
+                // Lanes may wait at earlier instructions, e.g. at the target of a bnz jumping backwards,
+                // so the search for the next group starts over
+                start = 0;
+            }
+            // Lanes waiting at the end of the program, e.g. every lane of an empty program, have ended there
+            for (int l = 0; l < lanes; l++) {
+                ended[l] = true;
+                outputs[l].flush();
+            }
+
+            var results = new ArrayList<LaneResult>(lanes);
+            for (int l = 0; l < lanes; l++) {
+                var registers = new Registers();
+                for (int r = 0; r < columns.length; r++) {
+                    registers.setRegister(r, columns[r][l]);
+                }
+                var output = keepOutput ? ((MemoryOutputSink) outputs[l]).getValues() : null;
+                results.add(new LaneResult(registers, pcs[l], output, statuses[l], errors[l]));
+            }
+            return results;
+        }
+
+        /**
+         * Add the lanes waiting at the given instruction to the running group.
+         */
+        private void join(int index) {
+            for (int l = 0; l < lanes; l++) {
+                if (!ended[l] && mask[l] == 0 && pcs[l] == index) {
+                    mask[l] = ACTIVE;
+                    groupSize++;
+                    base[l] = steps[l] - groupSteps;
+                    maxBase = Math.max(maxBase, base[l]);
+                }
+            }
+            waiting[index] = 0;
+        }
+
+        /**
+         * Take the lane out of the running group to wait at the given instruction.
+         */
+        private void leave(int lane, int index) {
+            mask[lane] = 0;
+            pcs[lane] = index;
+            steps[lane] = groupSteps + base[lane];
+            waiting[index]++;
+            groupSize--;
+        }
+
+        /**
+         * End the lane with the given exception, leaving the program counter after the failing instruction
+         * as the interpreter does.
+         */
+        private void fail(int lane, int index, RuntimeException e) {
+            mask[lane] = 0;
+            pcs[lane] = index + 1;
+            ended[lane] = true;
+            errors[lane] = e;
+            groupSize--;
+        }
+
+        /**
+         * Run the group of lanes in lockstep from the given instruction until every lane of it has ended
+         * or is waiting.
+         */
+        private void runGroup(int start) {
+            var code = packed.code();
+            var end = code.length;
+            var pc = start * PackedProgram.SLOT_SIZE;
+            var full = groupSize == lanes;
+            while (pc < end) {
+                var index = pc / PackedProgram.SLOT_SIZE;
+                if (waiting[index] != 0) {
+                    join(index);
+                    full = groupSize == lanes;
+                }
+                groupSteps++;
+                int next = pc + PackedProgram.SLOT_SIZE;
+                switch (code[pc]) {
+                    case PackedProgram.ADD -> add(columns[code[pc + 1]], columns[code[pc + 2]], columns[code[pc + 3]], full);
+                    case PackedProgram.SUB -> sub(columns[code[pc + 1]], columns[code[pc + 2]], columns[code[pc + 3]], full);
+                    case PackedProgram.MUL -> mul(columns[code[pc + 1]], columns[code[pc + 2]], columns[code[pc + 3]], full);
+                    case PackedProgram.DIV -> div(columns[code[pc + 1]], columns[code[pc + 2]], columns[code[pc + 3]], index);
+                    case PackedProgram.LIN -> lin(columns[code[pc + 1]], code[pc + 2], full);
+                    case PackedProgram.OUT -> {
+                        var column = columns[code[pc + 1]];
+                        for (int l = 0; l < lanes; l++) {
+                            if (mask[l] != 0) {
+                                outputs[l].write(column[l]);
+                            }
+                        }
+                    }
+                    case PackedProgram.BNZ -> next = branch(columns[code[pc + 1]], code[pc + 2], index);
+                    case PackedProgram.SUB_BNZ -> {
+                        var operands = code[pc + 1];
+                        sub(columns[operands & 0xFF], columns[(operands >>> 8) & 0xFF],
+                                columns[(operands >>> 16) & 0xFF], full);
+                        next = branch(columns[operands >>> 24], code[pc + 2], index);
+                    }
+                    case PackedProgram.LIN_LIN -> {
+                        lin(columns[code[pc + 1] & 0xFF], code[pc + 2], full);
+                        lin(columns[code[pc + 1] >>> 8], code[pc + 3], full);
+                    }
+                    case PackedProgram.LOOP -> {
+                        // Counted loops run one iteration at a time, jumping back to themselves
+                        runBody(packed.loop(code[pc + 1]).body(), full);
+                        next = branch(columns[code[pc + 2]], pc, index);
+                    }
+                    default -> throw new IllegalStateException("Unknown packed op code " + code[pc]);
+                }
+                if (limited && next <= pc && groupSize > 0) {
+                    checkGroup(next / PackedProgram.SLOT_SIZE);
+                }
+                if (groupSize == 0) {
+                    return;
+                }
+                if (groupSize < minGroupSize) {
+                    // Too few lanes are left to be worth running in lockstep
+                    for (int l = 0; l < lanes; l++) {
+                        if (mask[l] != 0) {
+                            leave(l, next / PackedProgram.SLOT_SIZE);
+                        }
+                    }
+                    interpretGroup(next / PackedProgram.SLOT_SIZE);
+                    return;
+                }
+                full &= groupSize == lanes;
+                pc = next;
+            }
+            for (int l = 0; l < lanes; l++) {
+                if (mask[l] != 0) {
+                    mask[l] = 0;
+                    pcs[l] = end / PackedProgram.SLOT_SIZE;
+                    ended[l] = true;
+                }
+            }
+            groupSize = 0;
+        }
+
+        /**
+         * Decide the bnz for the running group, and return the slot of the instruction it continues at.
+         * Lanes which go the other way than the majority of the group wait at the instruction they continue at.
+         */
+        private int branch(int[] column, int target, int index) {
+            var jumping = 0;
+            for (int l = 0; l < lanes; l++) {
+                jumping += mask[l] & (column[l] != 0 ? 1 : 0);
+            }
+            if (jumping == 0) {
+                return (index + 1) * PackedProgram.SLOT_SIZE;
+            }
+            var size = groupSize;
+            if (jumping != size) {
+                var jump = 2 * jumping >= size;
+                var other = jump ? index + 1 : target / PackedProgram.SLOT_SIZE;
+                for (int l = 0; l < lanes; l++) {
+                    if (mask[l] != 0 && (column[l] != 0) != jump) {
+                        leave(l, other);
+                        if (limited && other <= index) {
+                            checkWaiting(l);
+                        }
+                    }
+                }
+                if (!jump) {
+                    return (index + 1) * PackedProgram.SLOT_SIZE;
+                }
+            }
+            return target;
+        }
+
+        /**
+         * Check the limits of the running group, which has just jumped back to the given instruction.
+         */
+        private void checkGroup(int index) {
+            var status = monitor.check(groupSteps + maxBase);
+            if (status == ExecutionResult.Status.STEP_LIMIT_REACHED) {
+                maxBase = Long.MIN_VALUE;
+                for (int l = 0; l < lanes; l++) {
+                    if (mask[l] != 0) {
+                        if (groupSteps + base[l] >= limits.getMaxSteps()) {
+                            leave(l, index);
+                            stop(l, status);
+                        } else {
+                            maxBase = Math.max(maxBase, base[l]);
+                        }
+                    }
+                }
+            } else if (status != null) {
+                stopAll(index, status);
+            }
+        }
+
+        /**
+         * Check the limits of the lane, which has just jumped back to the instruction it waits at.
+         */
+        private void checkWaiting(int lane) {
+            var status = monitor.check(steps[lane]);
+            if (status != null) {
+                // On a timeout or cancellation, the rest of the lanes are stopped once the group checks its limits
+                stop(lane, status);
+            }
+        }
+
+        /**
+         * End the waiting lane where it waits.
+         */
+        private void stop(int lane, ExecutionResult.Status status) {
+            waiting[pcs[lane]]--;
+            ended[lane] = true;
+            statuses[lane] = status;
+        }
+
+        /**
+         * End every lane which has not ended yet, the lanes of the running group at the given instruction.
+         */
+        private void stopAll(int index, ExecutionResult.Status status) {
+            for (int l = 0; l < lanes; l++) {
+                if (mask[l] != 0) {
+                    leave(l, index);
+                }
+            }
+            for (int l = 0; l < lanes; l++) {
+                if (!ended[l]) {
+                    stop(l, status);
+                }
+            }
+        }
+
+        /**
+         * Run one iteration of the packed body of a counted loop in every lane of the group.
+         */
+        private void runBody(int[] body, boolean full) {
+            for (int pc = 0; pc < body.length; pc += PackedProgram.SLOT_SIZE) {
+                switch (body[pc]) {
+                    case PackedProgram.ADD -> add(columns[body[pc + 1]], columns[body[pc + 2]], columns[body[pc + 3]], full);
+                    case PackedProgram.SUB -> sub(columns[body[pc + 1]], columns[body[pc + 2]], columns[body[pc + 3]], full);
+                    case PackedProgram.MUL -> mul(columns[body[pc + 1]], columns[body[pc + 2]], columns[body[pc + 3]], full);
+                    case PackedProgram.LIN -> lin(columns[body[pc + 1]], body[pc + 2], full);
+                    default -> throw new IllegalStateException("Unknown packed op code in loop body " + body[pc]);
+                }
+            }
+        }
+
+        private void add(int[] result, int[] left, int[] right, boolean full) {
+            if (full) {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = left[l] + right[l];
+                }
+            } else {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = (left[l] + right[l]) & mask[l] | result[l] & ~mask[l];
+                }
+            }
+        }
+
+        private void sub(int[] result, int[] left, int[] right, boolean full) {
+            if (full) {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = left[l] - right[l];
+                }
+            } else {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = (left[l] - right[l]) & mask[l] | result[l] & ~mask[l];
+                }
+            }
+        }
+
+        private void mul(int[] result, int[] left, int[] right, boolean full) {
+            if (full) {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = left[l] * right[l];
+                }
+            } else {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = (left[l] * right[l]) & mask[l] | result[l] & ~mask[l];
+                }
+            }
+        }
+
+        /**
+         * Divide in every lane of the group, failing the lanes which divide by zero.
+         * There is no SIMD integer division, so the lanes are divided one by one.
+         */
+        private void div(int[] result, int[] left, int[] right, int index) {
+            for (int l = 0; l < lanes; l++) {
+                if (mask[l] != 0) {
+                    if (right[l] == 0) {
+                        fail(l, index, new ArithmeticException("/ by zero"));
+                    } else {
+                        result[l] = left[l] / right[l];
+                    }
+                }
+            }
+        }
+
+        private void lin(int[] result, int value, boolean full) {
+            if (full) {
+                Arrays.fill(result, value);
+            } else {
+                for (int l = 0; l < lanes; l++) {
+                    result[l] = value & mask[l] | result[l] & ~mask[l];
+                }
+            }
+        }
+
+        /**
+         * Finish every lane waiting at the given instruction with the interpreter, one lane at a time.
+         */
+        private void interpretGroup(int start) {
+            for (int l = 0; l < lanes; l++) {
+                if (mask[l] != 0) {
+                    leave(l, start);
+                }
+            }
+            for (int l = 0; l < lanes; l++) {
+                if (!ended[l] && pcs[l] == start) {
+                    interpret(l);
+                }
+            }
+            waiting[start] = 0;
+            groupSize = 0;
+        }
+
+        private void interpret(int lane) {
+            var m = new Machine(program);
+            var registers = new Registers();
+            for (int r = 0; r < columns.length; r++) {
+                registers.setRegister(r, columns[r][lane]);
+            }
+            m.setRegisters(registers);
+            m.setPc(pcs[lane]);
+            m.setOutput(outputs[lane]);
+            try {
+                statuses[lane] = m.resume(remainingLimits(lane)).status();
+            } catch (RuntimeException e) {
+                errors[lane] = e;
+            }
+            for (int r = 0; r < columns.length; r++) {
+                columns[r][lane] = m.getRegisters().getRegister(r);
+            }
+            pcs[lane] = m.getPc();
+            ended[lane] = true;
+        }
+
+        /**
+         * Return the limits left to the lane after the steps it has executed and the time the batch has taken.
+         * Limits are only checked at backward jumps, so a lane may already have run past its step budget on forward
+         * code; it is left no steps, and is stopped at its next backward jump, as the interpreter would stop it.
+         */
+        private ExecutionLimits remainingLimits(int lane) {
+            if (!limited) {
+                return ExecutionLimits.NONE;
+            }
+            var remaining = limits.withMaxSteps(Math.max(0, limits.getMaxSteps() - steps[lane]));
+            if (limits.getTimeoutNanos() != Long.MAX_VALUE) {
+                var left = limits.getTimeoutNanos() - (System.nanoTime() - startNanos);
+                remaining = remaining.withTimeout(Duration.ofNanos(Math.max(0, left)));
+            }
+            return remaining;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package sml.engines;
+
+/**
+ * The JVM opcodes used by the compiling engines.
+ *
+ * @author Marton Vago
+ */
+final class Opcodes {
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ALOAD_0 = 0x2a;
+    static final int IALOAD = 0x2e;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int IASTORE = 0x4f;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int LOOKUPSWITCH = 0xab;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ATHROW = 0xbf;
+
+    private Opcodes() { }
+}
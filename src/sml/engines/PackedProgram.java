@@ -0,0 +1,239 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A PackedProgram is a linked SML program lowered into a dense int array.
+ * <p>
+ * Every instruction takes SLOT_SIZE ints: its op code followed by its operands, unused operands being 0.
+ * The target of a bnz is stored as the offset of the target instruction's slot in the array.
+ * Only the instructions of the language itself can be lowered, together with the superinstructions fusing sub and
+ * bnz, and lin and lin. As a superinstruction has more operands than fit in a slot, its registers are packed into
+ * a single int, a byte each, the first register in the lowest byte. The body of a counted loop does not fit into a
+ * slot either, so it is lowered into a packed body of its own, kept next to the code.
+ *
+ * @author Marton Vago
+ */
+public final class PackedProgram {
+    /**
+     * The number of ints used by every instruction
+     */
+    public static final int SLOT_SIZE = 4;
+
+    // The op codes of the packed instructions
+    public static final int ADD = 0;
+    public static final int SUB = 1;
+    public static final int MUL = 2;
+    public static final int DIV = 3;
+    public static final int LIN = 4;
+    public static final int OUT = 5;
+    public static final int BNZ = 6;
+    // The superinstructions: [SUB_BNZ, registers (r, s1, s2, bnz register), target, 0]
+    // and [LIN_LIN, registers (r1, r2), value1, value2]
+    public static final int SUB_BNZ = 7;
+    public static final int LIN_LIN = 8;
+    // The counted loops: [LOOP, index of the loop, counter register, 0]
+    public static final int LOOP = 9;
+
+    private final int[] code;
+    private final Loop[] loops;
+
+    private PackedProgram(int[] code, Loop[] loops) {
+        this.code = code;
+        this.loops = loops;
+    }
+
+    /**
+     * Lower the given program into its packed form.
+     * Return null if the program contains an instruction which cannot be lowered.
+     *
+     * @param program the linked instructions of the program
+     * @return the packed program
+     */
+    public static PackedProgram lower(List<Instruction> program) {
+        var code = new int[program.size() * SLOT_SIZE];
+        var loops = new ArrayList<Loop>();
+        for (int i = 0; i < program.size(); i++) {
+            var ins = program.get(i);
+            if (ins.getClass() == CountedLoopInstruction.class) {
+                var loop = lowerLoop((CountedLoopInstruction) ins);
+                if (loop == null) {
+                    return null;
+                }
+                put(code, i * SLOT_SIZE, LOOP, loops.size(), loop.instruction().getCounterRegister(), 0);
+                loops.add(loop);
+            } else if (!lowerInstruction(ins, code, i * SLOT_SIZE)) {
+                return null;
+            }
+        }
+        return new PackedProgram(code, loops.toArray(new Loop[0]));
+    }
+
+    /**
+     * Lower the body of a counted loop, or return null if it cannot be lowered.
+     */
+    private static Loop lowerLoop(CountedLoopInstruction loop) {
+        var body = loop.getBody();
+        var code = new int[body.size() * SLOT_SIZE];
+        for (int i = 0; i < body.size(); i++) {
+            if (!lowerInstruction(body.get(i), code, i * SLOT_SIZE) || !isArithmetic(code[i * SLOT_SIZE])) {
+                return null;
+            }
+        }
+        if (packRegisters(loop.getCounterRegister()) == -1) {
+            return null;
+        }
+        return new Loop(loop, code);
+    }
+
+    /**
+     * Write the slot of a single instruction.
+     *
+     * @return false if the instruction cannot be lowered
+     */
+    private static boolean lowerInstruction(Instruction ins, int[] code, int slot) {
+        // Only exact classes are lowered, as subclasses may change what the instruction does
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            put(code, slot, ADD, add.getResultRegister(), add.getRegister1(), add.getRegister2());
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            put(code, slot, SUB, sub.getResultRegister(), sub.getRegister1(), sub.getRegister2());
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            put(code, slot, MUL, mul.getResultRegister(), mul.getRegister1(), mul.getRegister2());
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            put(code, slot, DIV, div.getResultRegister(), div.getRegister1(), div.getRegister2());
+        } else if (type == LinInstruction.class) {
+            var lin = (LinInstruction) ins;
+            put(code, slot, LIN, lin.getRegister(), lin.getValue(), 0);
+        } else if (type == OutInstruction.class) {
+            var out = (OutInstruction) ins;
+            put(code, slot, OUT, out.getRegister(), 0, 0);
+        } else if (type == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            if (bnz.getJumpToIndex() == BnzInstruction.UNRESOLVED) {
+                return false;
+            }
+            put(code, slot, BNZ, bnz.getRegister(), bnz.getJumpToIndex() * SLOT_SIZE, 0);
+        } else if (type == FusedInstruction.class) {
+            return lowerFused((FusedInstruction) ins, code, slot);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean lowerFused(FusedInstruction fused, int[] code, int slot) {
+        var first = fused.getFirst();
+        var second = fused.getSecond();
+        if (first.getClass() == SubInstruction.class && second.getClass() == BnzInstruction.class) {
+            var sub = (SubInstruction) first;
+            var bnz = (BnzInstruction) second;
+            var registers = packRegisters(sub.getResultRegister(), sub.getRegister1(), sub.getRegister2(), bnz.getRegister());
+            if (registers == -1 || bnz.getJumpToIndex() == BnzInstruction.UNRESOLVED) {
+                return false;
+            }
+            put(code, slot, SUB_BNZ, registers, bnz.getJumpToIndex() * SLOT_SIZE, 0);
+            return true;
+        } else if (first.getClass() == LinInstruction.class && second.getClass() == LinInstruction.class) {
+            var lin1 = (LinInstruction) first;
+            var lin2 = (LinInstruction) second;
+            var registers = packRegisters(lin1.getRegister(), lin2.getRegister());
+            if (registers == -1) {
+                return false;
+            }
+            put(code, slot, LIN_LIN, registers, lin1.getValue(), lin2.getValue());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return whether the op code is one of those a loop body is made of, which only change registers.
+     */
+    private static boolean isArithmetic(int opCode) {
+        return opCode == ADD || opCode == SUB || opCode == MUL || opCode == LIN;
+    }
+
+    /**
+     * Pack the registers into an int, a byte each, or return -1 if one of them is not a register.
+     */
+    private static int packRegisters(int... registers) {
+        var packed = 0;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < 0 || registers[i] >= Registers.NUMBER_OF_REGISTERS) {
+                return -1;
+            }
+            packed |= registers[i] << (8 * i);
+        }
+        return packed;
+    }
+
+    private static void put(int[] code, int slot, int opCode, int operand1, int operand2, int operand3) {
+        code[slot] = opCode;
+        code[slot + 1] = operand1;
+        code[slot + 2] = operand2;
+        code[slot + 3] = operand3;
+    }
+
+    /**
+     * Return the packed instructions. The array must not be modified.
+     *
+     * @return the packed instructions
+     */
+    int[] code() {
+        return code;
+    }
+
+    /**
+     * Return the counted loop with the given index.
+     *
+     * @param index the index of the loop, the first operand of its LOOP instruction
+     * @return the loop
+     */
+    Loop loop(int index) {
+        return loops[index];
+    }
+
+    /**
+     * Return a copy of the packed instructions.
+     *
+     * @return the packed instructions
+     */
+    public int[] toArray() {
+        return code.clone();
+    }
+
+    /**
+     * Return the number of instructions in the program.
+     *
+     * @return the number of instructions
+     */
+    public int size() {
+        return code.length / SLOT_SIZE;
+    }
+
+    /**
+     * A counted loop of the program.
+     *
+     * @param instruction the instruction running the loop, which evaluates it in closed form
+     * @param body the packed instructions of the body, made of ADD, SUB, MUL and LIN only
+     */
+    record Loop(CountedLoopInstruction instruction, int[] body) { }
+}
@@ -0,0 +1,269 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * ProgramCompiler translates a linked SML program into the class file of a CompiledProgram.
+ * <p>
+ * The registers are held in local variables of the generated run method, so that every instruction becomes a few
+ * JVM instructions on locals and every bnz a conditional jump. Only the instructions of the language itself can be
+ * compiled, together with the superinstructions and counted loops of the optimizer; programs containing any other
+ * Instruction subclass are left to the interpreter.
+ * <p>
+ * The run method starts with a lookupswitch on its start argument, so that it can be entered at instruction 0
+ * and at the target of every backward bnz, i.e. at every loop header.
+ *
+ * @author Marton Vago
+ */
+final class ProgramCompiler {
+    private static final String CLASS_NAME = "sml/engines/GeneratedProgram";
+    private static final String COMPILED_PROGRAM = "sml/engines/CompiledProgram";
+    private static final String MACHINE = "sml/Machine";
+    private static final String OUTPUT_SINK = "sml/OutputSink";
+    private static final String RUN_DESCRIPTOR = "([IL" + MACHINE + ";I)V";
+
+    // The local variables of the run method
+    private static final int REGISTER_ARRAY_LOCAL = 1;
+    private static final int MACHINE_LOCAL = 2;
+    private static final int START_LOCAL = 3;
+    private static final int FIRST_REGISTER_LOCAL = 4;
+    private static final int PC_LOCAL = FIRST_REGISTER_LOCAL + Registers.NUMBER_OF_REGISTERS;
+    private static final int EXCEPTION_LOCAL = PC_LOCAL + 1;
+    private static final int OUTPUT_LOCAL = EXCEPTION_LOCAL + 1;
+    private static final int MAX_LOCALS = OUTPUT_LOCAL + 1;
+    private static final int MAX_STACK = 3;
+
+    private ProgramCompiler() { }
+
+    /**
+     * Return the class file of a CompiledProgram running the given program,
+     * or null if the program cannot be compiled.
+     *
+     * @param program the linked instructions of the program
+     * @param nonZeroDivisors the indices of the divisions which never divide by zero
+     * @return the class file
+     */
+    static byte[] compile(List<Instruction> program, BitSet nonZeroDivisors) {
+        var classFile = new ClassFileBuilder(CLASS_NAME, "java/lang/Object", COMPILED_PROGRAM);
+        classFile.addDefaultConstructor("java/lang/Object");
+
+        var code = new CodeBuffer(classFile, MAX_STACK, MAX_LOCALS);
+        for (int r = 0; r < Registers.NUMBER_OF_REGISTERS; r++) {
+            code.loadReference(REGISTER_ARRAY_LOCAL);
+            code.pushInt(r);
+            code.op(Opcodes.IALOAD);
+            code.storeInt(FIRST_REGISTER_LOCAL + r);
+        }
+        code.pushInt(0);
+        code.storeInt(PC_LOCAL);
+        code.loadReference(MACHINE_LOCAL);
+        code.invokeVirtual(MACHINE, "getOutput", "()L" + OUTPUT_SINK + ";");
+        code.storeReference(OUTPUT_LOCAL);
+
+        // One label per instruction, plus one for the end of the program
+        var labels = new CodeBuffer.Label[program.size() + 1];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = code.newLabel();
+        }
+
+        // Jump to the instruction to start at, which must be an entry point
+        var entries = entryPoints(program);
+        var entryLabels = new CodeBuffer.Label[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            entryLabels[i] = labels[entries[i]];
+        }
+        var invalidEntry = code.newLabel();
+        code.loadInt(START_LOCAL);
+        code.lookupSwitch(entries, entryLabels, invalidEntry);
+        code.mark(invalidEntry);
+        code.construct("java/lang/IllegalArgumentException");
+        code.op(Opcodes.ATHROW);
+
+        for (int i = 0; i < program.size(); i++) {
+            code.mark(labels[i]);
+            if (!compileInstruction(code, program.get(i), i, labels, nonZeroDivisors)) {
+                return null;
+            }
+        }
+        code.mark(labels[program.size()]);
+        storeRegisters(code);
+        code.op(Opcodes.RETURN);
+
+        // If an instruction throws, write the registers and the program counter back before rethrowing
+        if (!program.isEmpty()) {
+            var handler = code.newLabel();
+            code.mark(handler);
+            code.storeReference(EXCEPTION_LOCAL);
+            storeRegisters(code);
+            code.loadReference(MACHINE_LOCAL);
+            code.loadInt(PC_LOCAL);
+            code.invokeVirtual(MACHINE, "setPc", "(I)V");
+            code.loadReference(EXCEPTION_LOCAL);
+            code.op(Opcodes.ATHROW);
+            code.catchAny(labels[0], labels[program.size()], handler);
+        }
+
+        if (code.length() > CodeBuffer.MAX_CODE_LENGTH) {
+            return null;
+        }
+        classFile.addMethod(ClassFileBuilder.ACC_PUBLIC, "run", RUN_DESCRIPTOR, code);
+        return classFile.toByteArray();
+    }
+
+    /**
+     * Return the instructions the run method can start at in ascending order: instruction 0, or the end of an
+     * empty program, and the target of every backward bnz.
+     *
+     * @param program the linked instructions of the program
+     * @return the indices of the entry points
+     */
+    static int[] entryPoints(List<Instruction> program) {
+        var entries = new TreeSet<Integer>();
+        entries.add(0);
+        for (int i = 0; i < program.size(); i++) {
+            var target = backwardTarget(program.get(i), i);
+            if (target >= 0) {
+                entries.add(target);
+            }
+        }
+        return entries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Return the target of the given instruction if it is a bnz jumping backwards, or -1 otherwise.
+     * A counted loop jumps back to itself.
+     */
+    private static int backwardTarget(Instruction ins, int index) {
+        if (ins.getClass() == CountedLoopInstruction.class) {
+            return index;
+        }
+        if (ins.getClass() == FusedInstruction.class) {
+            var fused = (FusedInstruction) ins;
+            return Math.max(backwardTarget(fused.getFirst(), index), backwardTarget(fused.getSecond(), index));
+        }
+        if (ins.getClass() == BnzInstruction.class) {
+            var target = ((BnzInstruction) ins).getJumpToIndex();
+            return target != BnzInstruction.UNRESOLVED && target <= index ? target : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Emit the code for a single instruction.
+     *
+     * @return false if the instruction cannot be compiled
+     */
+    private static boolean compileInstruction(CodeBuffer code, Instruction ins, int index, CodeBuffer.Label[] labels,
+                                              BitSet nonZeroDivisors) {
+        // Only exact classes are compiled, as subclasses may change what the instruction does
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            return binary(code, Opcodes.IADD, add.getResultRegister(), add.getRegister1(), add.getRegister2());
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            return binary(code, Opcodes.ISUB, sub.getResultRegister(), sub.getRegister1(), sub.getRegister2());
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            return binary(code, Opcodes.IMUL, mul.getResultRegister(), mul.getRegister1(), mul.getRegister2());
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            // Division is the only instruction that can throw, so only it needs to keep the program counter,
+            // unless its divisor is known not to be zero
+            if (!nonZeroDivisors.get(index)) {
+                code.pushInt(index + 1);
+                code.storeInt(PC_LOCAL);
+            }
+            return binary(code, Opcodes.IDIV, div.getResultRegister(), div.getRegister1(), div.getRegister2());
+        } else if (type == LinInstruction.class) {
+            var lin = (LinInstruction) ins;
+            if (!isRegister(lin.getRegister())) {
+                return false;
+            }
+            code.pushInt(lin.getValue());
+            code.storeInt(FIRST_REGISTER_LOCAL + lin.getRegister());
+            return true;
+        } else if (type == OutInstruction.class) {
+            var out = (OutInstruction) ins;
+            if (!isRegister(out.getRegister())) {
+                return false;
+            }
+            code.loadReference(OUTPUT_LOCAL);
+            code.loadInt(FIRST_REGISTER_LOCAL + out.getRegister());
+            code.invokeInterface(OUTPUT_SINK, "write", "(I)V", 2);
+            return true;
+        } else if (type == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            if (!isRegister(bnz.getRegister()) || bnz.getJumpToIndex() == BnzInstruction.UNRESOLVED) {
+                return false;
+            }
+            code.loadInt(FIRST_REGISTER_LOCAL + bnz.getRegister());
+            code.jump(Opcodes.IFNE, labels[bnz.getJumpToIndex()]);
+            return true;
+        } else if (type == FusedInstruction.class) {
+            // The instructions of a superinstruction are compiled one after the other
+            var fused = (FusedInstruction) ins;
+            return compileInstruction(code, fused.getFirst(), index, labels, nonZeroDivisors)
+                    && compileInstruction(code, fused.getSecond(), index, labels, nonZeroDivisors);
+        } else if (type == CountedLoopInstruction.class) {
+            // A counted loop becomes its body followed by a jump back to it; the JIT compiler is left to optimize
+            // the loop instead of evaluating it in closed form
+            var loop = (CountedLoopInstruction) ins;
+            for (var bodyIns : loop.getBody()) {
+                var bodyType = bodyIns.getClass();
+                if (bodyType != LinInstruction.class && bodyType != AddInstruction.class
+                        && bodyType != SubInstruction.class && bodyType != MulInstruction.class) {
+                    return false;
+                }
+                if (!compileInstruction(code, bodyIns, index, labels, nonZeroDivisors)) {
+                    return false;
+                }
+            }
+            if (!isRegister(loop.getCounterRegister())) {
+                return false;
+            }
+            code.loadInt(FIRST_REGISTER_LOCAL + loop.getCounterRegister());
+            code.jump(Opcodes.IFNE, labels[index]);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean binary(CodeBuffer code, int opcode, int result, int register1, int register2) {
+        if (!isRegister(result) || !isRegister(register1) || !isRegister(register2)) {
+            return false;
+        }
+        code.loadInt(FIRST_REGISTER_LOCAL + register1);
+        code.loadInt(FIRST_REGISTER_LOCAL + register2);
+        code.op(opcode);
+        code.storeInt(FIRST_REGISTER_LOCAL + result);
+        return true;
+    }
+
+    private static boolean isRegister(int register) {
+        return register >= 0 && register < Registers.NUMBER_OF_REGISTERS;
+    }
+
+    private static void storeRegisters(CodeBuffer code) {
+        for (int r = 0; r < Registers.NUMBER_OF_REGISTERS; r++) {
+            code.loadReference(REGISTER_ARRAY_LOCAL);
+            code.pushInt(r);
+            code.loadInt(FIRST_REGISTER_LOCAL + r);
+            code.op(Opcodes.IASTORE);
+        }
+    }
+}
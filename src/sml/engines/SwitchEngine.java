@@ -0,0 +1,182 @@
+package sml.engines;
+
+import sml.ExecutionLimits;
+import sml.ExecutionResult;
+import sml.Instruction;
+import sml.Machine;
+import sml.Registers;
+
+import java.util.List;
+
+/**
+ * SwitchEngine executes programs lowered into a PackedProgram with a single switch-based dispatch loop.
+ * The registers and the program counter are kept in locals while the program runs and written back to the
+ * machine when it ends, so that the loop does not go through the accessors of the Machine on every step.
+ * Programs which cannot be lowered are executed by the interpreter instead.
+ * <p>
+ * Limits are checked when a jump goes backwards; as executions without limits are checked against
+ * ExecutionLimits.NONE, which never stops them, both share the same loop.
+ *
+ * @author Marton Vago
+ */
+public class SwitchEngine implements Engine {
+    /**
+     * The engine used for programs which cannot be lowered
+     */
+    private final Engine fallback = new InterpretingEngine();
+
+    @Override
+    public Executable prepare(List<Instruction> program) {
+        var packed = PackedProgram.lower(program);
+        if (packed == null) {
+            return fallback.prepare(program);
+        }
+        return new Executable() {
+            @Override
+            public void execute(Machine m) {
+                run(packed, m, ExecutionLimits.NONE);
+            }
+
+            @Override
+            public ExecutionResult execute(Machine m, ExecutionLimits limits) {
+                return run(packed, m, limits);
+            }
+
+            @Override
+            public ExecutionResult resume(Machine m, ExecutionLimits limits) {
+                return run(packed, m, limits, m.getPc(), m.getRegisters().toArray());
+            }
+        };
+    }
+
+    /**
+     * Execute the packed program from instruction 0 with all registers set to 0, checking the limits whenever
+     * a jump goes backwards.
+     *
+     * @param program the packed program
+     * @param m the machine to execute on
+     * @param limits the limits of the execution
+     * @return why the execution stopped
+     */
+    static ExecutionResult run(PackedProgram program, Machine m, ExecutionLimits limits) {
+        return run(program, m, limits, 0, new int[Registers.NUMBER_OF_REGISTERS]);
+    }
+
+    /**
+     * Execute the packed program from the given instruction with the given registers, checking the limits
+     * whenever a jump goes backwards.
+     *
+     * @param program the packed program
+     * @param m the machine to execute on
+     * @param limits the limits of the execution
+     * @param start the index of the instruction to start from
+     * @param registers the values of the registers to start with, which are changed as the program runs
+     * @return why the execution stopped
+     */
+    private static ExecutionResult run(PackedProgram program, Machine m, ExecutionLimits limits, int start,
+                                       int[] registers) {
+        var code = program.code();
+        var output = m.getOutput();
+        var monitor = limits.start();
+        var end = code.length;
+        var pc = start * PackedProgram.SLOT_SIZE;
+        // Steps are counted a run of instructions at a time, each time a jump is taken, rather than one by one
+        long steps = 0;
+        var runStart = pc;
+        ExecutionResult.Status stopped = null;
+        try {
+            run:
+            while (pc < end) {
+                switch (code[pc]) {
+                    case PackedProgram.ADD -> registers[code[pc + 1]] = registers[code[pc + 2]] + registers[code[pc + 3]];
+                    case PackedProgram.SUB -> registers[code[pc + 1]] = registers[code[pc + 2]] - registers[code[pc + 3]];
+                    case PackedProgram.MUL -> registers[code[pc + 1]] = registers[code[pc + 2]] * registers[code[pc + 3]];
+                    case PackedProgram.DIV -> registers[code[pc + 1]] = registers[code[pc + 2]] / registers[code[pc + 3]];
+                    case PackedProgram.LIN -> registers[code[pc + 1]] = code[pc + 2];
+                    case PackedProgram.OUT -> output.write(registers[code[pc + 1]]);
+                    case PackedProgram.BNZ -> {
+                        if (registers[code[pc + 1]] != 0) {
+                            var target = code[pc + 2];
+                            steps += (pc - runStart) / PackedProgram.SLOT_SIZE + 1;
+                            runStart = target;
+                            if (target <= pc && (stopped = monitor.check(steps)) != null) {
+                                pc = target;
+                                break run;
+                            }
+                            pc = target;
+                            continue;
+                        }
+                    }
+                    case PackedProgram.SUB_BNZ -> {
+                        var operands = code[pc + 1];
+                        registers[operands & 0xFF] = registers[(operands >>> 8) & 0xFF] - registers[(operands >>> 16) & 0xFF];
+                        if (registers[operands >>> 24] != 0) {
+                            var target = code[pc + 2];
+                            steps += (pc - runStart) / PackedProgram.SLOT_SIZE + 1;
+                            runStart = target;
+                            if (target <= pc && (stopped = monitor.check(steps)) != null) {
+                                pc = target;
+                                break run;
+                            }
+                            pc = target;
+                            continue;
+                        }
+                    }
+                    case PackedProgram.LIN_LIN -> {
+                        registers[code[pc + 1] & 0xFF] = code[pc + 2];
+                        registers[code[pc + 1] >>> 8] = code[pc + 3];
+                    }
+                    case PackedProgram.LOOP -> {
+                        var loop = program.loop(code[pc + 1]);
+                        if (!loop.instruction().evaluateInClosedForm(registers)) {
+                            // The iterations are run here rather than through the dispatch loop; each one jumps
+                            // back to the loop itself, as in the interpreter, so limits are checked every time
+                            var body = loop.body();
+                            var counter = code[pc + 2];
+                            runBody(body, registers);
+                            while (registers[counter] != 0) {
+                                steps += (pc - runStart) / PackedProgram.SLOT_SIZE + 1;
+                                runStart = pc;
+                                if ((stopped = monitor.check(steps)) != null) {
+                                    break run;
+                                }
+                                runBody(body, registers);
+                            }
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unknown packed op code " + code[pc]);
+                }
+                pc += PackedProgram.SLOT_SIZE;
+            }
+            if (stopped == null) {
+                steps += (pc - runStart) / PackedProgram.SLOT_SIZE;
+            }
+            m.setPc(pc / PackedProgram.SLOT_SIZE);
+        } catch (RuntimeException e) {
+            // Like the interpreter, leave the program counter after the failing instruction
+            m.setPc(pc / PackedProgram.SLOT_SIZE + 1);
+            throw e;
+        } finally {
+            var regs = new Registers();
+            regs.setRegisters(registers);
+            m.setRegisters(regs);
+            output.flush();
+        }
+        return new ExecutionResult(stopped == null ? ExecutionResult.Status.COMPLETED : stopped, steps);
+    }
+
+    /**
+     * Run one iteration of the packed body of a counted loop.
+     */
+    private static void runBody(int[] body, int[] registers) {
+        for (int pc = 0; pc < body.length; pc += PackedProgram.SLOT_SIZE) {
+            switch (body[pc]) {
+                case PackedProgram.ADD -> registers[body[pc + 1]] = registers[body[pc + 2]] + registers[body[pc + 3]];
+                case PackedProgram.SUB -> registers[body[pc + 1]] = registers[body[pc + 2]] - registers[body[pc + 3]];
+                case PackedProgram.MUL -> registers[body[pc + 1]] = registers[body[pc + 2]] * registers[body[pc + 3]];
+                case PackedProgram.LIN -> registers[body[pc + 1]] = body[pc + 2];
+                default -> throw new IllegalStateException("Unknown packed op code in loop body " + body[pc]);
+            }
+        }
+    }
+}
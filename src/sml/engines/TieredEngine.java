@@ -0,0 +1,178 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Machine;
+import sml.Registers;
+import sml.VerifiedProgram;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * TieredEngine starts executing programs in the interpreter and compiles the programs that turn out to be hot.
+ * <p>
+ * The interpreter counts how often each loop header, i.e. the target of a backward bnz, is jumped to. Once a header
+ * has been jumped to COMPILE_THRESHOLD times, the program is compiled by the CompilingEngine on a background thread
+ * while the interpreter carries on. At the first backward jump after the compiled program is ready, execution moves
+ * into it at the loop header with the current registers, so the output is the same as if the whole program had been
+ * interpreted. Later executions of the same executable start in the compiled program right away.
+ * Programs which cannot be compiled, and executions with limits, stay in the interpreter.
+ *
+ * @author Marton Vago
+ */
+public class TieredEngine implements Engine {
+    /**
+     * The number of jumps to a loop header after which the program is compiled
+     */
+    public static final int COMPILE_THRESHOLD = 1000;
+
+    /**
+     * The thread compiling hot programs, shared by all tiered engines
+     */
+    private static final Executor BACKGROUND_COMPILER = Executors.newSingleThreadExecutor(task -> {
+        var thread = new Thread(task, "sml-tiered-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CompilingEngine compiler = new CompilingEngine();
+    private final int threshold;
+    private final Executor executor;
+
+    public TieredEngine() {
+        this(COMPILE_THRESHOLD, BACKGROUND_COMPILER);
+    }
+
+    /**
+     * Create an engine with the given compile threshold, which compiles programs with the given executor.
+     *
+     * @param threshold the number of jumps to a loop header after which the program is compiled
+     * @param executor the executor compiling programs
+     */
+    TieredEngine(int threshold, Executor executor) {
+        this.threshold = threshold;
+        this.executor = executor;
+    }
+
+    @Override
+    public TieredExecutable prepare(List<Instruction> program) {
+        return new TieredExecutable(program, () -> compiler.compile(program));
+    }
+
+    @Override
+    public TieredExecutable prepare(VerifiedProgram program) {
+        return new TieredExecutable(program.getInstructions(), () -> compiler.compile(program));
+    }
+
+    /**
+     * A program which is interpreted until it has been compiled.
+     */
+    final class TieredExecutable implements Executable {
+        private final List<Instruction> program;
+        private final Supplier<CompiledProgram> compiler;
+
+        /**
+         * Whether each instruction is an entry point of the compiled program
+         */
+        private final boolean[] loopHeaders;
+        private final AtomicBoolean compilationRequested = new AtomicBoolean();
+        private final AtomicInteger transfers = new AtomicInteger();
+        private volatile CompletableFuture<Void> compilation;
+        private volatile CompiledProgram compiled;
+
+        private TieredExecutable(List<Instruction> program, Supplier<CompiledProgram> compiler) {
+            this.program = program;
+            this.compiler = compiler;
+            loopHeaders = new boolean[program.size() + 1];
+            for (var entry : ProgramCompiler.entryPoints(program)) {
+                loopHeaders[entry] = true;
+            }
+        }
+
+        @Override
+        public void execute(Machine m) {
+            var size = program.size();
+            var ready = compiled;
+            if (ready != null) {
+                CompilingEngine.run(ready, new int[Registers.NUMBER_OF_REGISTERS], m, 0, size);
+                return;
+            }
+
+            m.setPc(0);
+            m.setRegisters(new Registers());
+            CompiledProgram next = null;
+            try {
+                next = interpret(m);
+            } finally {
+                if (next == null) {
+                    m.getOutput().flush();
+                }
+            }
+            if (next != null) {
+                transfers.incrementAndGet();
+                CompilingEngine.run(next, m.getRegisters().toArray(), m, m.getPc(), size);
+            }
+        }
+
+        /**
+         * Interpret the program until it ends or jumps back to a loop header once the compiled program is ready.
+         *
+         * @return the compiled program to continue in at the program counter, or null if the program has ended
+         */
+        private CompiledProgram interpret(Machine m) {
+            var size = program.size();
+            var jumps = new int[size + 1];
+            while (m.getPc() < size) {
+                int index = m.getPc();
+                Instruction ins = program.get(index);
+                m.setPc(index + 1);
+                ins.execute(m);
+                int target = m.getPc();
+                if (target <= index && loopHeaders[target]) {
+                    var ready = compiled;
+                    if (ready != null) {
+                        return ready;
+                    }
+                    if (++jumps[target] == threshold) {
+                        requestCompilation();
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void requestCompilation() {
+            if (compilationRequested.compareAndSet(false, true)) {
+                compilation = CompletableFuture.runAsync(() -> compiled = compiler.get(), executor);
+            }
+        }
+
+        /**
+         * Wait until a requested compilation has finished.
+         *
+         * @return whether the program has been compiled
+         */
+        boolean awaitCompilation() {
+            var pending = compilation;
+            if (pending != null) {
+                // A program which fails to compile is simply left to the interpreter
+                pending.exceptionally(e -> null).join();
+            }
+            return compiled != null;
+        }
+
+        /**
+         * Return how many executions have moved from the interpreter into the compiled program.
+         *
+         * @return the number of transfers
+         */
+        int transfers() {
+            return transfers.get();
+        }
+    }
+}
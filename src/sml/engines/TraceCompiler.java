@@ -0,0 +1,285 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * TraceCompiler translates the recorded trace of a loop into the class file of a CompiledTrace.
+ * <p>
+ * The trace is straight-line code without any dispatch, looping back to its start at its closing bnz. Every other
+ * bnz becomes a guard which leaves the trace if the branch goes the other way than it did while recording, and every
+ * div a guard which leaves it before dividing by zero, so that the interpreter throws the exception, unless the
+ * program has been verified to never divide by zero there.
+ * The registers the trace uses are held in local variables: they are read once when the trace is entered, which
+ * hoists the reads of registers the loop never writes out of the loop, and only the registers it writes are stored
+ * when it exits.
+ *
+ * @author Marton Vago
+ */
+final class TraceCompiler {
+    private static final String CLASS_NAME = "sml/engines/GeneratedTrace";
+    private static final String COMPILED_TRACE = "sml/engines/CompiledTrace";
+    private static final String MACHINE = "sml/Machine";
+    private static final String OUTPUT_SINK = "sml/OutputSink";
+    private static final String RUN_DESCRIPTOR = "([IL" + MACHINE + ";)I";
+
+    // The local variables of the run method
+    private static final int REGISTER_ARRAY_LOCAL = 1;
+    private static final int MACHINE_LOCAL = 2;
+    private static final int OUTPUT_LOCAL = 3;
+    private static final int EXCEPTION_LOCAL = 4;
+    private static final int PC_LOCAL = 5;
+    private static final int FIRST_REGISTER_LOCAL = 6;
+    private static final int MAX_LOCALS = FIRST_REGISTER_LOCAL + Registers.NUMBER_OF_REGISTERS;
+    private static final int MAX_STACK = 3;
+
+    private final CodeBuffer code;
+    private final BitSet nonZeroDivisors;
+    private final BitSet read = new BitSet();
+    private final BitSet written = new BitSet();
+
+    /**
+     * The exits of the trace, each leaving it for the instruction at its program counter
+     */
+    private final List<Exit> exits = new ArrayList<>();
+    private boolean writesOutput = false;
+
+    private record Exit(CodeBuffer.Label label, int pc) { }
+
+    private TraceCompiler(CodeBuffer code, BitSet nonZeroDivisors) {
+        this.code = code;
+        this.nonZeroDivisors = nonZeroDivisors;
+    }
+
+    /**
+     * Return the class file of a CompiledTrace running the given complete trace,
+     * or null if the trace cannot be compiled.
+     *
+     * @param steps the steps of the trace, the last of which jumps back to the first
+     * @param nonZeroDivisors the indices of the divisions which never divide by zero, and so need no guard
+     * @return the class file
+     */
+    static byte[] compile(List<TraceRecorder.Step> steps, BitSet nonZeroDivisors) {
+        var classFile = new ClassFileBuilder(CLASS_NAME, "java/lang/Object", COMPILED_TRACE);
+        classFile.addDefaultConstructor("java/lang/Object");
+        var compiler = new TraceCompiler(new CodeBuffer(classFile, MAX_STACK, MAX_LOCALS), nonZeroDivisors);
+        if (!compiler.compileTrace(steps)) {
+            return null;
+        }
+        classFile.addMethod(ClassFileBuilder.ACC_PUBLIC, "run", RUN_DESCRIPTOR, compiler.code);
+        return classFile.toByteArray();
+    }
+
+    private boolean compileTrace(List<TraceRecorder.Step> steps) {
+        // The registers the trace uses are collected first, as they are loaded before the loop starts
+        for (var step : steps) {
+            if (!collectRegisters(step.instruction())) {
+                return false;
+            }
+        }
+
+        for (int r = read.nextSetBit(0); r >= 0; r = read.nextSetBit(r + 1)) {
+            code.loadReference(REGISTER_ARRAY_LOCAL);
+            code.pushInt(r);
+            code.op(Opcodes.IALOAD);
+            code.storeInt(FIRST_REGISTER_LOCAL + r);
+        }
+        code.pushInt(0);
+        code.storeInt(PC_LOCAL);
+        if (writesOutput) {
+            code.loadReference(MACHINE_LOCAL);
+            code.invokeVirtual(MACHINE, "getOutput", "()L" + OUTPUT_SINK + ";");
+            code.storeReference(OUTPUT_LOCAL);
+        }
+
+        var start = code.newLabel();
+        var end = code.newLabel();
+        code.mark(start);
+        for (int i = 0; i < steps.size(); i++) {
+            var step = steps.get(i);
+            var closing = i == steps.size() - 1;
+            if (!compileStep(step.instruction(), step.index(), step.jumped(), closing ? start : null)) {
+                return false;
+            }
+        }
+        // The closing bnz falls through when the loop ends
+        exit(Opcodes.GOTO, steps.get(steps.size() - 1).index() + 1);
+        code.mark(end);
+
+        // Every exit stores the registers the trace has written and returns the program counter
+        var leave = code.newLabel();
+        for (var exit : exits) {
+            code.mark(exit.label());
+            code.pushInt(exit.pc());
+            code.jump(Opcodes.GOTO, leave);
+        }
+        code.mark(leave);
+        code.storeInt(PC_LOCAL);
+        storeRegisters();
+        code.loadInt(PC_LOCAL);
+        code.op(Opcodes.IRETURN);
+
+        // Only out can throw, so only it needs to keep the program counter
+        if (writesOutput) {
+            var handler = code.newLabel();
+            code.mark(handler);
+            code.storeReference(EXCEPTION_LOCAL);
+            storeRegisters();
+            code.loadReference(MACHINE_LOCAL);
+            code.loadInt(PC_LOCAL);
+            code.invokeVirtual(MACHINE, "setPc", "(I)V");
+            code.loadReference(EXCEPTION_LOCAL);
+            code.op(Opcodes.ATHROW);
+            code.catchAny(start, end, handler);
+        }
+        return code.length() <= CodeBuffer.MAX_CODE_LENGTH;
+    }
+
+    /**
+     * Add the registers the instruction reads to read and the registers it writes to written.
+     * Registers which are written are also read, so that the value stored on an exit taken before the write
+     * is the one the trace was entered with.
+     *
+     * @return false if the instruction cannot be compiled
+     */
+    private boolean collectRegisters(Instruction ins) {
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            return binaryRegisters(add.getResultRegister(), add.getRegister1(), add.getRegister2());
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            return binaryRegisters(sub.getResultRegister(), sub.getRegister1(), sub.getRegister2());
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            return binaryRegisters(mul.getResultRegister(), mul.getRegister1(), mul.getRegister2());
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            return binaryRegisters(div.getResultRegister(), div.getRegister1(), div.getRegister2());
+        } else if (type == LinInstruction.class) {
+            return useRegister(((LinInstruction) ins).getRegister(), true);
+        } else if (type == OutInstruction.class) {
+            writesOutput = true;
+            return useRegister(((OutInstruction) ins).getRegister(), false);
+        } else if (type == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            return bnz.getJumpToIndex() != BnzInstruction.UNRESOLVED && useRegister(bnz.getRegister(), false);
+        } else if (type == FusedInstruction.class) {
+            // Only the second instruction of a superinstruction may jump, and a guard in front of a division
+            // can only leave the trace before the whole superinstruction
+            var fused = (FusedInstruction) ins;
+            return fused.getFirst().getClass() != BnzInstruction.class
+                    && fused.getFirst().getClass() != DivInstruction.class
+                    && fused.getSecond().getClass() != DivInstruction.class
+                    && collectRegisters(fused.getFirst()) && collectRegisters(fused.getSecond());
+        }
+        return false;
+    }
+
+    private boolean binaryRegisters(int result, int register1, int register2) {
+        return useRegister(register1, false) && useRegister(register2, false) && useRegister(result, true);
+    }
+
+    private boolean useRegister(int register, boolean write) {
+        if (register < 0 || register >= Registers.NUMBER_OF_REGISTERS) {
+            return false;
+        }
+        read.set(register);
+        if (write) {
+            written.set(register);
+        }
+        return true;
+    }
+
+    /**
+     * Emit the code for a single instruction of the trace.
+     *
+     * @param loop the start of the trace if the instruction is the closing bnz, or null
+     * @return false if the instruction cannot be compiled
+     */
+    private boolean compileStep(Instruction ins, int index, boolean jumped, CodeBuffer.Label loop) {
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            binary(Opcodes.IADD, add.getResultRegister(), add.getRegister1(), add.getRegister2());
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            binary(Opcodes.ISUB, sub.getResultRegister(), sub.getRegister1(), sub.getRegister2());
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            binary(Opcodes.IMUL, mul.getResultRegister(), mul.getRegister1(), mul.getRegister2());
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            if (!nonZeroDivisors.get(index)) {
+                code.loadInt(FIRST_REGISTER_LOCAL + div.getRegister2());
+                exit(Opcodes.IFEQ, index);
+            }
+            binary(Opcodes.IDIV, div.getResultRegister(), div.getRegister1(), div.getRegister2());
+        } else if (type == LinInstruction.class) {
+            var lin = (LinInstruction) ins;
+            code.pushInt(lin.getValue());
+            code.storeInt(FIRST_REGISTER_LOCAL + lin.getRegister());
+        } else if (type == OutInstruction.class) {
+            var out = (OutInstruction) ins;
+            code.pushInt(index + 1);
+            code.storeInt(PC_LOCAL);
+            code.loadReference(OUTPUT_LOCAL);
+            code.loadInt(FIRST_REGISTER_LOCAL + out.getRegister());
+            code.invokeInterface(OUTPUT_SINK, "write", "(I)V", 2);
+        } else if (type == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            code.loadInt(FIRST_REGISTER_LOCAL + bnz.getRegister());
+            if (loop != null) {
+                code.jump(Opcodes.IFNE, loop);
+            } else if (jumped) {
+                exit(Opcodes.IFEQ, index + 1);
+            } else {
+                exit(Opcodes.IFNE, bnz.getJumpToIndex());
+            }
+        } else if (type == FusedInstruction.class) {
+            var fused = (FusedInstruction) ins;
+            return compileStep(fused.getFirst(), index, jumped, null)
+                    && compileStep(fused.getSecond(), index, jumped, loop);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void binary(int opcode, int result, int register1, int register2) {
+        code.loadInt(FIRST_REGISTER_LOCAL + register1);
+        code.loadInt(FIRST_REGISTER_LOCAL + register2);
+        code.op(opcode);
+        code.storeInt(FIRST_REGISTER_LOCAL + result);
+    }
+
+    /**
+     * Emit a jump leaving the trace for the instruction with the given index.
+     */
+    private void exit(int opcode, int pc) {
+        var label = code.newLabel();
+        exits.add(new Exit(label, pc));
+        code.jump(opcode, label);
+    }
+
+    private void storeRegisters() {
+        for (int r = written.nextSetBit(0); r >= 0; r = written.nextSetBit(r + 1)) {
+            code.loadReference(REGISTER_ARRAY_LOCAL);
+            code.pushInt(r);
+            code.loadInt(FIRST_REGISTER_LOCAL + r);
+            code.op(Opcodes.IASTORE);
+        }
+    }
+}
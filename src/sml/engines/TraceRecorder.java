@@ -0,0 +1,96 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * TraceRecorder records the instructions executed in one iteration of a loop, starting at its header, together with
+ * the direction each bnz took, until execution jumps back to the header.
+ *
+ * @author Marton Vago
+ */
+final class TraceRecorder {
+    /**
+     * The largest number of instructions in a trace
+     */
+    static final int MAX_TRACE_LENGTH = 512;
+
+    /**
+     * The instructions a trace may contain; only exact classes are traced, as subclasses may change what the
+     * instruction does
+     */
+    private static final Set<Class<?>> TRACEABLE = Set.of(AddInstruction.class, SubInstruction.class,
+            MulInstruction.class, DivInstruction.class, LinInstruction.class, OutInstruction.class,
+            BnzInstruction.class, FusedInstruction.class);
+
+    /**
+     * An executed instruction with the index it has in the program and, for a bnz, whether it jumped
+     */
+    record Step(int index, Instruction instruction, boolean jumped) { }
+
+    /**
+     * The state of a recording
+     */
+    enum State { RECORDING, COMPLETE, ABORTED }
+
+    private final int header;
+    private final List<Step> steps = new ArrayList<>();
+    private State state = State.RECORDING;
+
+    /**
+     * Start recording the loop with the given header, which is the next instruction to execute.
+     *
+     * @param header the index of the first instruction of the loop
+     */
+    TraceRecorder(int header) {
+        this.header = header;
+    }
+
+    /**
+     * Record an executed instruction.
+     * A recording is aborted if it meets an instruction which cannot be traced, jumps back to anywhere but the
+     * header, e.g. in an inner loop, or grows too long.
+     *
+     * @param index the index of the instruction
+     * @param ins the instruction
+     * @param next the program counter after the instruction was executed
+     * @return the state of the recording
+     */
+    State record(int index, Instruction ins, int next) {
+        if (state != State.RECORDING) {
+            return state;
+        }
+        if (!TRACEABLE.contains(ins.getClass()) || steps.size() == MAX_TRACE_LENGTH) {
+            return state = State.ABORTED;
+        }
+        steps.add(new Step(index, ins, next != index + 1));
+        if (next <= index) {
+            state = next == header ? State.COMPLETE : State.ABORTED;
+        }
+        return state;
+    }
+
+    int getHeader() {
+        return header;
+    }
+
+    /**
+     * Return the recorded instructions, the last of which jumps back to the header once the recording is complete.
+     *
+     * @return the steps of the trace
+     */
+    List<Step> getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,146 @@
+package sml.engines;
+
+import sml.Instruction;
+import sml.Machine;
+import sml.Registers;
+import sml.VerifiedProgram;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TracingEngine interprets programs like Machine.execute() and compiles the hot loops it finds into traces.
+ * <p>
+ * The interpreter counts how often each instruction is jumped back to. Once a loop header has been jumped back to
+ * TRACE_THRESHOLD times, the next iteration of the loop is recorded as it runs, and if it gets back to the header
+ * without leaving the loop, the recorded path is compiled by the TraceCompiler. From then on, whenever execution jumps
+ * back to the header, the loop runs as the trace until one of its guards fails or the loop ends, and the interpreter
+ * carries on from the instruction the trace left for. Loops which cannot be traced, e.g. because they contain an inner
+ * loop or instructions which are not part of the language, are left to the interpreter.
+ * Executions with limits run on the interpreter without traces.
+ *
+ * @author Marton Vago
+ */
+public class TracingEngine implements Engine {
+    /**
+     * The number of jumps back to a loop header after which the loop is traced
+     */
+    public static final int TRACE_THRESHOLD = 100;
+
+    /**
+     * The trace of loops which cannot be traced
+     */
+    private static final CompiledTrace NO_TRACE = (registers, machine) -> {
+        throw new IllegalStateException("Loop has no trace.");
+    };
+
+    private final int threshold;
+
+    public TracingEngine() {
+        this(TRACE_THRESHOLD);
+    }
+
+    /**
+     * Create an engine tracing loops after the given number of jumps back to their header.
+     *
+     * @param threshold the number of jumps after which a loop is traced
+     */
+    TracingEngine(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public TracingExecutable prepare(List<Instruction> program) {
+        return new TracingExecutable(program, new BitSet());
+    }
+
+    /**
+     * Prepare the verified program, whose traces leave out the guards of divisions which never divide by zero.
+     */
+    @Override
+    public TracingExecutable prepare(VerifiedProgram program) {
+        return new TracingExecutable(program.getInstructions(), program.getNonZeroDivisors());
+    }
+
+    /**
+     * A program whose traces are kept across executions.
+     */
+    final class TracingExecutable implements Executable {
+        private final List<Instruction> program;
+        private final BitSet nonZeroDivisors;
+
+        /**
+         * The trace of each loop header, NO_TRACE if it cannot be traced, or null if it has not been traced yet.
+         * Executions on several threads share the traces.
+         */
+        private final AtomicReferenceArray<CompiledTrace> traces;
+
+        private TracingExecutable(List<Instruction> program, BitSet nonZeroDivisors) {
+            this.program = program;
+            this.nonZeroDivisors = nonZeroDivisors;
+            traces = new AtomicReferenceArray<>(program.size());
+        }
+
+        @Override
+        public void execute(Machine m) {
+            var size = program.size();
+            var jumps = new int[size];
+            TraceRecorder recorder = null;
+            m.setPc(0);
+            m.setRegisters(new Registers());
+            try {
+                while (m.getPc() < size) {
+                    int index = m.getPc();
+                    Instruction ins = program.get(index);
+                    m.setPc(index + 1);
+                    ins.execute(m);
+                    int next = m.getPc();
+                    if (recorder != null) {
+                        var state = recorder.record(index, ins, next);
+                        if (state != TraceRecorder.State.RECORDING) {
+                            traces.compareAndSet(recorder.getHeader(), null, state == TraceRecorder.State.COMPLETE
+                                    ? compile(recorder.getSteps()) : NO_TRACE);
+                            recorder = null;
+                        }
+                    }
+                    if (next <= index) {
+                        var trace = traces.get(next);
+                        if (trace != null && trace != NO_TRACE) {
+                            runTrace(trace, m);
+                        } else if (trace == null && recorder == null && ++jumps[next] == threshold) {
+                            recorder = new TraceRecorder(next);
+                        }
+                    }
+                }
+            } finally {
+                m.getOutput().flush();
+            }
+        }
+
+        /**
+         * Return the trace of the loop with the given header, or null if it has no trace.
+         *
+         * @param header the index of the first instruction of the loop
+         * @return the trace
+         */
+        CompiledTrace getTrace(int header) {
+            var trace = traces.get(header);
+            return trace == NO_TRACE ? null : trace;
+        }
+
+        private void runTrace(CompiledTrace trace, Machine m) {
+            var registers = m.getRegisters().toArray();
+            try {
+                m.setPc(trace.run(registers, m));
+            } finally {
+                m.getRegisters().setRegisters(registers);
+            }
+        }
+
+        private CompiledTrace compile(List<TraceRecorder.Step> steps) {
+            var classFile = TraceCompiler.compile(steps, nonZeroDivisors);
+            return classFile == null ? NO_TRACE : (CompiledTrace) CompilingEngine.instantiate(classFile);
+        }
+    }
+}
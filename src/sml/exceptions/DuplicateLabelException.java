@@ -0,0 +1,12 @@
+package sml.exceptions;
+
+/**
+ * DuplicateLabelException is an Exception thrown when a label is defined by more than one instruction of a program.
+ *
+ * @author Marton Vago
+ */
+public class DuplicateLabelException extends Exception {
+    public DuplicateLabelException(String label) {
+        super("Label '" + label + "' is defined more than once. Each instruction must have a different label.");
+    }
+}
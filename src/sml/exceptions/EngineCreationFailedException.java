@@ -0,0 +1,16 @@
+package sml.exceptions;
+
+/**
+ * EngineCreationFailedException is an Exception thrown when an execution engine cannot be created for any reason.
+ *
+ * @author Marton Vago
+ */
+public class EngineCreationFailedException extends Exception {
+    public EngineCreationFailedException(String message) {
+        super(message);
+    }
+
+    public EngineCreationFailedException(String engineName, Exception e) {
+        super("Failed to create engine '" + engineName + "'.", e);
+    }
+}
@@ -0,0 +1,17 @@
+package sml.exceptions;
+
+/**
+ * InvalidProgramFileException is an Exception thrown when a compiled program file is not in the expected format,
+ * or does not describe a valid program.
+ *
+ * @author Marton Vago
+ */
+public class InvalidProgramFileException extends Exception {
+    public InvalidProgramFileException(String msg) {
+        super(msg);
+    }
+
+    public InvalidProgramFileException(String msg, Exception e) {
+        super(msg, e);
+    }
+}
@@ -0,0 +1,17 @@
+package sml.exceptions;
+
+/**
+ * InvalidSnapshotException is an Exception thrown when a machine snapshot is not in the expected format,
+ * or was taken of another program than the one it is restored into.
+ *
+ * @author Marton Vago
+ */
+public class InvalidSnapshotException extends Exception {
+    public InvalidSnapshotException(String msg) {
+        super(msg);
+    }
+
+    public InvalidSnapshotException(String msg, Exception e) {
+        super(msg, e);
+    }
+}
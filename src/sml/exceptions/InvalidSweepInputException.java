@@ -0,0 +1,17 @@
+package sml.exceptions;
+
+/**
+ * InvalidSweepInputException is an Exception thrown when a row of initial registers given to a parameter sweep is
+ * not in the expected format.
+ *
+ * @author Marton Vago
+ */
+public class InvalidSweepInputException extends Exception {
+    public InvalidSweepInputException(String msg) {
+        super(msg);
+    }
+
+    public InvalidSweepInputException(String msg, Exception e) {
+        super(msg, e);
+    }
+}
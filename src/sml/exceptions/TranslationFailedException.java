@@ -0,0 +1,20 @@
+package sml.exceptions;
+
+/**
+ * TranslationFailedException is an Exception thrown when a line of a program file cannot be translated.
+ * It records the number of the line, counted from 1, and wraps the reason the translation failed.
+ *
+ * @author Marton Vago
+ */
+public class TranslationFailedException extends Exception {
+    private final int lineNumber;
+
+    public TranslationFailedException(int lineNumber, Exception e) {
+        super("Line " + lineNumber + ": " + e.getMessage(), e);
+        this.lineNumber = lineNumber;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
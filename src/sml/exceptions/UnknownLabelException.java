@@ -0,0 +1,14 @@
+package sml.exceptions;
+
+/**
+ * UnknownLabelException is an Exception thrown when a program is linked and an instruction refers to a label
+ * which is not defined by any instruction of the program.
+ *
+ * @author Marton Vago
+ */
+public class UnknownLabelException extends Exception {
+    public UnknownLabelException(String referringLabel, String unknownLabel) {
+        super("Instruction '" + referringLabel + "' refers to label '" + unknownLabel
+                + "', but no instruction with that label exists in the program.");
+    }
+}
@@ -0,0 +1,13 @@
+package sml.exceptions;
+
+/**
+ * VerificationFailedException is an Exception thrown when a program is verified before it runs and one of its
+ * instructions has an operand which cannot be valid when the instruction is executed.
+ *
+ * @author Marton Vago
+ */
+public class VerificationFailedException extends Exception {
+    public VerificationFailedException(String msg) {
+        super(msg);
+    }
+}
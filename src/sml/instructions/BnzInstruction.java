@@ -1,10 +1,12 @@
 package sml.instructions;
 
 import sml.Instruction;
+import sml.LabelBridge;
 import sml.Machine;
+import sml.exceptions.UnknownLabelException;
 
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.stream.IntStream;
 
 /**
  * A BnzInstruction is an Instruction representing a jump command.
@@ -13,8 +15,14 @@ import java.util.stream.IntStream;
  * @author Marton Vago
  */
 public class BnzInstruction extends Instruction {
+	/**
+	 * The value of jumpToIndex while the instruction has not been linked
+	 */
+	public static final int UNRESOLVED = -1;
+
 	private final int register;
 	private final String jumpToLabel;
+	private int jumpToIndex = UNRESOLVED;
 
 	/**
 	 * Constructor
@@ -28,9 +36,37 @@ public class BnzInstruction extends Instruction {
 		jumpToLabel = targetLabel;
 	}
 
+	/**
+	 * Constructor of an instruction which is already linked, for programs whose jumps were resolved when they
+	 * were stored
+	 * @param currentLabel the label for the command
+	 * @param s1 the register where the value to check is read from
+	 * @param targetLabel the label where execution should jump to
+	 * @param targetIndex the index of the first instruction with the target label
+	 */
+	public BnzInstruction(String currentLabel, int s1, String targetLabel, int targetIndex) {
+		this(currentLabel, s1, targetLabel);
+		jumpToIndex = targetIndex;
+	}
+
+	/**
+	 * Resolve the target label into the index of the first instruction with that label.
+	 * @param labels the labels of the program the instruction belongs to
+	 * @throws UnknownLabelException if there is no instruction with the target label
+	 */
+	@Override
+	public void link(LabelBridge labels) throws UnknownLabelException {
+		var index = labels.indexOf(jumpToLabel);
+		if (index < 0) {
+			throw new UnknownLabelException(getLabel(), jumpToLabel);
+		}
+		jumpToIndex = index;
+	}
+
 	/**
 	 * If the value in the register is not 0, make program execution jump to the first label that matches
-	 * the specified label. If there is no such label throw a NoSuchElementException.
+	 * the specified label. If the instruction has been linked, this is the resolved index; otherwise the program
+	 * is searched for the label. If there is no such label throw a NoSuchElementException.
 	 * @param m the Machine to execute on
 	 */
 	@Override
@@ -39,14 +75,25 @@ public class BnzInstruction extends Instruction {
 			return;
 		}
 
-		var instructions = m.getProg();
-		IntStream.range(0, instructions.size())
-			.filter(i -> instructions.get(i).getLabel().equals(jumpToLabel))
-			.findFirst()
-			.ifPresentOrElse(
-				m::setPc,
-				() -> { throw new NoSuchElementException("No instruction with label" + jumpToLabel); }
-			);
+		if (jumpToIndex != UNRESOLVED) {
+			m.setPc(jumpToIndex);
+		} else {
+			m.setPc(findJumpToIndex(m.getProg()));
+		}
+	}
+
+	/**
+	 * Return the index of the first instruction with the target label.
+	 * @param instructions the program to search
+	 * @return the index of the instruction
+	 */
+	private int findJumpToIndex(List<Instruction> instructions) {
+		for (int i = 0; i < instructions.size(); i++) {
+			if (instructions.get(i).getLabel().equals(jumpToLabel)) {
+				return i;
+			}
+		}
+		throw new NoSuchElementException("No instruction with label" + jumpToLabel);
 	}
 
 	@Override
@@ -64,4 +111,8 @@ public class BnzInstruction extends Instruction {
 	public String getJumpToLabel() {
 		return jumpToLabel;
 	}
+
+	public int getJumpToIndex() {
+		return jumpToIndex;
+	}
 }
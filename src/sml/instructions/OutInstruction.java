@@ -4,7 +4,8 @@ import sml.Instruction;
 import sml.Machine;
 
 /**
- * An OutInstruction is an Instruction representing a command for printing a value to the console.
+ * An OutInstruction is an Instruction representing a command for printing a value to the output of the machine,
+ * which is the console unless the machine has been given another output sink.
  *
  * @author Marton Vago
  */
@@ -23,7 +24,7 @@ public class OutInstruction extends Instruction {
 
 	@Override
 	public void execute(Machine m) {
-		System.out.println(m.getRegisters().getRegister(register));
+		m.getOutput().write(m.getRegisters().getRegister(register));
 	}
 
 	@Override
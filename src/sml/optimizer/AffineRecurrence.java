@@ -0,0 +1,84 @@
+package sml.optimizer;
+
+/**
+ * An AffineRecurrence is the effect of one iteration of a loop on the registers it writes, x' = Ax + b, held as
+ * the square matrix [[A, b], [0, 1]] acting on the registers followed by a 1.
+ * <p>
+ * The arithmetic wraps around like that of the machine, as int arithmetic is exact modulo 2^32, so applying the
+ * recurrence n times by raising the matrix to the n-th power gives exactly the registers n iterations leave.
+ *
+ * @author Marton Vago
+ */
+final class AffineRecurrence {
+    private final int size;
+    private final int[][] matrix;
+
+    /**
+     * Create the recurrence whose row i gives register i after an iteration: the coefficients of the registers
+     * before it, followed by a constant.
+     */
+    AffineRecurrence(int[][] rows) {
+        size = rows.length + 1;
+        matrix = new int[size][];
+        for (int i = 0; i < rows.length; i++) {
+            matrix[i] = rows[i].clone();
+        }
+        matrix[rows.length] = new int[size];
+        matrix[rows.length][rows.length] = 1;
+    }
+
+    /**
+     * Return the registers after applying the recurrence n times to the given registers.
+     *
+     * @param registers the registers before the first iteration
+     * @param n the number of iterations
+     * @return the registers after the last iteration
+     */
+    int[] apply(int[] registers, long n) {
+        var power = identity();
+        var base = matrix;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                power = multiply(power, base);
+            }
+            n >>= 1;
+            if (n > 0) {
+                base = multiply(base, base);
+            }
+        }
+
+        var result = new int[size - 1];
+        for (int i = 0; i < result.length; i++) {
+            var value = power[i][size - 1];
+            for (int j = 0; j < result.length; j++) {
+                value += power[i][j] * registers[j];
+            }
+            result[i] = value;
+        }
+        return result;
+    }
+
+    private int[][] identity() {
+        var identity = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            identity[i][i] = 1;
+        }
+        return identity;
+    }
+
+    private int[][] multiply(int[][] left, int[][] right) {
+        var product = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < size; k++) {
+                var factor = left[i][k];
+                if (factor == 0) {
+                    continue;
+                }
+                for (int j = 0; j < size; j++) {
+                    product[i][j] += factor * right[k][j];
+                }
+            }
+        }
+        return product;
+    }
+}
@@ -0,0 +1,139 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.instructions.BnzInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ControlFlowGraph splits a program into basic blocks, runs of instructions which are only entered at their first
+ * instruction and only left after their last one, and records which blocks control can pass to from each block.
+ * <p>
+ * A block starts at the first instruction of the program, at every target of a bnz and after every bnz.
+ * Jump targets are found through the labels the jumps refer to, so the program need not be linked.
+ *
+ * @author Marton Vago
+ */
+public final class ControlFlowGraph {
+    private final List<Instruction> program;
+    private final List<BasicBlock> blocks;
+    private final int[] blockOfInstruction;
+    private final boolean[] jumpTargets;
+
+    private ControlFlowGraph(List<Instruction> program, List<BasicBlock> blocks, int[] blockOfInstruction,
+                             boolean[] jumpTargets) {
+        this.program = program;
+        this.blocks = blocks;
+        this.blockOfInstruction = blockOfInstruction;
+        this.jumpTargets = jumpTargets;
+    }
+
+    /**
+     * Build the control-flow graph of a program.
+     *
+     * @param program the instructions of the program
+     * @return the control-flow graph
+     * @throws IllegalArgumentException if a jump refers to a label which is not defined in the program
+     */
+    public static ControlFlowGraph of(List<Instruction> program) {
+        var indices = new HashMap<String, Integer>();
+        for (int i = 0; i < program.size(); i++) {
+            indices.putIfAbsent(program.get(i).getLabel(), i);
+        }
+
+        var jumpTargets = new boolean[program.size()];
+        var leaders = new boolean[program.size() + 1];
+        leaders[0] = true;
+        for (int i = 0; i < program.size(); i++) {
+            if (program.get(i) instanceof BnzInstruction bnz) {
+                var target = targetOf(bnz, indices);
+                jumpTargets[target] = true;
+                leaders[target] = true;
+                leaders[i + 1] = true;
+            }
+        }
+
+        var blockOfInstruction = new int[program.size()];
+        var starts = new ArrayList<Integer>();
+        for (int i = 0; i < program.size(); i++) {
+            if (leaders[i]) {
+                starts.add(i);
+            }
+            blockOfInstruction[i] = starts.size() - 1;
+        }
+
+        var blocks = new ArrayList<BasicBlock>(starts.size());
+        for (int b = 0; b < starts.size(); b++) {
+            var start = starts.get(b);
+            var end = b + 1 < starts.size() ? starts.get(b + 1) : program.size();
+            var successors = new ArrayList<Integer>(2);
+            if (program.get(end - 1) instanceof BnzInstruction bnz) {
+                successors.add(blockOfInstruction[targetOf(bnz, indices)]);
+            }
+            // Control falls through to the next block, or leaves the program after the last one
+            var exits = end == program.size();
+            if (!exits && !successors.contains(b + 1)) {
+                successors.add(b + 1);
+            }
+            blocks.add(new BasicBlock(start, end, Collections.unmodifiableList(successors), exits));
+        }
+        return new ControlFlowGraph(program, Collections.unmodifiableList(blocks), blockOfInstruction, jumpTargets);
+    }
+
+    private static int targetOf(BnzInstruction bnz, Map<String, Integer> indices) {
+        var target = indices.get(bnz.getJumpToLabel());
+        if (target == null) {
+            throw new IllegalArgumentException("Instruction '" + bnz.getLabel() + "' jumps to label '"
+                    + bnz.getJumpToLabel() + "', which is not defined in the program.");
+        }
+        return target;
+    }
+
+    public List<Instruction> getProgram() {
+        return program;
+    }
+
+    /**
+     * Return the basic blocks in the order of the program; the first block is where execution starts.
+     *
+     * @return the basic blocks
+     */
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Return the index of the block containing the instruction with the given index.
+     *
+     * @param instructionIndex the index of an instruction in the program
+     * @return the index of its block
+     */
+    public int blockOf(int instructionIndex) {
+        return blockOfInstruction[instructionIndex];
+    }
+
+    /**
+     * Return whether a bnz jumps to the instruction with the given index.
+     *
+     * @param instructionIndex the index of an instruction in the program
+     * @return whether the instruction is a jump target
+     */
+    public boolean isJumpTarget(int instructionIndex) {
+        return jumpTargets[instructionIndex];
+    }
+
+    /**
+     * A BasicBlock is the run of instructions from start (inclusive) to end (exclusive).
+     *
+     * @param start the index of the first instruction of the block
+     * @param end the index after the last instruction of the block
+     * @param successors the indices of the blocks control can pass to from the block
+     * @param exits whether control can leave the program from the block, by running past its last instruction
+     */
+    public record BasicBlock(int start, int end, List<Integer> successors, boolean exits) {
+    }
+}
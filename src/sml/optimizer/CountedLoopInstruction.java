@@ -0,0 +1,219 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Machine;
+import sml.instructions.AddInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A CountedLoopInstruction runs a loop made of a body of lin, add, sub and mul instructions followed by a bnz
+ * jumping back to the start of the body, which repeats the body until a counter register, decremented by the
+ * body, is zero. It takes the label of the first instruction of the body.
+ * <p>
+ * Every register the body writes changes by an affine function of the registers at the start of the iteration,
+ * so the loop is evaluated in closed form: the number of iterations follows from the counter and the amount it is
+ * decremented by, and the registers after the last iteration from an AffineRecurrence. When the number of
+ * iterations does not follow from them, e.g. as the counter would wrap around, or when the loop is short, the body
+ * is run instead, one iteration at a time: after each iteration the instruction jumps back to itself, like the
+ * bnz it replaces, so that executions with limits can stop it.
+ *
+ * @author Marton Vago
+ */
+public class CountedLoopInstruction extends Instruction {
+    /**
+     * The number of iterations below which running the body is cheaper than the closed form
+     */
+    static final int CLOSED_FORM_THRESHOLD = 64;
+
+    private final List<Instruction> body;
+    private final int counterRegister;
+    private final int decrementRegister;
+
+    /**
+     * The registers the body writes, in increasing order
+     */
+    private final int[] writtenRegisters;
+
+    /**
+     * Constructor
+     * @param body the instructions of the loop body, which must be lin, add, sub and mul instructions
+     * @param counterRegister the register the loop repeats the body until it is zero
+     * @param decrementRegister the register the body decrements the counter by, which the body does not write
+     */
+    public CountedLoopInstruction(List<Instruction> body, int counterRegister, int decrementRegister) {
+        super(body.get(0).getLabel(), "loop");
+        this.body = List.copyOf(body);
+        this.counterRegister = counterRegister;
+        this.decrementRegister = decrementRegister;
+        writtenRegisters = body.stream().mapToInt(KnownInstructions::writtenRegister).distinct().sorted().toArray();
+    }
+
+    @Override
+    public void execute(Machine m) {
+        // The registers are only copied when the closed form is taken, as short loops run once per iteration
+        var registers = m.getRegisters();
+        var counter = registers.getRegister(counterRegister);
+        var decrement = registers.getRegister(decrementRegister);
+        if (hasClosedForm(counter, decrement)) {
+            var values = registers.toArray();
+            if (evaluate(values, counter / decrement)) {
+                registers.setRegisters(values);
+                return;
+            }
+        }
+        for (var ins : body) {
+            ins.execute(m);
+        }
+        if (m.getRegisters().getRegister(counterRegister) != 0) {
+            m.setPc(m.getPc() - 1);
+        }
+    }
+
+    /**
+     * Run the whole loop on the given registers at once, as execute(Machine) does, if it is evaluated in closed
+     * form. Otherwise the registers are left as they are, and the loop must be run one iteration at a time.
+     *
+     * @param registers the values of the registers, which are changed if the loop is evaluated
+     * @return whether the loop was evaluated
+     */
+    public boolean evaluateInClosedForm(int[] registers) {
+        var counter = registers[counterRegister];
+        var decrement = registers[decrementRegister];
+        return hasClosedForm(counter, decrement) && evaluate(registers, counter / decrement);
+    }
+
+    /**
+     * Return whether the number of iterations follows from the counter and decrement and is large enough.
+     */
+    private static boolean hasClosedForm(int counter, int decrement) {
+        return decrement > 0 && counter > 0 && counter % decrement == 0 && counter / decrement >= CLOSED_FORM_THRESHOLD;
+    }
+
+    /**
+     * Apply the given number of iterations to the registers, or return false if the body is not affine.
+     */
+    private boolean evaluate(int[] registers, int iterations) {
+        var recurrence = recurrence(registers);
+        if (recurrence == null) {
+            return false;
+        }
+        var written = new int[writtenRegisters.length];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = registers[writtenRegisters[i]];
+        }
+        written = recurrence.apply(written, iterations);
+        for (int i = 0; i < written.length; i++) {
+            registers[writtenRegisters[i]] = written[i];
+        }
+        return true;
+    }
+
+    /**
+     * Return the effect of an iteration on the written registers, given the registers the loop starts with,
+     * or null if it is not affine.
+     */
+    private AffineRecurrence recurrence(int[] registers) {
+        // The value of each register as coefficients of the written registers at the start of the iteration,
+        // followed by a constant; the registers the body does not write keep the value they start with
+        var width = writtenRegisters.length + 1;
+        var values = new int[registers.length][];
+        for (int r = 0; r < registers.length; r++) {
+            values[r] = new int[width];
+            values[r][width - 1] = registers[r];
+        }
+        for (int i = 0; i < writtenRegisters.length; i++) {
+            values[writtenRegisters[i]][width - 1] = 0;
+            values[writtenRegisters[i]][i] = 1;
+        }
+
+        for (var ins : body) {
+            var type = ins.getClass();
+            int[] value;
+            if (type == LinInstruction.class) {
+                value = new int[width];
+                value[width - 1] = ((LinInstruction) ins).getValue();
+            } else if (type == AddInstruction.class) {
+                var add = (AddInstruction) ins;
+                value = combine(values[add.getRegister1()], values[add.getRegister2()], 1);
+            } else if (type == SubInstruction.class) {
+                var sub = (SubInstruction) ins;
+                value = combine(values[sub.getRegister1()], values[sub.getRegister2()], -1);
+            } else if (type == MulInstruction.class) {
+                var mul = (MulInstruction) ins;
+                value = multiply(values[mul.getRegister1()], values[mul.getRegister2()]);
+                if (value == null) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            values[KnownInstructions.writtenRegister(ins)] = value;
+        }
+
+        var rows = new int[writtenRegisters.length][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = values[writtenRegisters[i]];
+        }
+        return new AffineRecurrence(rows);
+    }
+
+    private static int[] combine(int[] left, int[] right, int sign) {
+        var sum = new int[left.length];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = left[i] + sign * right[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Return the product of two values, or null if neither is a constant, as the product is not affine.
+     */
+    private static int[] multiply(int[] left, int[] right) {
+        if (!isConstant(left)) {
+            if (!isConstant(right)) {
+                return null;
+            }
+            var swapped = left;
+            left = right;
+            right = swapped;
+        }
+        var factor = left[left.length - 1];
+        var product = new int[right.length];
+        for (int i = 0; i < product.length; i++) {
+            product[i] = factor * right[i];
+        }
+        return product;
+    }
+
+    private static boolean isConstant(int[] value) {
+        for (int i = 0; i < value.length - 1; i++) {
+            if (value[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " repeat until register " + counterRegister + " is zero: "
+                + body.stream().map(Instruction::toString).collect(Collectors.joining(", "));
+    }
+
+    public List<Instruction> getBody() {
+        return body;
+    }
+
+    public int getCounterRegister() {
+        return counterRegister;
+    }
+
+    public int getDecrementRegister() {
+        return decrementRegister;
+    }
+}
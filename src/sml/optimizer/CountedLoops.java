@@ -0,0 +1,124 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CountedLoops replaces the counted loops of a program by CountedLoopInstructions, which evaluate them in closed
+ * form. A counted loop is a basic block ending with a bnz which jumps back to its start, where:
+ * <ul>
+ *     <li>the rest of the block is made of lin, add, sub and mul instructions, so it only changes registers;</li>
+ *     <li>the register the bnz tests is written once, by a sub decrementing it by a register the block does not
+ *     write;</li>
+ *     <li>no mul multiplies two registers the block changes, so that every register changes by an affine function
+ *     of the registers at the start of the iteration.</li>
+ * </ul>
+ * Loops containing an out or a div, or any other instruction, are left as they are.
+ *
+ * @author Marton Vago
+ */
+public final class CountedLoops {
+    private static final Set<Class<?>> BODY_INSTRUCTIONS = Set.of(LinInstruction.class, AddInstruction.class,
+            SubInstruction.class, MulInstruction.class);
+
+    private CountedLoops() { }
+
+    /**
+     * Return a copy of the program with its counted loops replaced.
+     * The jumps of the copy are copies of those of the given program, so linking the copy leaves the given program
+     * intact. The copy must be linked before it is executed, e.g. by creating a Program from it.
+     * A program containing instructions the pass does not know is copied without replacing any loop; those
+     * instructions are passed through as they are.
+     *
+     * @param program the instructions of the program
+     * @return the instructions with the counted loops replaced
+     * @throws IllegalArgumentException if a jump refers to a label which is not defined in the program
+     */
+    public static List<Instruction> replace(List<Instruction> program) {
+        if (!KnownInstructions.areKnown(program)) {
+            return KnownInstructions.unlinkedCopy(program);
+        }
+        var replaced = new ArrayList<Instruction>(program.size());
+
+        var cfg = ControlFlowGraph.of(program);
+        for (var block : cfg.getBlocks()) {
+            var loop = countedLoop(program.subList(block.start(), block.end()));
+            if (loop != null) {
+                replaced.add(loop);
+            } else {
+                for (int i = block.start(); i < block.end(); i++) {
+                    replaced.add(KnownInstructions.unlinkedCopy(program.get(i)));
+                }
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Return the instruction running the basic block if it is a counted loop, or null if it is not.
+     */
+    private static CountedLoopInstruction countedLoop(List<Instruction> block) {
+        if (block.size() < 2 || !(block.get(block.size() - 1) instanceof BnzInstruction bnz)
+                || !bnz.getJumpToLabel().equals(block.get(0).getLabel())) {
+            return null;
+        }
+        var body = block.subList(0, block.size() - 1);
+        var written = 0L;
+        for (var ins : body) {
+            if (!BODY_INSTRUCTIONS.contains(ins.getClass())) {
+                return null;
+            }
+            written |= 1L << KnownInstructions.writtenRegister(ins);
+        }
+
+        var counter = bnz.getRegister();
+        SubInstruction decrement = null;
+        for (var ins : body) {
+            if (KnownInstructions.writtenRegister(ins) != counter) {
+                continue;
+            }
+            if (decrement != null || ins.getClass() != SubInstruction.class) {
+                return null;
+            }
+            decrement = (SubInstruction) ins;
+        }
+        if (decrement == null || decrement.getRegister1() != counter
+                || (written & 1L << decrement.getRegister2()) != 0) {
+            return null;
+        }
+        return isAffine(body, written) ? new CountedLoopInstruction(body, counter, decrement.getRegister2()) : null;
+    }
+
+    /**
+     * Return whether no mul of the body multiplies two values which change from one iteration to the next.
+     *
+     * @param written the registers the body writes, one bit per register
+     */
+    private static boolean isAffine(List<Instruction> body, long written) {
+        // A register varies if its value depends on the registers written by the body at the start of the iteration
+        var varying = written;
+        for (var ins : body) {
+            var reads = KnownInstructions.readRegisters(ins);
+            var readsVarying = 0;
+            for (var register : reads) {
+                if ((varying & 1L << register) != 0) {
+                    readsVarying++;
+                }
+            }
+            if (ins.getClass() == MulInstruction.class && readsVarying == 2) {
+                return false;
+            }
+            var register = KnownInstructions.writtenRegister(ins);
+            varying = readsVarying > 0 ? varying | 1L << register : varying & ~(1L << register);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,387 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * DataflowOptimizer removes work from a program by analysing its control-flow graph. It repeats two passes until
+ * neither changes the program:
+ * <ul>
+ *     <li>constant folding, which propagates the values of registers known at each instruction and replaces
+ *     arithmetic on known values by a lin, and removes lins storing the value a register already holds and bnzs
+ *     on registers known to be zero;</li>
+ *     <li>dead-store elimination, which removes lin, add, sub and mul instructions whose result is overwritten
+ *     before it is read.</li>
+ * </ul>
+ * The registers are the result of a program, so every register is live when the program ends. A div is never
+ * folded or removed if it may divide by zero, and the registers are left as they would be should it throw.
+ * Instructions which are jump targets are never removed, so every jump keeps its target.
+ * <p>
+ * As programs are always started with every register set to 0, registers are known to be 0 where a program starts.
+ * The optimized program computes the same registers and output, but it may have fewer instructions, so the
+ * program counter it ends with may differ.
+ *
+ * @author Marton Vago
+ */
+public final class DataflowOptimizer {
+    /**
+     * The set of live registers containing every register, one bit per register
+     */
+    private static final int ALL_REGISTERS = -1;
+
+    private DataflowOptimizer() { }
+
+    /**
+     * Return an optimized copy of the program.
+     * The jumps of the copy are copies of those of the given program, so linking the copy leaves the given program
+     * intact. The copy must be linked before it is executed, e.g. by creating a Program from it.
+     * A program containing instructions the optimizer does not know is copied without being optimized; those
+     * instructions are passed through as they are.
+     *
+     * @param program the instructions of the program
+     * @return the optimized instructions
+     * @throws IllegalArgumentException if a jump refers to a label which is not defined in the program
+     */
+    public static List<Instruction> optimize(List<Instruction> program) {
+        var optimized = KnownInstructions.unlinkedCopy(program);
+        if (!KnownInstructions.areKnown(program)) {
+            return optimized;
+        }
+
+        boolean changed;
+        do {
+            changed = foldConstants(optimized);
+            changed |= eliminateDeadStores(optimized);
+        } while (changed);
+        return optimized;
+    }
+
+    /**
+     * Fold the instructions of the program whose results are known, in place.
+     *
+     * @return whether the program changed
+     */
+    static boolean foldConstants(List<Instruction> program) {
+        if (program.isEmpty()) {
+            return false;
+        }
+        var cfg = ControlFlowGraph.of(program);
+        var entryStates = propagateConstants(cfg);
+
+        var changed = false;
+        var folded = new ArrayList<Instruction>(program.size());
+        var blocks = cfg.getBlocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            var block = blocks.get(b);
+            if (entryStates[b] == null) {
+                // The block is never reached, so nothing is known in it
+                folded.addAll(program.subList(block.start(), block.end()));
+                continue;
+            }
+            var state = entryStates[b].copy();
+            for (int i = block.start(); i < block.end(); i++) {
+                var ins = program.get(i);
+                var replacement = fold(ins, state, cfg.isJumpTarget(i));
+                if (replacement != null) {
+                    folded.add(replacement);
+                }
+                changed |= replacement != ins;
+                state.apply(ins);
+            }
+        }
+        if (changed) {
+            program.clear();
+            program.addAll(folded);
+        }
+        return changed;
+    }
+
+    /**
+     * Return the indices of the divisions whose divisor is known not to be zero whenever they are executed, as the
+     * program is executed from instruction 0 with every register set to 0. Divisions which are never reached are
+     * included. For programs containing instructions the optimizer does not know, no division is known to be safe.
+     *
+     * @param program the linked instructions of the program
+     * @return the indices of the divisions
+     */
+    public static BitSet nonZeroDivisors(List<Instruction> program) {
+        var divisors = new BitSet();
+        if (program.isEmpty() || !KnownInstructions.areKnown(program)) {
+            return divisors;
+        }
+        var cfg = ControlFlowGraph.of(program);
+        var entryStates = propagateConstants(cfg);
+        var blocks = cfg.getBlocks();
+        for (int b = 0; b < blocks.size(); b++) {
+            var block = blocks.get(b);
+            var state = entryStates[b] == null ? null : entryStates[b].copy();
+            for (int i = block.start(); i < block.end(); i++) {
+                var ins = program.get(i);
+                if (ins.getClass() == DivInstruction.class) {
+                    var divisor = ((DivInstruction) ins).getRegister2();
+                    if (state == null || state.isKnown(divisor) && state.get(divisor) != 0) {
+                        divisors.set(i);
+                    }
+                }
+                if (state != null) {
+                    state.apply(ins);
+                }
+            }
+        }
+        return divisors;
+    }
+
+    /**
+     * Return the registers known at the start of each block, or null for the blocks which are never reached.
+     */
+    private static Constants[] propagateConstants(ControlFlowGraph cfg) {
+        var blocks = cfg.getBlocks();
+        var program = cfg.getProgram();
+        var entryStates = new Constants[blocks.size()];
+        entryStates[0] = Constants.allZero();
+        var worklist = new ArrayDeque<Integer>();
+        var queued = new boolean[blocks.size()];
+        worklist.add(0);
+        queued[0] = true;
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            queued[b] = false;
+            var block = blocks.get(b);
+            var state = entryStates[b].copy();
+            for (int i = block.start(); i < block.end(); i++) {
+                state.apply(program.get(i));
+            }
+            for (int successor : block.successors()) {
+                var changed = entryStates[successor] == null;
+                if (changed) {
+                    entryStates[successor] = state.copy();
+                } else {
+                    changed = entryStates[successor].meet(state);
+                }
+                if (changed && !queued[successor]) {
+                    worklist.add(successor);
+                    queued[successor] = true;
+                }
+            }
+        }
+        return entryStates;
+    }
+
+    /**
+     * Return the instruction replacing ins given the registers known before it, or null if it can be removed.
+     */
+    private static Instruction fold(Instruction ins, Constants state, boolean jumpTarget) {
+        var written = KnownInstructions.writtenRegister(ins);
+        if (written != KnownInstructions.NO_REGISTER) {
+            var value = state.evaluate(ins);
+            if (value == null) {
+                return ins;
+            }
+            if (!jumpTarget && state.isKnown(written) && state.get(written) == value) {
+                return null;
+            }
+            return ins.getClass() == LinInstruction.class ? ins : new LinInstruction(ins.getLabel(), written, value);
+        }
+        if (ins.getClass() == BnzInstruction.class && !jumpTarget) {
+            var register = ((BnzInstruction) ins).getRegister();
+            if (state.isKnown(register) && state.get(register) == 0) {
+                return null;
+            }
+        }
+        return ins;
+    }
+
+    /**
+     * Remove the stores of the program whose results are never read, in place.
+     *
+     * @return whether the program changed
+     */
+    static boolean eliminateDeadStores(List<Instruction> program) {
+        if (program.isEmpty()) {
+            return false;
+        }
+        var cfg = ControlFlowGraph.of(program);
+        var blocks = cfg.getBlocks();
+
+        // Find the registers live at the start of each block, iterating backwards until nothing changes
+        var liveIn = new int[blocks.size()];
+        boolean changed;
+        do {
+            changed = false;
+            for (int b = blocks.size() - 1; b >= 0; b--) {
+                var block = blocks.get(b);
+                var live = liveOut(block, liveIn);
+                for (int i = block.end() - 1; i >= block.start(); i--) {
+                    live = liveBefore(program.get(i), live);
+                }
+                if (live != liveIn[b]) {
+                    liveIn[b] = live;
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        var dead = new boolean[program.size()];
+        var removed = false;
+        for (var block : blocks) {
+            var live = liveOut(block, liveIn);
+            for (int i = block.end() - 1; i >= block.start(); i--) {
+                var ins = program.get(i);
+                var written = KnownInstructions.writtenRegister(ins);
+                if (written != KnownInstructions.NO_REGISTER && (live & bit(written)) == 0
+                        && ins.getClass() != DivInstruction.class && !cfg.isJumpTarget(i)) {
+                    dead[i] = true;
+                    removed = true;
+                } else {
+                    live = liveBefore(ins, live);
+                }
+            }
+        }
+        if (removed) {
+            var kept = new ArrayList<Instruction>(program.size());
+            for (int i = 0; i < program.size(); i++) {
+                if (!dead[i]) {
+                    kept.add(program.get(i));
+                }
+            }
+            program.clear();
+            program.addAll(kept);
+        }
+        return removed;
+    }
+
+    private static int liveOut(ControlFlowGraph.BasicBlock block, int[] liveIn) {
+        var live = block.exits() ? ALL_REGISTERS : 0;
+        for (int successor : block.successors()) {
+            live |= liveIn[successor];
+        }
+        return live;
+    }
+
+    /**
+     * Return the registers live before ins, given those live after it.
+     */
+    private static int liveBefore(Instruction ins, int live) {
+        if (ins.getClass() == DivInstruction.class) {
+            // The div may throw, leaving every register as it is as the result of the program
+            return ALL_REGISTERS;
+        }
+        var written = KnownInstructions.writtenRegister(ins);
+        if (written != KnownInstructions.NO_REGISTER) {
+            live &= ~bit(written);
+        }
+        for (var register : KnownInstructions.readRegisters(ins)) {
+            live |= bit(register);
+        }
+        return live;
+    }
+
+    private static int bit(int register) {
+        return 1 << register;
+    }
+
+    /**
+     * Constants records which registers hold a known value at a point of the program, and their values.
+     */
+    private static final class Constants {
+        private int known;
+        private final int[] values = new int[Registers.NUMBER_OF_REGISTERS];
+
+        static Constants allZero() {
+            var constants = new Constants();
+            constants.known = ALL_REGISTERS;
+            return constants;
+        }
+
+        Constants copy() {
+            var copy = new Constants();
+            copy.known = known;
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+            return copy;
+        }
+
+        boolean isKnown(int register) {
+            return (known & bit(register)) != 0;
+        }
+
+        int get(int register) {
+            return values[register];
+        }
+
+        /**
+         * Keep only the registers which also have the same value in other.
+         *
+         * @return whether any register stopped being known
+         */
+        boolean meet(Constants other) {
+            var met = known & other.known;
+            for (int register = 0; register < values.length; register++) {
+                if ((met & bit(register)) != 0 && values[register] != other.values[register]) {
+                    met &= ~bit(register);
+                }
+            }
+            var changed = met != known;
+            known = met;
+            return changed;
+        }
+
+        /**
+         * Update the registers with the effect of ins.
+         */
+        void apply(Instruction ins) {
+            var written = KnownInstructions.writtenRegister(ins);
+            if (written == KnownInstructions.NO_REGISTER) {
+                return;
+            }
+            var value = evaluate(ins);
+            if (value == null) {
+                known &= ~bit(written);
+            } else {
+                known |= bit(written);
+                values[written] = value;
+            }
+        }
+
+        /**
+         * Return the value ins stores, or null if it is not known or the instruction would throw.
+         */
+        Integer evaluate(Instruction ins) {
+            var type = ins.getClass();
+            if (type == LinInstruction.class) {
+                return ((LinInstruction) ins).getValue();
+            } else if (type == AddInstruction.class) {
+                var add = (AddInstruction) ins;
+                return bothKnown(add.getRegister1(), add.getRegister2())
+                        ? values[add.getRegister1()] + values[add.getRegister2()] : null;
+            } else if (type == SubInstruction.class) {
+                var sub = (SubInstruction) ins;
+                return bothKnown(sub.getRegister1(), sub.getRegister2())
+                        ? values[sub.getRegister1()] - values[sub.getRegister2()] : null;
+            } else if (type == MulInstruction.class) {
+                var mul = (MulInstruction) ins;
+                return bothKnown(mul.getRegister1(), mul.getRegister2())
+                        ? values[mul.getRegister1()] * values[mul.getRegister2()] : null;
+            } else if (type == DivInstruction.class) {
+                var div = (DivInstruction) ins;
+                return bothKnown(div.getRegister1(), div.getRegister2()) && values[div.getRegister2()] != 0
+                        ? values[div.getRegister1()] / values[div.getRegister2()] : null;
+            }
+            return null;
+        }
+
+        private boolean bothKnown(int register1, int register2) {
+            return isKnown(register1) && isKnown(register2);
+        }
+    }
+}
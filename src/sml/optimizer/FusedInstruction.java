@@ -0,0 +1,62 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.LabelBridge;
+import sml.Machine;
+import sml.exceptions.UnknownLabelException;
+
+/**
+ * A FusedInstruction is a superinstruction executing two adjacent instructions of a program with a single dispatch.
+ * It takes the label of the first instruction; the second must not be the target of any jump, as it no longer
+ * starts an instruction of its own.
+ * <p>
+ * Only the second instruction may change the program counter, so executing the pair has exactly the effect of
+ * executing the two instructions one after the other.
+ *
+ * @author Marton Vago
+ */
+public class FusedInstruction extends Instruction {
+    private final Instruction first;
+    private final Instruction second;
+
+    /**
+     * Constructor
+     * @param first the instruction executed first, whose label the fused instruction takes
+     * @param second the instruction executed second
+     */
+    public FusedInstruction(Instruction first, Instruction second) {
+        super(first.getLabel(), first.getOpcode() + "+" + second.getOpcode());
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public void execute(Machine m) {
+        first.execute(m);
+        second.execute(m);
+    }
+
+    /**
+     * Link both instructions against the labels of the program the fused instruction belongs to.
+     * @param labels the labels of the program the instruction belongs to
+     * @throws UnknownLabelException if a referenced label is not defined in the program
+     */
+    @Override
+    public void link(LabelBridge labels) throws UnknownLabelException {
+        first.link(labels);
+        second.link(labels);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " " + first + ", then " + second;
+    }
+
+    public Instruction getFirst() {
+        return first;
+    }
+
+    public Instruction getSecond() {
+        return second;
+    }
+}
@@ -0,0 +1,130 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * KnownInstructions tells the optimization passes what the instructions of the language read and write.
+ * The passes only change programs made of these instructions, as any other instruction might depend on the
+ * position of instructions in the program or on registers in ways the passes cannot see.
+ *
+ * @author Marton Vago
+ */
+final class KnownInstructions {
+    /**
+     * The value returned for instructions which write no register
+     */
+    static final int NO_REGISTER = -1;
+
+    private static final Set<Class<?>> KNOWN_INSTRUCTIONS = Set.of(AddInstruction.class, SubInstruction.class,
+            MulInstruction.class, DivInstruction.class, LinInstruction.class, OutInstruction.class, BnzInstruction.class);
+
+    private KnownInstructions() { }
+
+    /**
+     * Return whether the program is made only of instructions of the language using valid registers.
+     */
+    static boolean areKnown(List<Instruction> program) {
+        for (var ins : program) {
+            if (!KNOWN_INSTRUCTIONS.contains(ins.getClass())) {
+                return false;
+            }
+            for (var register : readRegisters(ins)) {
+                if (!isRegister(register)) {
+                    return false;
+                }
+            }
+            var written = writtenRegister(ins);
+            if (written != NO_REGISTER && !isRegister(written)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the registers the instruction reads.
+     */
+    static int[] readRegisters(Instruction ins) {
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            var add = (AddInstruction) ins;
+            return new int[]{add.getRegister1(), add.getRegister2()};
+        } else if (type == SubInstruction.class) {
+            var sub = (SubInstruction) ins;
+            return new int[]{sub.getRegister1(), sub.getRegister2()};
+        } else if (type == MulInstruction.class) {
+            var mul = (MulInstruction) ins;
+            return new int[]{mul.getRegister1(), mul.getRegister2()};
+        } else if (type == DivInstruction.class) {
+            var div = (DivInstruction) ins;
+            return new int[]{div.getRegister1(), div.getRegister2()};
+        } else if (type == OutInstruction.class) {
+            return new int[]{((OutInstruction) ins).getRegister()};
+        } else if (type == BnzInstruction.class) {
+            return new int[]{((BnzInstruction) ins).getRegister()};
+        }
+        return new int[0];
+    }
+
+    /**
+     * Return the register the instruction writes, or NO_REGISTER if it writes none.
+     */
+    static int writtenRegister(Instruction ins) {
+        var type = ins.getClass();
+        if (type == AddInstruction.class) {
+            return ((AddInstruction) ins).getResultRegister();
+        } else if (type == SubInstruction.class) {
+            return ((SubInstruction) ins).getResultRegister();
+        } else if (type == MulInstruction.class) {
+            return ((MulInstruction) ins).getResultRegister();
+        } else if (type == DivInstruction.class) {
+            return ((DivInstruction) ins).getResultRegister();
+        } else if (type == LinInstruction.class) {
+            return ((LinInstruction) ins).getRegister();
+        }
+        return NO_REGISTER;
+    }
+
+    /**
+     * Return an unlinked copy of a jump or of a fused instruction, or the instruction itself if it does not depend
+     * on linking.
+     */
+    static Instruction unlinkedCopy(Instruction ins) {
+        if (ins.getClass() == BnzInstruction.class) {
+            var bnz = (BnzInstruction) ins;
+            return new BnzInstruction(bnz.getLabel(), bnz.getRegister(), bnz.getJumpToLabel());
+        }
+        if (ins.getClass() == FusedInstruction.class) {
+            var fused = (FusedInstruction) ins;
+            return new FusedInstruction(unlinkedCopy(fused.getFirst()), unlinkedCopy(fused.getSecond()));
+        }
+        return ins;
+    }
+
+    /**
+     * Return a copy of the program made of unlinked copies of its instructions, see unlinkedCopy(Instruction).
+     */
+    static List<Instruction> unlinkedCopy(List<Instruction> program) {
+        var copy = new ArrayList<Instruction>(program.size());
+        for (var ins : program) {
+            copy.add(unlinkedCopy(ins));
+        }
+        return copy;
+    }
+
+    private static boolean isRegister(int register) {
+        return register >= 0 && register < Registers.NUMBER_OF_REGISTERS;
+    }
+}
@@ -0,0 +1,84 @@
+package sml.optimizer;
+
+import sml.Instruction;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Optimizer runs a program through a sequence of named optimization passes, each taking the instructions of
+ * the program and returning an unlinked copy of them, and can print the program before and after each pass.
+ * The optimized program must be linked before it is executed, e.g. by creating a Program from it.
+ *
+ * @author Marton Vago
+ */
+public final class Optimizer {
+    private final Map<String, UnaryOperator<List<Instruction>>> passes = new LinkedHashMap<>();
+    private PrintStream dump;
+
+    /**
+     * Return an optimizer running the data-flow optimizations, then replacing counted loops and finally fusing
+     * superinstructions.
+     *
+     * @return the optimizer
+     */
+    public static Optimizer standard() {
+        return new Optimizer()
+                .addPass("dataflow", DataflowOptimizer::optimize)
+                .addPass("loops", CountedLoops::replace)
+                .addPass("fusion", SuperinstructionFusion::fuse);
+    }
+
+    /**
+     * Add a pass to run after the passes already added.
+     *
+     * @param name the name of the pass, shown when dumping the program
+     * @param pass the pass
+     * @return this optimizer
+     */
+    public Optimizer addPass(String name, UnaryOperator<List<Instruction>> pass) {
+        passes.put(name, pass);
+        return this;
+    }
+
+    /**
+     * Print the program before and after each pass to the given stream.
+     *
+     * @param out the stream to print to, or null to print nothing
+     * @return this optimizer
+     */
+    public Optimizer dumpTo(PrintStream out) {
+        dump = out;
+        return this;
+    }
+
+    /**
+     * Run the passes over the program. The passes are given a copy of the program whose jumps are unlinked, so
+     * linking the optimized program leaves the given program intact, even if there are no passes.
+     *
+     * @param program the instructions of the program
+     * @return the optimized, unlinked instructions
+     */
+    public List<Instruction> optimize(List<Instruction> program) {
+        program = KnownInstructions.unlinkedCopy(program);
+        for (var pass : passes.entrySet()) {
+            dump("before " + pass.getKey(), program);
+            program = pass.getValue().apply(program);
+            dump("after " + pass.getKey(), program);
+        }
+        return program;
+    }
+
+    private void dump(String stage, List<Instruction> program) {
+        if (dump == null) {
+            return;
+        }
+        dump.println("Program " + stage + " (" + program.size() + " instructions):");
+        for (var ins : program) {
+            dump.println(ins);
+        }
+    }
+}
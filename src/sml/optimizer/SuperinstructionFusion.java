@@ -0,0 +1,70 @@
+package sml.optimizer;
+
+import sml.Instruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * SuperinstructionFusion replaces frequent pairs of adjacent instructions by a FusedInstruction, so that the
+ * interpreter dispatches once for both. The pairs fused are:
+ * <ul>
+ *     <li>sub followed by bnz, the decrement-and-branch closing most loops;</li>
+ *     <li>lin followed by lin, the initialisation of registers.</li>
+ * </ul>
+ * A pair is only fused if its second instruction is not the target of a jump. Pairs are fused from the start of
+ * the program and do not overlap.
+ *
+ * @author Marton Vago
+ */
+public final class SuperinstructionFusion {
+    private SuperinstructionFusion() { }
+
+    /**
+     * Return a copy of the program with its fusable pairs replaced by fused instructions.
+     * The jumps of the copy are copies of those of the given program, so linking the copy leaves the given program
+     * intact. The copy must be linked before it is executed, e.g. by creating a Program from it.
+     * A program containing instructions the pass does not know is copied without fusing any pair; those
+     * instructions are passed through as they are.
+     *
+     * @param program the instructions of the program
+     * @return the fused instructions
+     */
+    public static List<Instruction> fuse(List<Instruction> program) {
+        // Counted loops only change registers, so they do not stop the pass either
+        var checked = program.stream().filter(ins -> ins.getClass() != CountedLoopInstruction.class).toList();
+        if (!KnownInstructions.areKnown(checked)) {
+            return KnownInstructions.unlinkedCopy(program);
+        }
+        var jumpTargets = new HashSet<String>();
+        for (var ins : program) {
+            if (ins instanceof BnzInstruction bnz) {
+                jumpTargets.add(bnz.getJumpToLabel());
+            }
+        }
+
+        var fused = new ArrayList<Instruction>(program.size());
+        for (int i = 0; i < program.size(); i++) {
+            var ins = program.get(i);
+            if (i + 1 < program.size() && !jumpTargets.contains(program.get(i + 1).getLabel())
+                    && isFusable(ins, program.get(i + 1))) {
+                fused.add(new FusedInstruction(ins, KnownInstructions.unlinkedCopy(program.get(i + 1))));
+                i++;
+            } else {
+                fused.add(KnownInstructions.unlinkedCopy(ins));
+            }
+        }
+        return fused;
+    }
+
+    private static boolean isFusable(Instruction first, Instruction second) {
+        var firstType = first.getClass();
+        var secondType = second.getClass();
+        return firstType == SubInstruction.class && secondType == BnzInstruction.class
+                || firstType == LinInstruction.class && secondType == LinInstruction.class;
+    }
+}
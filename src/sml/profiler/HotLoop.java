@@ -0,0 +1,14 @@
+package sml.profiler;
+
+/**
+ * A HotLoop describes a loop of a profiled program, the instructions from the target of a backward bnz to the bnz.
+ *
+ * @param startLabel the label of the first instruction of the loop, the target of the bnz
+ * @param endLabel the label of the bnz closing the loop
+ * @param iterations the number of times the bnz jumped back
+ * @param instructions the number of instructions executed in the loop
+ * @param nanos the wall time spent in the instructions of the loop
+ * @author Marton Vago
+ */
+public record HotLoop(String startLabel, String endLabel, long iterations, long instructions, long nanos) {
+}
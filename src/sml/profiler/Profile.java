@@ -0,0 +1,236 @@
+package sml.profiler;
+
+import sml.Instruction;
+import sml.instructions.BnzInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A Profile holds what the Profiler recorded about an execution of a program, per instruction, and reports it as
+ * text or as JSON. As every instruction has a label of its own, the figures of an instruction are those of its label.
+ * <p>
+ * Besides bnz instructions, the instructions of an optimized program which end in a bnz, i.e. fused pairs whose
+ * second instruction is a bnz and counted loops, which jump back to themselves, count as branches.
+ *
+ * @author Marton Vago
+ */
+public final class Profile {
+    private final List<Instruction> program;
+    private final long[] counts;
+    private final long[] taken;
+    private final long[] nanos;
+    private final long totalNanos;
+
+    Profile(List<Instruction> program, long[] counts, long[] taken, long[] nanos, long totalNanos) {
+        this.program = List.copyOf(program);
+        this.counts = counts;
+        this.taken = taken;
+        this.nanos = nanos;
+        this.totalNanos = totalNanos;
+    }
+
+    public List<Instruction> getProgram() {
+        return program;
+    }
+
+    /**
+     * Return the number of times the instruction with the given index was executed.
+     *
+     * @param index the index of the instruction
+     * @return the execution count
+     */
+    public long getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Return the number of times the instruction with the given index jumped.
+     *
+     * @param index the index of the instruction
+     * @return the number of jumps taken
+     */
+    public long getTaken(int index) {
+        return taken[index];
+    }
+
+    /**
+     * Return the number of times the instruction with the given index was executed without jumping.
+     *
+     * @param index the index of the instruction
+     * @return the number of jumps not taken
+     */
+    public long getNotTaken(int index) {
+        return counts[index] - taken[index];
+    }
+
+    /**
+     * Return the wall time spent in the instruction with the given index, in nanoseconds.
+     *
+     * @param index the index of the instruction
+     * @return the time spent
+     */
+    public long getNanos(int index) {
+        return nanos[index];
+    }
+
+    /**
+     * Return the wall time of the whole execution, in nanoseconds.
+     *
+     * @return the time of the execution
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Return the loops of the program which ran, i.e. the branches jumping backwards which jumped at least once,
+     * hottest first.
+     *
+     * @return the loops, ordered by the time spent in them
+     */
+    public List<HotLoop> getHotLoops() {
+        var loops = new ArrayList<HotLoop>();
+        for (int i = 0; i < program.size(); i++) {
+            var target = branchTarget(program.get(i), i);
+            if (taken[i] == 0 || target == BnzInstruction.UNRESOLVED || target > i) {
+                continue;
+            }
+            long instructions = 0;
+            long time = 0;
+            for (int j = target; j <= i; j++) {
+                instructions += counts[j];
+                time += nanos[j];
+            }
+            loops.add(new HotLoop(program.get(target).getLabel(), program.get(i).getLabel(), taken[i], instructions,
+                    time));
+        }
+        loops.sort(Comparator.comparingLong(HotLoop::nanos).reversed());
+        return loops;
+    }
+
+    /**
+     * Return the profile as a table of the instructions followed by the hot loops.
+     *
+     * @return the text report
+     */
+    public String toText() {
+        var s = new StringBuilder();
+        s.append(String.format("Profile: %d instructions executed in %.3f ms%n", totalCount(), totalNanos / 1e6));
+        s.append(String.format("%-12s %-8s %14s %12s %7s %14s %14s%n",
+                "label", "opcode", "count", "time (ms)", "time %", "taken", "not taken"));
+        for (int i = 0; i < program.size(); i++) {
+            var ins = program.get(i);
+            s.append(String.format("%-12s %-8s %14d %12.3f %6.1f%%", ins.getLabel(), ins.getOpcode(), counts[i],
+                    nanos[i] / 1e6, percentOfTotal(nanos[i])));
+            if (isBranch(ins)) {
+                s.append(String.format(" %14d %14d", taken[i], getNotTaken(i)));
+            }
+            s.append(System.lineSeparator());
+        }
+        var loops = getHotLoops();
+        if (!loops.isEmpty()) {
+            s.append("Hot loops:").append(System.lineSeparator());
+            for (var loop : loops) {
+                s.append(String.format("%s..%s: %d iterations, %d instructions, %.3f ms (%.1f%%)%n",
+                        loop.startLabel(), loop.endLabel(), loop.iterations(), loop.instructions(),
+                        loop.nanos() / 1e6, percentOfTotal(loop.nanos())));
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * Return the profile as a JSON object with the total time, the instructions and the hot loops.
+     *
+     * @return the JSON report
+     */
+    public String toJson() {
+        var s = new StringBuilder();
+        s.append("{\"totalNanos\":").append(totalNanos);
+        s.append(",\"instructions\":[");
+        for (int i = 0; i < program.size(); i++) {
+            var ins = program.get(i);
+            s.append(i == 0 ? "" : ",");
+            s.append("{\"index\":").append(i);
+            s.append(",\"label\":").append(jsonString(ins.getLabel()));
+            s.append(",\"opcode\":").append(jsonString(ins.getOpcode()));
+            s.append(",\"count\":").append(counts[i]);
+            s.append(",\"nanos\":").append(nanos[i]);
+            if (isBranch(ins)) {
+                s.append(",\"taken\":").append(taken[i]);
+                s.append(",\"notTaken\":").append(getNotTaken(i));
+            }
+            s.append('}');
+        }
+        s.append("],\"hotLoops\":[");
+        var loops = getHotLoops();
+        for (int i = 0; i < loops.size(); i++) {
+            var loop = loops.get(i);
+            s.append(i == 0 ? "" : ",");
+            s.append("{\"startLabel\":").append(jsonString(loop.startLabel()));
+            s.append(",\"endLabel\":").append(jsonString(loop.endLabel()));
+            s.append(",\"iterations\":").append(loop.iterations());
+            s.append(",\"instructions\":").append(loop.instructions());
+            s.append(",\"nanos\":").append(loop.nanos());
+            s.append('}');
+        }
+        s.append("]}");
+        return s.toString();
+    }
+
+    /**
+     * Return whether the instruction may jump, and so has taken and not taken figures.
+     */
+    private static boolean isBranch(Instruction ins) {
+        return ins instanceof BnzInstruction
+                || ins instanceof FusedInstruction fused && fused.getSecond() instanceof BnzInstruction
+                || ins instanceof CountedLoopInstruction;
+    }
+
+    /**
+     * Return the index the instruction with the given index jumps to, or BnzInstruction.UNRESOLVED if it does not
+     * jump or its target is unknown.
+     */
+    private static int branchTarget(Instruction ins, int index) {
+        if (ins instanceof BnzInstruction bnz) {
+            return bnz.getJumpToIndex();
+        }
+        if (ins instanceof FusedInstruction fused && fused.getSecond() instanceof BnzInstruction bnz) {
+            return bnz.getJumpToIndex();
+        }
+        if (ins instanceof CountedLoopInstruction) {
+            return index;
+        }
+        return BnzInstruction.UNRESOLVED;
+    }
+
+    private long totalCount() {
+        long total = 0;
+        for (var count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private double percentOfTotal(long time) {
+        return totalNanos == 0 ? 0 : 100.0 * time / totalNanos;
+    }
+
+    private static String jsonString(String value) {
+        var s = new StringBuilder("\"");
+        for (var c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < ' ') {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+        return s.append('"').toString();
+    }
+}
@@ -2,6 +2,7 @@ package sml;
 
 import org.junit.jupiter.api.Test;
 import sml.exceptions.FailedToLoadAppConfigException;
+import sml.engines.CompilingEngine;
 import sml.instructions.AddInstruction;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -43,4 +44,15 @@ public class AppConfigTest {
         // then
         assertNull(className);
     }
+
+    @Test
+    public void returnsCorrectClassNameForEngine() throws FailedToLoadAppConfigException {
+        // given the config.properties file in src
+
+        // when
+        var className = AppConfig.getInstance().getClassNameForEngine("compiled");
+
+        // then
+        assertEquals(CompilingEngine.class.getName(), className);
+    }
 }
@@ -0,0 +1,129 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.engines.SwitchEngine;
+import sml.engines.InterpretingEngine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BatchRunnerTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void reportsResultsInOrderOfFiles() throws Exception {
+        // given
+        var files = new ArrayList<Path>();
+        for (int i = 0; i < 20; i++) {
+            files.add(write("count" + i + ".sml", "f0 lin 20 " + (i + 1), "f1 lin 21 1", "f2 out 20", "f3 sub 20 20 21", "f4 bnz 20 f2"));
+        }
+
+        // when
+        var report = new BatchRunner(new SwitchEngine(), 4).run(files);
+
+        // then
+        assertEquals(20, report.results().size());
+        assertEquals(20, report.succeeded());
+        for (int i = 0; i < 20; i++) {
+            var result = report.results().get(i);
+            assertEquals(files.get(i), result.file());
+            var expectedOutput = new StringBuilder();
+            for (int value = i + 1; value > 0; value--) {
+                expectedOutput.append(value).append(System.lineSeparator());
+            }
+            assertEquals(expectedOutput.toString(), result.output());
+        }
+    }
+
+    @Test
+    public void executesSameProgramManyTimesWithSeparateRegisters() throws Exception {
+        // given
+        var file = Path.of("sample-files/test2.sml");
+        var expected = new Machine();
+        assertTrue(new Translator(file.toString()).readAndTranslate(expected.getLabels(), expected.getProg()));
+        expected.setOutput(new MemoryOutputSink());
+        expected.execute();
+
+        // when
+        var report = new BatchRunner(new InterpretingEngine(), 4).run(List.of(file, file, file, file, file, file));
+
+        // then
+        assertEquals(6, report.succeeded());
+        for (var result : report.results()) {
+            assertEquals(expected.getRegisters(), result.registers());
+            assertEquals("720" + System.lineSeparator(), result.output());
+        }
+    }
+
+    @Test
+    public void reportsProgramsWhichFail() throws Exception {
+        // given
+        var unparseable = write("unparseable.sml", "f0 nop 1");
+        var unlinked = write("unlinked.sml", "f0 bnz 1 nowhere");
+        var dividingByZero = write("divide.sml", "f0 lin 1 1", "f1 div 2 1 3");
+        var invalidRegister = write("register.sml", "f0 lin 32 1");
+        var working = write("working.sml", "f0 lin 1 1");
+
+        // when
+        var report = new BatchRunner(new SwitchEngine(), 2)
+                .run(List.of(unparseable, unlinked, dividingByZero, invalidRegister, working));
+
+        // then
+        var results = report.results();
+        assertEquals(1, report.succeeded());
+        assertEquals("Could not parse program file.", results.get(0).error());
+        assertTrue(results.get(1).error().startsWith("Could not link program:"));
+        assertTrue(results.get(2).error().startsWith("Program failed at instruction 1:"));
+        assertTrue(results.get(3).error().startsWith("Could not verify program: Instruction 'f0' uses register 32"));
+        assertNull(results.get(4).error());
+        assertEquals(1, results.get(4).registers().getRegister(1));
+    }
+
+    @Test
+    public void stopsProgramsWhichExceedTheirLimits() throws Exception {
+        // given
+        var runaway = write("runaway.sml", "f0 lin 1 1", "f1 add 2 2 1", "f2 bnz 1 f1");
+        var working = write("working.sml", "f0 lin 1 1");
+        var limits = ExecutionLimits.NONE.withMaxSteps(1000).withTimeout(Duration.ofSeconds(10));
+
+        // when
+        var report = new BatchRunner(new SwitchEngine(), 2, new ProgramCache(10), limits).run(List.of(runaway, working));
+
+        // then
+        var results = report.results();
+        assertEquals(1, report.succeeded());
+        assertTrue(results.get(0).error().startsWith("Program stopped at instruction 1 after 1001 steps: STEP_LIMIT_REACHED"));
+        assertNull(results.get(1).error());
+    }
+
+    @Test
+    public void collectsProgramFilesFromDirectories() throws IOException {
+        // given
+        var directory = Files.createDirectory(tempDir.resolve("programs"));
+        Files.writeString(directory.resolve("b.sml"), "");
+        Files.writeString(directory.resolve("a.sml"), "");
+        Files.writeString(directory.resolve("notes.txt"), "");
+        var single = write("single.sml");
+
+        // when
+        var files = BatchRunner.collectFiles(List.of(directory, single));
+
+        // then
+        assertEquals(List.of(directory.resolve("a.sml"), directory.resolve("b.sml"), single), files);
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        var file = tempDir.resolve(name);
+        Files.write(file, List.of(lines));
+        return file;
+    }
+}
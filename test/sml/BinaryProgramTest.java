@@ -0,0 +1,200 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.exceptions.InvalidProgramFileException;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BinaryProgramTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void loadsWrittenProgram() throws Exception {
+        // given
+        var original = translate("sample-files/test1.sml");
+        var file = tempDir.resolve("test1" + BinaryProgramFormat.EXTENSION);
+
+        // when
+        var written = BinaryProgramWriter.write(original, file);
+        var loaded = new Machine();
+        BinaryProgramReader.read(file, loaded);
+
+        // then
+        assertTrue(written);
+        assertEquals(original.getLabels().toString(), loaded.getLabels().toString());
+        assertEquals(original.toString(), loaded.toString());
+        var jump = (BnzInstruction) loaded.getProg().get(loaded.getProg().size() - 1);
+        assertEquals(((BnzInstruction) original.getProg().get(original.getProg().size() - 1)).getJumpToIndex(),
+                jump.getJumpToIndex());
+    }
+
+    @Test
+    public void runsLoadedProgram() throws Exception {
+        // given
+        var original = translate("sample-files/test2.sml");
+        var file = tempDir.resolve("test2" + BinaryProgramFormat.EXTENSION);
+        BinaryProgramWriter.write(original, file);
+        var loaded = new Machine();
+        BinaryProgramReader.read(file, loaded);
+
+        // when
+        original.execute();
+        loaded.execute();
+
+        // then
+        assertEquals(original.getRegisters(), loaded.getRegisters());
+    }
+
+    @Test
+    public void doesNotWriteProgramWithCustomInstructions() throws IOException {
+        // given
+        var m = new Machine();
+        m.getProg().add(new LinInstruction("L0", 1, 1) {
+        });
+        var file = tempDir.resolve("custom" + BinaryProgramFormat.EXTENSION);
+
+        // when
+        var written = BinaryProgramWriter.write(m, file);
+
+        // then
+        assertFalse(written);
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void rejectsFileWithoutMagicNumber() throws IOException {
+        // given
+        var file = tempDir.resolve("text" + BinaryProgramFormat.EXTENSION);
+        Files.writeString(file, "L0 lin 1 1\n");
+
+        // when
+        var exception = assertThrows(InvalidProgramFileException.class, () -> BinaryProgramReader.read(file, new Machine()));
+
+        // then
+        assertEquals("Not a compiled program file.", exception.getMessage());
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws Exception {
+        // given
+        var file = tempDir.resolve("test1" + BinaryProgramFormat.EXTENSION);
+        BinaryProgramWriter.write(translate("sample-files/test1.sml"), file);
+        var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        // when
+        var exception = assertThrows(InvalidProgramFileException.class, () -> BinaryProgramReader.read(file, new Machine()));
+
+        // then
+        assertEquals("The compiled program file ends unexpectedly.", exception.getMessage());
+    }
+
+    @Test
+    public void mapsOpCodesThroughTable() throws Exception {
+        // given a file numbering lin as 42
+        var file = write(out -> {
+            writeHeader(out);
+            out.writeInt(1);
+            out.writeInt(42);
+            writeString(out, "lin");
+            out.writeInt(1);
+            out.writeInt(42);
+            out.writeInt(3);
+            out.writeInt(7);
+            out.writeInt(0);
+            writeString(out, "f0");
+        });
+        var m = new Machine();
+
+        // when
+        BinaryProgramReader.read(file, m);
+
+        // then
+        assertEquals(new LinInstruction("f0", 3, 7).toString(), m.getProg().get(0).toString());
+    }
+
+    @Test
+    public void rejectsUnknownInstruction() throws IOException {
+        // given
+        var file = write(out -> {
+            writeHeader(out);
+            out.writeInt(1);
+            out.writeInt(0);
+            writeString(out, "nop");
+        });
+
+        // when
+        var exception = assertThrows(InvalidProgramFileException.class, () -> BinaryProgramReader.read(file, new Machine()));
+
+        // then
+        assertEquals("Unknown instruction 'nop'.", exception.getMessage());
+    }
+
+    @Test
+    public void rejectsJumpOutsideProgram() throws IOException {
+        // given
+        var file = write(out -> {
+            writeHeader(out);
+            out.writeInt(1);
+            out.writeInt(0);
+            writeString(out, "bnz");
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeInt(4);
+            out.writeInt(0);
+            writeString(out, "f0");
+        });
+
+        // when
+        var exception = assertThrows(InvalidProgramFileException.class, () -> BinaryProgramReader.read(file, new Machine()));
+
+        // then
+        assertEquals("Instruction 'f0' jumps to an invalid offset 4.", exception.getMessage());
+    }
+
+    private Machine translate(String path) throws Exception {
+        var m = new Machine();
+        assertTrue(new Translator(path).readAndTranslate(m.getLabels(), m.getProg()));
+        m.link();
+        return m;
+    }
+
+    private Path write(FileContent content) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            content.write(out);
+        }
+        var file = Files.createTempFile(tempDir, "program", BinaryProgramFormat.EXTENSION);
+        Files.write(file, bytes.toByteArray());
+        return file;
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(BinaryProgramFormat.MAGIC);
+        out.writeShort(BinaryProgramFormat.VERSION);
+        out.writeShort(4);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeBytes(value);
+    }
+
+    @FunctionalInterface
+    private interface FileContent {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,70 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BufferedOutputSinkTest {
+    private static final String lineSeparator = System.lineSeparator();
+
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @Test
+    public void writesValuesLikePrintln() {
+        // given
+        var sink = new BufferedOutputSink(outContent);
+        var values = new int[]{0, 7, -7, 10, 1234567890, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+        // when
+        for (var value : values) {
+            sink.write(value);
+        }
+        sink.flush();
+
+        // then
+        var expected = new StringBuilder();
+        for (var value : values) {
+            expected.append(value).append(lineSeparator);
+        }
+        assertEquals(expected.toString(), outContent.toString());
+    }
+
+    @Test
+    public void holdsValuesBackUntilFlushed() {
+        // given
+        var sink = new BufferedOutputSink(outContent);
+
+        // when
+        sink.write(42);
+
+        // then
+        assertEquals("", outContent.toString());
+        sink.flush();
+        assertEquals("42" + lineSeparator, outContent.toString());
+    }
+
+    @Test
+    public void writesBufferOutWhenFull() {
+        // given
+        var sink = new BufferedOutputSink(outContent, 16);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            sink.write(Integer.MIN_VALUE);
+        }
+
+        // then
+        var written = outContent.toString();
+        assertEquals(9 * ("" + Integer.MIN_VALUE + lineSeparator).length(), written.length());
+        sink.flush();
+        assertEquals(10 * ("" + Integer.MIN_VALUE + lineSeparator).length(), outContent.toString().length());
+    }
+
+    @Test
+    public void throwsIfBufferCannotHoldValue() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferedOutputSink(outContent, 8));
+    }
+}
@@ -0,0 +1,110 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.exceptions.DuplicateLabelException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LabelsTest {
+    private final Labels labels = new Labels();
+
+    @Test
+    public void addLabelReturnsNumberOfLabel() throws DuplicateLabelException {
+        // when
+        var first = labels.addLabel("L0");
+        var second = labels.addLabel("L1");
+
+        // then
+        assertEquals(0, first);
+        assertEquals(1, second);
+    }
+
+    @Test
+    public void indexOfReturnsNumberOfLabel() throws DuplicateLabelException {
+        // given
+        for (int i = 0; i < 1000; i++) {
+            labels.addLabel("L" + i);
+        }
+
+        // when
+        var index = labels.indexOf("L567");
+
+        // then
+        assertEquals(567, index);
+    }
+
+    @Test
+    public void indexOfReturnsMinusOneIfLabelNotFound() throws DuplicateLabelException {
+        // given
+        labels.addLabel("L0");
+
+        // when
+        var index = labels.indexOf("L1");
+
+        // then
+        assertEquals(-1, index);
+    }
+
+    @Test
+    public void addLabelThrowsIfLabelAlreadyAdded() throws DuplicateLabelException {
+        // given
+        labels.addLabel("L0");
+        labels.addLabel("L1");
+
+        // when
+        assertThrows(DuplicateLabelException.class, () -> labels.addLabel("L0"));
+
+        // then
+        assertEquals("(L0, L1)", labels.toString());
+    }
+
+    @Test
+    public void labelsWithEqualHashCodesAreToldApart() throws DuplicateLabelException {
+        // given
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        labels.addLabel("Aa");
+        for (int i = 0; i < 100; i++) {
+            labels.addLabel("L" + i);
+        }
+
+        // when
+        var index = labels.addLabel("BB");
+
+        // then
+        assertEquals(101, index);
+        assertEquals(0, labels.indexOf("Aa"));
+        assertEquals(101, labels.indexOf("BB"));
+        assertEquals(-1, labels.indexOf("C#"));
+        assertThrows(DuplicateLabelException.class, () -> labels.addLabel("Aa"));
+    }
+
+    @Test
+    public void resetRemovesAllLabels() throws DuplicateLabelException {
+        // given
+        labels.addLabel("L0");
+        labels.addLabel("L1");
+
+        // when
+        labels.reset();
+
+        // then
+        assertEquals("()", labels.toString());
+        assertEquals(-1, labels.indexOf("L0"));
+        assertEquals(0, labels.addLabel("L1"));
+    }
+
+    @Test
+    public void frozenLabelsCannotBeChanged() throws DuplicateLabelException {
+        // given
+        labels.addLabel("L0");
+        labels.freeze();
+
+        // when
+        assertThrows(UnsupportedOperationException.class, () -> labels.addLabel("L1"));
+        assertThrows(UnsupportedOperationException.class, labels::reset);
+
+        // then
+        assertEquals("(L0)", labels.toString());
+    }
+}
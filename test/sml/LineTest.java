@@ -2,6 +2,8 @@ package sml;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -137,4 +139,70 @@ public class LineTest {
         // then
         assertEquals(Integer.MAX_VALUE, scanned);
     }
+
+    @Test
+    public void scansIntegerLikeIntegerParseInt() {
+        // given
+        var words = new String[]{"-7", "+7", "007", "2147483647", "-2147483648", "2147483648", "-2147483649",
+                "99999999999", "-", "+", "1-", "--1", "1.5", "١٢"};
+
+        for (var word : words) {
+            // when
+            var scanned = Line.of("label op " + word).scanInt();
+
+            // then
+            int expected;
+            try {
+                expected = Integer.parseInt(word);
+            } catch (NumberFormatException e) {
+                expected = Integer.MAX_VALUE;
+            }
+            assertEquals(expected, scanned, word);
+        }
+    }
+
+    @Test
+    public void scansWordsSeparatedBySpacesAndTabsOnly() {
+        // given
+        var line = Line.of(" \tfirst\tsecond third\u000Bfourth \r");
+
+        // when
+        var scanned = line.scan();
+        var rest = line.scan();
+
+        // then
+        assertEquals("first", line.getLabel());
+        assertEquals("second", line.getOpCode());
+        assertEquals("third\u000Bfourth", scanned);
+        assertEquals("", rest);
+    }
+
+    @Test
+    public void scanningIntegersDoesNotAllocate() {
+        // given
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        var lines = new Line[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = Line.of("L" + i + " add " + i + " -" + i + " " + (i * 1000));
+        }
+        scanAll(Line.of("warm up 1 2 3"));
+
+        // when
+        var before = threads.getThreadAllocatedBytes(threadId);
+        var sum = 0L;
+        for (var line : lines) {
+            sum += scanAll(line);
+        }
+        var allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // then
+        assertEquals(999L * 1000 / 2 * 1000, sum);
+        // copying out each operand, as the tokenizer used to, costs tens of bytes per operand
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+
+    private static long scanAll(Line line) {
+        return (long) line.scanInt() + line.scanInt() + line.scanInt();
+    }
 }
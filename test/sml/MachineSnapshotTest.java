@@ -0,0 +1,154 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.InvalidSnapshotException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.Optimizer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MachineSnapshotTest {
+    @TempDir
+    Path tempDir;
+
+    private final Program program = programCountingDownFrom(10_000);
+
+    public MachineSnapshotTest() throws DuplicateLabelException, UnknownLabelException {
+    }
+
+    @Test
+    public void resumedExecutionEndsLikeUninterruptedOne() throws InvalidSnapshotException {
+        // given
+        var uninterrupted = new Machine(program);
+        uninterrupted.execute();
+        var stopped = new Machine(program);
+        stopped.execute(ExecutionLimits.NONE.withMaxSteps(5_000));
+        var bytes = MachineSnapshot.of(stopped).toByteArray();
+        var resumed = new Machine(program);
+
+        // when
+        MachineSnapshot.fromByteArray(bytes).restore(resumed);
+        var result = resumed.resume(ExecutionLimits.NONE);
+
+        // then
+        assertTrue(result.completed());
+        assertEquals(uninterrupted.getRegisters(), resumed.getRegisters());
+        assertEquals(uninterrupted.getPc(), resumed.getPc());
+    }
+
+    @Test
+    public void snapshotRoundTripsThroughFile() throws IOException, InvalidSnapshotException {
+        // given
+        var machine = new Machine(program);
+        machine.execute(ExecutionLimits.NONE.withMaxSteps(100));
+        var file = tempDir.resolve("state" + MachineSnapshot.EXTENSION);
+
+        // when
+        MachineSnapshot.of(machine).write(file);
+        var snapshot = MachineSnapshot.read(file);
+
+        // then
+        assertEquals(machine.getPc(), snapshot.getPc());
+        assertArrayEquals(machine.getRegisters().toArray(), snapshot.getRegisters());
+        assertEquals(4 * 4 + 32 + 4 * Registers.NUMBER_OF_REGISTERS, MachineSnapshot.of(machine).toByteArray().length);
+    }
+
+    @Test
+    public void restoreThrowsIfSnapshotIsOfAnotherProgram() throws DuplicateLabelException, UnknownLabelException {
+        // given
+        var machine = new Machine(program);
+        machine.execute(ExecutionLimits.NONE.withMaxSteps(100));
+        var snapshot = MachineSnapshot.of(machine);
+        var other = new Machine(programCountingDownFrom(20_000));
+
+        // when
+        var exception = assertThrows(InvalidSnapshotException.class, () -> snapshot.restore(other));
+
+        // then
+        assertEquals("The snapshot was taken of another program.", exception.getMessage());
+    }
+
+    @Test
+    public void fromByteArrayThrowsIfDataIsNotSnapshot() {
+        // given
+        var machine = new Machine(program);
+        machine.execute(ExecutionLimits.NONE.withMaxSteps(100));
+        var bytes = MachineSnapshot.of(machine).toByteArray();
+        var truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        var corrupted = bytes.clone();
+        corrupted[0] = 'X';
+
+        // when
+        var truncatedException = assertThrows(InvalidSnapshotException.class, () -> MachineSnapshot.fromByteArray(truncated));
+        var corruptedException = assertThrows(InvalidSnapshotException.class, () -> MachineSnapshot.fromByteArray(corrupted));
+
+        // then
+        assertEquals("The snapshot ends unexpectedly.", truncatedException.getMessage());
+        assertEquals("The data is not a machine snapshot.", corruptedException.getMessage());
+    }
+
+    @Test
+    public void fingerprintTellsCountedLoopsWithDifferentBodiesApart() throws Exception {
+        // given
+        var counting = Program.of(Optimizer.standard().optimize(programCountingDownFrom(10_000).getInstructions()));
+        var doubling = Program.of(Optimizer.standard().optimize(List.of(
+                new LinInstruction("f0", 1, 10_000),
+                new LinInstruction("f1", 2, 1),
+                new AddInstruction("f2", 3, 3, 3),
+                new SubInstruction("f3", 1, 1, 2),
+                new BnzInstruction("f4", 1, "f2")
+        )));
+
+        // when
+        var countingFingerprint = counting.getFingerprint();
+        var doublingFingerprint = doubling.getFingerprint();
+
+        // then
+        assertTrue(counting.getInstructions().stream().anyMatch(ins -> ins instanceof CountedLoopInstruction));
+        assertEquals(MachineSnapshot.FINGERPRINT_LENGTH, countingFingerprint.length);
+        assertFalse(Arrays.equals(countingFingerprint, doublingFingerprint));
+    }
+
+    @Test
+    public void rejectsProgramsWithoutCanonicalEncoding() throws DuplicateLabelException, UnknownLabelException {
+        // given an instruction of a subclass, which may do anything, so is not encoded as the one it extends
+        var custom = Program.of(List.of(new LinInstruction("f0", 1, 1) {
+        }));
+        var machine = new Machine(custom);
+        machine.execute();
+        var stopped = new Machine(program);
+        stopped.execute(ExecutionLimits.NONE.withMaxSteps(100));
+        var snapshot = MachineSnapshot.of(stopped);
+
+        // when
+        var ofException = assertThrows(IllegalArgumentException.class, () -> MachineSnapshot.of(machine));
+        var restoreException = assertThrows(InvalidSnapshotException.class, () -> snapshot.restore(machine));
+
+        // then
+        assertEquals("The program has instructions which cannot be part of a snapshot.", ofException.getMessage());
+        assertEquals("The program has instructions which cannot be part of a snapshot.", restoreException.getMessage());
+    }
+
+    private static Program programCountingDownFrom(int from) throws DuplicateLabelException, UnknownLabelException {
+        return Program.of(List.of(
+                new LinInstruction("f0", 1, from),
+                new LinInstruction("f1", 2, 1),
+                new AddInstruction("f2", 3, 3, 1),
+                new SubInstruction("f3", 1, 1, 2),
+                new BnzInstruction("f4", 1, "f2")
+        ));
+    }
+}
@@ -0,0 +1,209 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MachineTest {
+    private final Machine machine = new Machine();
+
+    @Test
+    public void linkResolvesJumpTargetToInstructionIndex() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var jumpInstruction = new BnzInstruction("L0", 1, "L2");
+        load(jumpInstruction, new LinInstruction("L1", 2, 2), new LinInstruction("L2", 2, 3));
+
+        // when
+        machine.link();
+
+        // then
+        assertEquals(2, jumpInstruction.getJumpToIndex());
+    }
+
+    @Test
+    public void linkThrowsIfJumpTargetDoesNotExist() throws DuplicateLabelException {
+        // given
+        load(new BnzInstruction("L0", 1, "nowhere"), new LinInstruction("L1", 2, 2));
+
+        // when
+        var exception = assertThrows(UnknownLabelException.class, machine::link);
+
+        // then
+        assertTrue(exception.getMessage().contains("'L0'"));
+        assertTrue(exception.getMessage().contains("'nowhere'"));
+    }
+
+    @Test
+    public void linkedJumpDoesNotDependOnInstructionLabels() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var jumpInstruction = new BnzInstruction("L1", 1, "L0");
+        load(new LinInstruction("L0", 2, 2), jumpInstruction, new LinInstruction("L2", 2, 3));
+        machine.link();
+        machine.setRegisters(new Registers());
+        machine.getRegisters().setRegister(1, 1);
+        // the resolved index is used even once the program no longer contains the label
+        machine.setProg(List.of(new LinInstruction("other", 2, 2), jumpInstruction));
+
+        // when
+        jumpInstruction.execute(machine);
+
+        // then
+        assertEquals(0, machine.getPc());
+    }
+
+    @Test
+    public void executesLinkedLoopCorrectly() throws UnknownLabelException, DuplicateLabelException {
+        // given a variant of sample-files/test2.sml which sums instead of multiplying
+        load(
+                new LinInstruction("f0", 20, 6),
+                new LinInstruction("f1", 21, 1),
+                new LinInstruction("f2", 22, 1),
+                new AddInstruction("f3", 21, 21, 20),
+                new SubInstruction("f4", 20, 20, 22),
+                new BnzInstruction("f5", 20, "f3")
+        );
+        machine.link();
+
+        // when
+        machine.execute();
+
+        // then
+        assertEquals(0, machine.getRegisters().getRegister(20));
+        assertEquals(1 + 6 + 5 + 4 + 3 + 2 + 1, machine.getRegisters().getRegister(21));
+        assertEquals(6, machine.getPc());
+    }
+
+    @Test
+    public void executeWritesOutputToSinkAndFlushesIt() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var flushes = new int[1];
+        var values = new MemoryOutputSink();
+        var output = new OutputSink() {
+            @Override
+            public void write(int value) {
+                values.write(value);
+            }
+
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        load(new LinInstruction("f0", 1, 5), new OutInstruction("f1", 1), new OutInstruction("f2", 2));
+        machine.link();
+        machine.setOutput(output);
+
+        // when
+        machine.execute();
+
+        // then
+        assertArrayEquals(new int[]{5, 0}, values.getValues());
+        assertEquals(1, flushes[0]);
+    }
+
+    @Test
+    public void executeWithLimitsCompletesAndCountsSteps() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        loadCountdown(5);
+
+        // when
+        var result = machine.execute(ExecutionLimits.NONE.withMaxSteps(1000));
+
+        // then
+        assertTrue(result.completed());
+        assertEquals(2 + 5 * 2, result.steps());
+        assertEquals(4, machine.getPc());
+    }
+
+    @Test
+    public void executeWithLimitsStopsAtStepBudgetOnBackwardJump() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        loadCountdown(1000);
+
+        // when
+        var result = machine.execute(ExecutionLimits.NONE.withMaxSteps(10));
+
+        // then jumps are checked once they jump back, so the budget is exceeded by less than the program length
+        assertEquals(ExecutionResult.Status.STEP_LIMIT_REACHED, result.status());
+        assertEquals(10, result.steps());
+        assertEquals(2, machine.getPc());
+        assertEquals(1000 - 4, machine.getRegisters().getRegister(1));
+    }
+
+    @Test
+    public void executeWithLimitsStopsRunawayLoopAtDeadline() throws UnknownLabelException, DuplicateLabelException {
+        // given a loop which never ends
+        load(new LinInstruction("f0", 1, 1), new BnzInstruction("f1", 1, "f1"));
+        machine.link();
+
+        // when
+        var result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> {
+                    return machine.execute(ExecutionLimits.NONE.withTimeout(Duration.ofMillis(50)));
+                });
+
+        // then
+        assertEquals(ExecutionResult.Status.TIMED_OUT, result.status());
+        assertEquals(1, machine.getPc());
+    }
+
+    @Test
+    public void executeWithLimitsStopsWhenCancelledFromAnotherThread() throws Exception {
+        // given a loop which never ends
+        load(new LinInstruction("f0", 1, 1), new BnzInstruction("f1", 1, "f1"));
+        machine.link();
+        var cancellation = new Cancellation();
+        var canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            cancellation.cancel();
+        });
+        canceller.start();
+
+        // when
+        var result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> {
+                    return machine.execute(ExecutionLimits.NONE.withCancellation(cancellation));
+                });
+
+        // then
+        canceller.join();
+        assertEquals(ExecutionResult.Status.CANCELLED, result.status());
+    }
+
+    /**
+     * Load a loop counting register 1 down from the given value, two instructions per iteration.
+     */
+    private void loadCountdown(int from) throws UnknownLabelException, DuplicateLabelException {
+        load(
+                new LinInstruction("f0", 1, from),
+                new LinInstruction("f1", 2, 1),
+                new SubInstruction("f2", 1, 1, 2),
+                new BnzInstruction("f3", 1, "f2")
+        );
+        machine.link();
+    }
+
+    private void load(Instruction... instructions) throws DuplicateLabelException {
+        machine.getLabels().reset();
+        machine.getProg().clear();
+        for (var instruction : instructions) {
+            machine.getLabels().addLabel(instruction.getLabel());
+            machine.getProg().add(instruction);
+        }
+    }
+}
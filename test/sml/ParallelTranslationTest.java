@@ -0,0 +1,127 @@
+package sml;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.FailedToLoadAppConfigException;
+import sml.exceptions.InstructionParseFailedException;
+import sml.exceptions.TranslationFailedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ParallelTranslationTest {
+    @TempDir
+    Path tempDir;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final Labels labels = new Labels();
+    private final List<Instruction> instructions = new ArrayList<>();
+    private InstructionFactory factory;
+
+    @BeforeEach
+    public void setUp() throws FailedToLoadAppConfigException {
+        factory = new InstructionFactory(AppConfig.getInstance());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void translatesChunksInOriginalOrder() throws Exception {
+        // given
+        var content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append("L").append(i).append(" lin ").append(i % 32).append(" ").append(i).append(i % 7 == 0 ? "\r\n\n" : "\n");
+        }
+        content.append("end out 3");
+        var file = write(content.toString());
+        var expected = new Machine();
+        new Translator(file).readAndTranslate(expected.getLabels(), expected.getProg());
+
+        // when
+        new ParallelTranslation(file, factory, pool, 64).translate(labels, instructions);
+
+        // then
+        assertEquals(501, instructions.size());
+        assertEquals(expected.getLabels().toString(), labels.toString());
+        assertEquals(expected.getProg().toString(), instructions.toString());
+    }
+
+    @Test
+    public void translatesEmptyFile() throws Exception {
+        // when
+        new ParallelTranslation(write(""), factory, pool, 64).translate(labels, instructions);
+
+        // then
+        assertEquals(0, instructions.size());
+        assertEquals("()", labels.toString());
+    }
+
+    @Test
+    public void reportsLineNumberOfInvalidInstruction() throws IOException {
+        // given
+        var file = write(lines(300) + "\nbad nop 1\n" + lines(10));
+
+        // when
+        var exception = assertThrows(TranslationFailedException.class,
+                () -> new ParallelTranslation(file, factory, pool, 32).translate(labels, instructions));
+
+        // then
+        assertEquals(301, exception.getLineNumber());
+        assertTrue(exception.getCause() instanceof InstructionParseFailedException);
+    }
+
+    @Test
+    public void reportsFirstErrorInFile() throws IOException {
+        // given
+        var file = write(lines(200) + "\n\nL150 out 1\n" + lines(100) + "\nbad nop 1\n");
+
+        // when
+        var exception = assertThrows(TranslationFailedException.class,
+                () -> new ParallelTranslation(file, factory, pool, 32).translate(labels, instructions));
+
+        // then
+        assertEquals(202, exception.getLineNumber());
+        assertTrue(exception.getCause() instanceof DuplicateLabelException);
+    }
+
+    @Test
+    public void chunkSizeSpreadsLargeFilesOverThreads() {
+        // when
+        var small = ParallelTranslation.chunkSizeFor(1000, pool);
+        var large = ParallelTranslation.chunkSizeFor(1600L * 1024 * 1024, pool);
+
+        // then
+        assertEquals(ParallelTranslation.MIN_CHUNK_SIZE, small);
+        assertEquals(100L * 1024 * 1024, large);
+    }
+
+    /**
+     * Return the given number of lin instructions, one per line, labelled L0, L1 and so on.
+     */
+    private String lines(int count) {
+        var content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            content.append(i == 0 ? "" : "\n").append("L").append(i).append(" lin 1 ").append(i);
+        }
+        return content.toString();
+    }
+
+    private String write(String content) throws IOException {
+        var file = Files.createTempFile(tempDir, "program", ".sml");
+        Files.writeString(file, content);
+        return file.toString();
+    }
+}
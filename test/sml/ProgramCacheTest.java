@@ -0,0 +1,150 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ProgramCacheTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void returnsCachedProgramWhileFileUnchanged() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 lin 1 1");
+        var cache = new ProgramCache(4);
+        var first = cache.get(file);
+
+        // when
+        var second = cache.get(file);
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void returnsCachedProgramIfFileTouchedButContentUnchanged() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 lin 1 1");
+        var cache = new ProgramCache(4);
+        var first = cache.get(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2000));
+
+        // when
+        var second = cache.get(file);
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void translatesFileAgainWhenContentChanged() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 lin 1 1");
+        var cache = new ProgramCache(4);
+        var first = cache.get(file);
+        write("a.sml", 2000, "f0 lin 1 2");
+
+        // when
+        var second = cache.get(file);
+
+        // then
+        assertNotSame(first, second);
+        assertEquals(2, cache.getMisses());
+        assertEquals("[f0: lin] store in register 1 the value 2\n", second.toString());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedProgram() throws Exception {
+        // given
+        var a = write("a.sml", 1000, "f0 lin 1 1");
+        var b = write("b.sml", 1000, "f0 lin 1 2");
+        var c = write("c.sml", 1000, "f0 lin 1 3");
+        var cache = new ProgramCache(2);
+        cache.get(a);
+        cache.get(b);
+        cache.get(a);
+
+        // when
+        cache.get(c);
+        cache.get(a);
+        cache.get(b);
+
+        // then
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void loadsCompiledProgramFromDirectory() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 lin 1 3", "f1 lin 2 1", "f2 sub 1 1 2", "f3 bnz 1 f2");
+        var directory = tempDir.resolve("cache");
+        var expected = new ProgramCache(4, directory).get(file);
+
+        // when
+        var cache = new ProgramCache(4, directory);
+        var program = cache.get(file);
+
+        // then
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(expected.toString(), program.toString());
+        var m = new Machine(program);
+        m.execute();
+        assertEquals(0, m.getRegisters().getRegister(1));
+    }
+
+    @Test
+    public void ignoresInvalidCompiledProgram() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 lin 1 3");
+        var directory = tempDir.resolve("cache");
+        new ProgramCache(4, directory).get(file);
+        try (var compiled = Files.list(directory)) {
+            for (var path : compiled.toList()) {
+                Files.writeString(path, "garbage");
+            }
+        }
+
+        // when
+        var cache = new ProgramCache(4, directory);
+        var program = cache.get(file);
+
+        // then
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, program.size());
+        assertEquals(1, new ProgramCache(4, directory).get(file).size());
+    }
+
+    @Test
+    public void returnsNullIfFileCannotBeTranslated() throws Exception {
+        // given
+        var file = write("a.sml", 1000, "f0 nop 1");
+
+        // when
+        var program = new ProgramCache(4).get(file);
+
+        // then
+        assertNull(program);
+    }
+
+    private Path write(String name, long modified, String... lines) throws IOException {
+        var file = tempDir.resolve(name);
+        Files.write(file, List.of(lines));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+}
@@ -0,0 +1,156 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ProgramFileReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void readsLinesWithoutTerminators() throws IOException {
+        // when
+        var lines = readAll("L0 lin 1 2\nL1 out 1\n", ProgramFileReader.DEFAULT_WINDOW_SIZE);
+
+        // then
+        assertEquals(List.of("L0 lin 1 2", "L1 out 1"), lines);
+    }
+
+    @Test
+    public void readsLastLineWithoutLineFeed() throws IOException {
+        // when
+        var lines = readAll("L0 lin 1 2\nL1 out 1", ProgramFileReader.DEFAULT_WINDOW_SIZE);
+
+        // then
+        assertEquals(List.of("L0 lin 1 2", "L1 out 1"), lines);
+    }
+
+    @Test
+    public void readsWindowsLineEndingsAndEmptyLines() throws IOException {
+        // when
+        var lines = readAll("L0 lin 1 2\r\n\r\n\nL1 out 1\r\n", ProgramFileReader.DEFAULT_WINDOW_SIZE);
+
+        // then
+        assertEquals(List.of("L0 lin 1 2", "", "", "L1 out 1"), lines);
+    }
+
+    @Test
+    public void readsNothingFromEmptyFile() throws IOException {
+        // when
+        var lines = readAll("", ProgramFileReader.DEFAULT_WINDOW_SIZE);
+
+        // then
+        assertEquals(List.of(), lines);
+    }
+
+    @Test
+    public void decodesUtf8() throws IOException {
+        // when
+        var lines = readAll("é lin 1 2\n→ bnz 1 é\n", ProgramFileReader.DEFAULT_WINDOW_SIZE);
+
+        // then
+        assertEquals(List.of("é lin 1 2", "→ bnz 1 é"), lines);
+    }
+
+    @Test
+    public void readsLinesSpanningWindows() throws IOException {
+        // given
+        var expected = new ArrayList<String>();
+        var content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            expected.add("L" + i + " lin " + (i % 32) + " " + i);
+            content.append(expected.get(i)).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        // when
+        var lines = readAll(content.toString(), 24);
+
+        // then
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void throwsIfLineLongerThanWindow() throws IOException {
+        // given
+        var file = write("L0 lin 1 2\nL1 lin 1 2222222222\nL2 out 1\n");
+
+        // when
+        try (var reader = new ProgramFileReader(file.toString(), 16)) {
+            assertEquals("L0 lin 1 2", reader.readLine());
+
+            // then
+            assertThrows(IOException.class, reader::readLine);
+        }
+    }
+
+    @Test
+    public void readsLinesInPlaceLikeReadLine() throws IOException {
+        // given
+        var content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append(i % 50 == 7 ? "é" : "L").append(i).append(" lin 1 ").append(i)
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        var file = write(content.toString());
+
+        // when
+        var lines = new ArrayList<String>();
+        try (var reader = new ProgramFileReader(file.toString(), 24)) {
+            CharSequence line;
+            while ((line = reader.readLineInPlace()) != null) {
+                lines.add(line.toString());
+            }
+        }
+
+        // then
+        assertEquals(readAll(content.toString(), 24), lines);
+    }
+
+    @Test
+    public void wordsOfLineReadInPlaceOutliveIt() throws IOException {
+        // given
+        var file = write("L0 lin 1 2\nL1 out 1\n");
+
+        // when
+        try (var reader = new ProgramFileReader(file.toString())) {
+            var first = Line.of(reader.readLineInPlace());
+            var label = first.getLabel();
+            var second = Line.of(reader.readLineInPlace());
+
+            // then
+            assertEquals("L0", label);
+            assertEquals("lin", first.getOpCode());
+            assertEquals("L1", second.getLabel());
+            assertEquals("out", second.getOpCode());
+            assertNull(reader.readLineInPlace());
+        }
+    }
+
+    private List<String> readAll(String content, int windowSize) throws IOException {
+        var file = write(content);
+        var lines = new ArrayList<String>();
+        try (var reader = new ProgramFileReader(file.toString(), windowSize)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private Path write(String content) throws IOException {
+        var file = Files.createTempFile(tempDir, "program", ".sml");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
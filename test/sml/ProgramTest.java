@@ -0,0 +1,104 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ProgramTest {
+
+    @Test
+    public void ofLinksInstructions() throws DuplicateLabelException, UnknownLabelException {
+        // given
+        var jump = new BnzInstruction("f2", 1, "f1");
+
+        // when
+        var program = Program.of(List.of(new LinInstruction("f0", 1, 1), new LinInstruction("f1", 2, 2), jump));
+
+        // then
+        assertEquals(3, program.size());
+        assertEquals(1, program.indexOf("f1"));
+        assertEquals(-1, program.indexOf("f3"));
+        assertEquals(1, jump.getJumpToIndex());
+    }
+
+    @Test
+    public void ofThrowsIfLabelDefinedTwice() {
+        assertThrows(DuplicateLabelException.class,
+                () -> Program.of(List.of(new LinInstruction("f0", 1, 1), new LinInstruction("f0", 2, 2))));
+    }
+
+    @Test
+    public void ofThrowsIfJumpTargetDoesNotExist() {
+        assertThrows(UnknownLabelException.class, () -> Program.of(List.of(new BnzInstruction("f0", 1, "nowhere"))));
+    }
+
+    @Test
+    public void programCannotBeChanged() throws DuplicateLabelException, UnknownLabelException {
+        // given
+        var instructions = new ArrayList<Instruction>(List.of(new LinInstruction("f0", 1, 1)));
+        var program = Program.of(instructions);
+
+        // when
+        instructions.add(new LinInstruction("f1", 2, 2));
+
+        // then
+        assertEquals(1, program.size());
+        assertThrows(UnsupportedOperationException.class, () -> program.getInstructions().clear());
+        assertThrows(UnsupportedOperationException.class, () -> new Machine(program).getLabels().reset());
+    }
+
+    @Test
+    public void machinesRunSameProgramConcurrently() throws Exception {
+        // given a loop summing 1 to n, where n is printed first so every run can be told apart
+        var program = Program.of(List.of(
+                new LinInstruction("f0", 1, 0),
+                new LinInstruction("f1", 3, 1),
+                new OutInstruction("f2", 2),
+                new AddInstruction("f3", 1, 1, 2),
+                new SubInstruction("f4", 2, 2, 3),
+                new BnzInstruction("f5", 2, "f3")
+        ));
+        var pool = Executors.newFixedThreadPool(4);
+        var runs = new ArrayList<Callable<Machine>>();
+        for (int n = 1; n <= 200; n++) {
+            var start = n;
+            runs.add(() -> {
+                var m = new Machine(program);
+                m.setOutput(new MemoryOutputSink());
+                // Registers are reset by execute, so start the loop after the first instruction
+                m.setRegisters(new Registers());
+                m.getRegisters().setRegister(2, start);
+                for (m.setPc(1); m.getPc() < program.size(); ) {
+                    var instruction = program.getInstructions().get(m.getPc());
+                    m.setPc(m.getPc() + 1);
+                    instruction.execute(m);
+                }
+                return m;
+            });
+        }
+
+        // when
+        var machines = pool.invokeAll(runs);
+        pool.shutdown();
+
+        // then
+        for (int n = 1; n <= 200; n++) {
+            var m = machines.get(n - 1).get();
+            assertEquals(n * (n + 1) / 2, m.getRegisters().getRegister(1));
+            assertArrayEquals(new int[]{n}, ((MemoryOutputSink) m.getOutput()).getValues());
+        }
+    }
+}
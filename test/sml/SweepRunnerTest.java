@@ -0,0 +1,216 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.engines.LaneResult;
+import sml.exceptions.InvalidSweepInputException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.SubInstruction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SweepRunnerTest {
+    /**
+     * Add register 1 to register 2 register 1 times and divide register 2 by register 3.
+     */
+    private final Program program = Program.of(List.of(
+            new LinInstruction("f0", 4, 1),
+            new AddInstruction("f1", 2, 2, 1),
+            new SubInstruction("f2", 1, 1, 4),
+            new BnzInstruction("f3", 1, "f1"),
+            new DivInstruction("f4", 5, 2, 3)
+    ));
+
+    SweepRunnerTest() throws Exception {
+    }
+
+    @Test
+    public void writesResultOfEveryRowInOrder() throws Exception {
+        // given
+        var input = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            input.append("0,").append(i).append(",0,").append(i % 7 + 1).append('\n');
+        }
+        var output = new ByteArrayOutputStream();
+
+        // when
+        var report = run(new SweepRunner(program, 3, 16), SweepFormat.CSV,
+                input.toString().getBytes(StandardCharsets.UTF_8), output);
+
+        // then
+        assertEquals(1000, report.rows());
+        assertEquals(0, report.failed());
+        var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1000, lines.length);
+        for (int i = 1; i <= 1000; i++) {
+            var values = lines[i - 1].split(",");
+            assertEquals(Registers.NUMBER_OF_REGISTERS + 1, values.length);
+            assertEquals(i * (i + 1) / 2, Integer.parseInt(values[2]));
+            assertEquals(i * (i + 1) / 2 / (i % 7 + 1), Integer.parseInt(values[5]));
+            assertEquals("ok", values[Registers.NUMBER_OF_REGISTERS]);
+        }
+    }
+
+    @Test
+    public void reportsRowsWhoseExecutionFails() throws Exception {
+        // given
+        var input = "0,3,0,1\n\n0,3\n";
+        var output = new ByteArrayOutputStream();
+
+        // when
+        var report = run(new SweepRunner(program, 2), SweepFormat.CSV, input.getBytes(StandardCharsets.UTF_8), output);
+
+        // then
+        assertEquals(2, report.rows());
+        assertEquals(1, report.failed());
+        var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines[0].endsWith(",ok"));
+        assertTrue(lines[1].startsWith("0,0,6,0,1,0,"));
+        assertTrue(lines[1].contains(",failed at instruction 4: java.lang.ArithmeticException"));
+    }
+
+    @Test
+    public void reportsRowsWhichExceedTheirLimits() throws Exception {
+        // given a row whose counter starts below zero, so that it would loop for billions of iterations
+        var input = "0,-1,0,1\n0,3,0,1\n";
+        var output = new ByteArrayOutputStream();
+        var limits = ExecutionLimits.NONE.withMaxSteps(1000);
+
+        // when
+        var report = run(new SweepRunner(program, 1, 16, limits), SweepFormat.CSV,
+                input.getBytes(StandardCharsets.UTF_8), output);
+
+        // then
+        assertEquals(2, report.rows());
+        assertEquals(1, report.stopped());
+        assertEquals(0, report.failed());
+        var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines[0].endsWith(",stopped at instruction 1: STEP_LIMIT_REACHED"));
+        assertTrue(lines[1].endsWith(",ok"));
+    }
+
+    @Test
+    public void readsAndWritesBinaryRows() throws Exception {
+        // given
+        var input = new ByteArrayOutputStream();
+        var rows = new DataOutputStream(input);
+        for (int i = 1; i <= 10; i++) {
+            for (int r = 0; r < Registers.NUMBER_OF_REGISTERS; r++) {
+                rows.writeInt(r == 1 ? i : r == 3 ? 2 : 0);
+            }
+        }
+        var output = new ByteArrayOutputStream();
+
+        // when
+        var report = run(new SweepRunner(program, 2, 3), SweepFormat.BINARY, input.toByteArray(), output);
+
+        // then
+        assertEquals(10, report.rows());
+        var results = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(0, results.readInt());
+            assertEquals(program.size(), results.readInt());
+            var registers = new int[Registers.NUMBER_OF_REGISTERS];
+            for (int r = 0; r < registers.length; r++) {
+                registers[r] = results.readInt();
+            }
+            assertEquals(i * (i + 1) / 2, registers[2]);
+            assertEquals(i * (i + 1) / 4, registers[5]);
+        }
+        assertEquals(-1, results.read());
+    }
+
+    @Test
+    public void writesRowsBeforeInvalidRow() {
+        // given
+        var input = "0,1,0,1\n0,2,0,1\n0,x\n0,3,0,1\n";
+        var output = new ByteArrayOutputStream();
+
+        // when
+        var ex = assertThrows(InvalidSweepInputException.class,
+                () -> run(new SweepRunner(program, 1, 1), SweepFormat.CSV, input.getBytes(StandardCharsets.UTF_8), output));
+
+        // then
+        assertEquals("Line 3 has an invalid value 'x' for register 1.", ex.getMessage());
+        assertEquals(2, output.toString(StandardCharsets.UTF_8).split("\n").length);
+    }
+
+    @Test
+    public void rejectsRowWithTooManyValues() {
+        // given
+        var input = "1,".repeat(Registers.NUMBER_OF_REGISTERS) + "1\n";
+
+        // when
+        var ex = assertThrows(InvalidSweepInputException.class,
+                () -> SweepFormat.CSV.reader(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))).read());
+
+        // then
+        assertEquals("Line 1 has 33 values, but there are only 32 registers.", ex.getMessage());
+    }
+
+    @Test
+    public void rejectsIncompleteBinaryRow() {
+        // given
+        var input = new byte[Registers.NUMBER_OF_REGISTERS * Integer.BYTES + 2];
+
+        // when
+        var reader = SweepFormat.BINARY.reader(new ByteArrayInputStream(input));
+
+        // then
+        assertDoesNotThrow(reader::read);
+        assertThrows(InvalidSweepInputException.class, reader::read);
+    }
+
+    @Test
+    public void writesChunksWhichAreDoneWhileRowsAreStillRead() throws Exception {
+        // given rows which arrive slowly, one chunk each
+        var read = new AtomicInteger();
+        var readWhenFirstWritten = new AtomicInteger(-1);
+        SweepFormat.RowReader rows = () -> {
+            if (read.get() == 8) {
+                return null;
+            }
+            if (read.get() > 0) {
+                LockSupport.parkNanos(50_000_000);
+            }
+            read.incrementAndGet();
+            var registers = new int[Registers.NUMBER_OF_REGISTERS];
+            registers[1] = 1;
+            registers[3] = 1;
+            return registers;
+        };
+        var results = new SweepFormat.RowWriter() {
+            @Override
+            public void write(LaneResult result) {
+                readWhenFirstWritten.compareAndSet(-1, read.get());
+            }
+
+            @Override
+            public void flush() { }
+        };
+
+        // when
+        var report = new SweepRunner(program, 4, 1).run(rows, results);
+
+        // then the first row is written before the read-ahead of two chunks per thread is full
+        assertEquals(8, report.rows());
+        assertTrue(readWhenFirstWritten.get() < 8, "rows read when first written: " + readWhenFirstWritten.get());
+    }
+
+    private static SweepReport run(SweepRunner runner, SweepFormat format, byte[] input, ByteArrayOutputStream output)
+            throws Exception {
+        return runner.run(format.reader(new ByteArrayInputStream(input)), format.writer(output));
+    }
+}
@@ -0,0 +1,128 @@
+package sml;
+
+import org.junit.jupiter.api.Test;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.exceptions.VerificationFailedException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class VerifiedProgramTest {
+    @Test
+    public void verifiesProgramWithValidOperands() throws Exception {
+        // given
+        var program = Program.of(List.of(
+                new LinInstruction("f0", 0, 5),
+                new LinInstruction("f1", 31, 1),
+                new SubInstruction("f2", 0, 0, 31),
+                new OutInstruction("f3", 0),
+                new BnzInstruction("f4", 0, "f2")
+        ));
+
+        // when
+        var verified = VerifiedProgram.verify(program.getInstructions());
+
+        // then
+        assertEquals(program.getInstructions(), verified.getInstructions());
+    }
+
+    @Test
+    public void rejectsRegisterOutsideRegisterFile() {
+        // given
+        var program = List.<Instruction>of(new LinInstruction("f0", 1, 5), new AddInstruction("f1", 2, 1, 32));
+
+        // when
+        var exception = assertThrows(VerificationFailedException.class, () -> VerifiedProgram.verify(program));
+
+        // then
+        assertTrue(exception.getMessage().contains("'f1'"));
+        assertTrue(exception.getMessage().contains("register 32"));
+    }
+
+    @Test
+    public void rejectsNegativeRegisterInsideSuperinstruction() {
+        // given
+        var program = List.<Instruction>of(
+                new FusedInstruction(new LinInstruction("f0", 1, 5), new LinInstruction("f1", -1, 6)));
+
+        // when
+        var exception = assertThrows(VerificationFailedException.class, () -> VerifiedProgram.verify(program));
+
+        // then
+        assertTrue(exception.getMessage().contains("register -1"));
+    }
+
+    @Test
+    public void rejectsJumpWhichHasNotBeenLinked() {
+        // given
+        var program = List.<Instruction>of(new LinInstruction("f0", 1, 5), new BnzInstruction("f1", 1, "f0"));
+
+        // when
+        var exception = assertThrows(VerificationFailedException.class, () -> VerifiedProgram.verify(program));
+
+        // then
+        assertTrue(exception.getMessage().contains("'f1' has not been linked"));
+    }
+
+    @Test
+    public void acceptsInstructionsOfOtherClassesUnchecked() throws VerificationFailedException {
+        // given
+        var program = List.<Instruction>of(new LinInstruction("f0", 40, 5) { });
+
+        // when
+        var verified = VerifiedProgram.verify(program);
+
+        // then
+        assertEquals(1, verified.getInstructions().size());
+    }
+
+    @Test
+    public void tracksDivisionsWhoseDivisorIsNeverZero() throws Exception {
+        // given
+        var program = Program.of(List.of(
+                new LinInstruction("f0", 1, 100),
+                new LinInstruction("f2", 2, 7),
+                new LinInstruction("f3", 3, 1),
+                new DivInstruction("f4", 4, 1, 2),
+                new DivInstruction("f5", 5, 2, 1),
+                new DivInstruction("f6", 6, 1, 9),
+                new SubInstruction("f7", 1, 1, 3),
+                new BnzInstruction("f8", 1, "f4")
+        ));
+
+        // when
+        var verified = VerifiedProgram.verify(program.getInstructions());
+
+        // then register 2 is always 7, register 1 changes and register 9 is always 0
+        assertTrue(verified.hasNonZeroDivisor(3));
+        assertFalse(verified.hasNonZeroDivisor(4));
+        assertFalse(verified.hasNonZeroDivisor(5));
+        assertFalse(verified.hasNonZeroDivisor(0));
+    }
+
+    @Test
+    public void knowsNothingAboutDivisionsInProgramWithUnknownInstructions() throws Exception {
+        // given
+        var program = Program.of(List.of(
+                new LinInstruction("f0", 2, 7) { },
+                new LinInstruction("f1", 1, 7),
+                new DivInstruction("f2", 3, 1, 1)
+        ));
+
+        // when
+        var verified = VerifiedProgram.verify(program.getInstructions());
+
+        // then
+        assertTrue(verified.getNonZeroDivisors().isEmpty());
+    }
+}
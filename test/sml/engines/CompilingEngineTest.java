@@ -0,0 +1,180 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.Registers;
+import sml.VerifiedProgram;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.LinInstruction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.engines.EngineTestSupport.captureOutput;
+import static sml.engines.EngineTestSupport.load;
+
+class CompilingEngineTest {
+    private final CompilingEngine engine = new CompilingEngine();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void compiledProgramProducesSameStateAsInterpreter() throws IOException, UnknownLabelException {
+        // given
+        var interpreted = load(Path.of("sample-files/test2.sml"));
+        var compiled = load(Path.of("sample-files/test2.sml"));
+        interpreted.execute();
+
+        // when
+        var output = captureOutput(() -> engine.prepare(compiled.getProg()).execute(compiled));
+
+        // then
+        assertNotNull(engine.compile(compiled.getProg()));
+        assertEquals(interpreted.getRegisters(), compiled.getRegisters());
+        assertEquals(interpreted.getPc(), compiled.getPc());
+        assertEquals("720" + System.lineSeparator(), output);
+    }
+
+    @Test
+    public void compiledProgramHandlesAllInstructions() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{
+                "L0 lin 1 100000",
+                "L1 lin 2 -7",
+                "L2 lin 3 1",
+                "L3 add 4 4 1",
+                "L4 div 5 4 2",
+                "L5 mul 6 5 2",
+                "L6 sub 1 1 3",
+                "L7 bnz 1 L3"
+        };
+        var interpreted = load(tempDir, program);
+        var compiled = load(tempDir, program);
+        interpreted.execute();
+
+        // when
+        engine.prepare(compiled.getProg()).execute(compiled);
+
+        // then
+        assertEquals(interpreted.getRegisters(), compiled.getRegisters());
+        assertEquals(8, compiled.getPc());
+    }
+
+    @Test
+    public void compiledProgramLeavesSameStateAsInterpreterWhenDividingByZero() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{"L0 lin 1 5", "L1 lin 2 0", "L2 div 3 1 2", "L3 lin 4 9"};
+        var interpreted = load(tempDir, program);
+        var compiled = load(tempDir, program);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        var executable = engine.prepare(compiled.getProg());
+
+        // when
+        assertThrows(ArithmeticException.class, () -> executable.execute(compiled));
+
+        // then
+        assertEquals(interpreted.getRegisters(), compiled.getRegisters());
+        assertEquals(interpreted.getPc(), compiled.getPc());
+    }
+
+    @Test
+    public void verifiedProgramLeavesSameStateAsInterpreter() throws Exception {
+        // given the first division never divides by zero, but the second eventually does
+        var program = new String[]{"L0 lin 1 20", "L1 lin 2 3", "L2 lin 3 1", "L3 div 4 1 2", "L4 add 5 5 4",
+                "L5 sub 1 1 3", "L6 div 6 2 1", "L7 bnz 3 L3"};
+        var interpreted = load(tempDir, program);
+        var compiled = load(tempDir, program);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        var verified = VerifiedProgram.verify(compiled.getProg());
+        var executable = engine.prepare(verified);
+
+        // when
+        assertThrows(ArithmeticException.class, () -> executable.execute(compiled));
+
+        // then
+        assertTrue(verified.hasNonZeroDivisor(3));
+        assertFalse(verified.hasNonZeroDivisor(6));
+        assertEquals(interpreted.getRegisters(), compiled.getRegisters());
+        assertEquals(interpreted.getPc(), compiled.getPc());
+    }
+
+    @Test
+    public void compiledProgramRunsRepeatedly() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(Path.of("sample-files/test2.sml"));
+        var executable = engine.prepare(machine.getProg());
+
+        // when
+        captureOutput(() -> {
+            executable.execute(machine);
+            executable.execute(machine);
+        });
+
+        // then
+        assertEquals(720, machine.getRegisters().getRegister(21));
+    }
+
+    @Test
+    public void compilesEmptyProgram() {
+        // given
+        var machine = new Machine();
+
+        // when
+        engine.prepare(machine.getProg()).execute(machine);
+
+        // then
+        assertEquals(0, machine.getPc());
+        assertEquals(new Registers(), machine.getRegisters());
+    }
+
+    @Test
+    public void doesNotCompileProgramWithUnknownInstruction() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 5");
+        var program = new ArrayList<>(machine.getProg());
+        program.add(new LinInstruction("L1", 2, 6) { });
+        machine.setProg(program);
+
+        // when
+        var compiled = engine.compile(program);
+        engine.prepare(program).execute(machine);
+
+        // then
+        assertNull(compiled);
+        assertEquals(5, machine.getRegisters().getRegister(1));
+        assertEquals(6, machine.getRegisters().getRegister(2));
+    }
+
+    @Test
+    public void doesNotCompileProgramWithNonExistentRegister() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 32 5");
+
+        // when
+        var compiled = engine.compile(machine.getProg());
+
+        // then
+        assertNull(compiled);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> engine.prepare(machine.getProg()).execute(machine));
+    }
+
+    @Test
+    public void writesOutputToMachineSink() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 3", "L1 out 1", "L2 lin 2 1", "L3 sub 1 1 2", "L4 bnz 1 L1");
+        var output = new MemoryOutputSink();
+        machine.setOutput(output);
+
+        // when
+        var printed = captureOutput(() -> engine.prepare(machine.getProg()).execute(machine));
+
+        // then
+        assertEquals("", printed);
+        assertArrayEquals(new int[]{3, 2, 1}, output.getValues());
+    }
+}
@@ -0,0 +1,46 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import sml.AppConfig;
+import sml.exceptions.EngineCreationFailedException;
+import sml.exceptions.FailedToLoadAppConfigException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EngineFactoryTest {
+    @Test
+    public void createsEnginesRegisteredInConfigFile() throws FailedToLoadAppConfigException, EngineCreationFailedException {
+        // given
+        var engineFactory = new EngineFactory(AppConfig.getInstance());
+
+        // when
+        var interpreter = engineFactory.createEngine(EngineFactory.DEFAULT_ENGINE);
+        var compiler = engineFactory.createEngine("compiled");
+        var tiered = engineFactory.createEngine("tiered");
+        var tracing = engineFactory.createEngine("tracing");
+
+        // then
+        assertTrue(interpreter instanceof InterpretingEngine);
+        assertTrue(compiler instanceof CompilingEngine);
+        assertTrue(tiered instanceof TieredEngine);
+        assertTrue(tracing instanceof TracingEngine);
+    }
+
+    @Test
+    public void throwsIfNoEngineRegisteredUnderName() {
+        // given
+        var engineFactory = new EngineFactory(engineName -> null);
+
+        // when
+        assertThrows(EngineCreationFailedException.class, () -> engineFactory.createEngine("unknown"));
+    }
+
+    @Test
+    public void throwsIfRegisteredClassIsNotAnEngine() {
+        // given
+        var engineFactory = new EngineFactory(engineName -> String.class.getName());
+
+        // when
+        assertThrows(EngineCreationFailedException.class, () -> engineFactory.createEngine("string"));
+    }
+}
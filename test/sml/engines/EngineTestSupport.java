@@ -0,0 +1,55 @@
+package sml.engines;
+
+import sml.Machine;
+import sml.Translator;
+import sml.exceptions.UnknownLabelException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Helpers for loading programs and capturing their output in engine tests.
+ */
+final class EngineTestSupport {
+    private EngineTestSupport() { }
+
+    /**
+     * Translate and link the given program lines, written to a file in the given directory.
+     */
+    static Machine load(Path directory, String... lines) throws IOException, UnknownLabelException {
+        var file = Files.createTempFile(directory, "program", ".sml");
+        Files.write(file, List.of(lines));
+        return load(file);
+    }
+
+    /**
+     * Translate and link the program in the given file.
+     */
+    static Machine load(Path file) throws UnknownLabelException {
+        var machine = new Machine();
+        assertTrue(new Translator(file.toString()).readAndTranslate(machine.getLabels(), machine.getProg()));
+        machine.link();
+        return machine;
+    }
+
+    /**
+     * Run the action and return everything it printed to System.out.
+     */
+    static String captureOutput(Runnable action) {
+        var originalOut = System.out;
+        var outContent = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outContent));
+        try {
+            action.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+        return outContent.toString();
+    }
+}
@@ -0,0 +1,252 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import sml.ExecutionLimits;
+import sml.ExecutionResult;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.OutputSink;
+import sml.Program;
+import sml.Registers;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockstepBatchTest {
+    /**
+     * Multiply register 2 by register 3 register 1 times, print register 2 whenever register 4 is not zero and
+     * divide register 3 by register 4 at the end.
+     */
+    private final Program program = Program.of(List.of(
+            new LinInstruction("f0", 5, 1),
+            new LinInstruction("f1", 2, 1),
+            new MulInstruction("f2", 2, 2, 3),
+            new BnzInstruction("f3", 4, "f5"),
+            new BnzInstruction("f4", 5, "f6"),
+            new OutInstruction("f5", 2),
+            new SubInstruction("f6", 1, 1, 5),
+            new BnzInstruction("f7", 1, "f2"),
+            new DivInstruction("f8", 6, 3, 4),
+            new AddInstruction("f9", 7, 6, 2)
+    ));
+
+    LockstepBatchTest() throws Exception {
+    }
+
+    @Test
+    public void lanesEndLikeSeparateExecutions() {
+        // given lanes which leave the loop after different numbers of iterations and branch differently in it
+        var random = new Random(42);
+        var inputs = new ArrayList<int[]>();
+        for (int l = 0; l < 200; l++) {
+            inputs.add(registers(1 + random.nextInt(30), 1 + random.nextInt(5), random.nextInt(3)));
+        }
+
+        // when
+        var results = new LockstepBatch(program, 1).execute(inputs);
+
+        // then
+        assertLanesEndLikeSeparateExecutions(inputs, results);
+    }
+
+    @Test
+    public void lanesDivergingTooMuchEndLikeSeparateExecutions() {
+        // given every lane takes a different number of iterations, so the groups soon become too small
+        var inputs = new ArrayList<int[]>();
+        for (int l = 0; l < 50; l++) {
+            inputs.add(registers(l + 1, 3, l % 2));
+        }
+
+        // when
+        var results = new LockstepBatch(program).execute(inputs);
+
+        // then
+        assertLanesEndLikeSeparateExecutions(inputs, results);
+    }
+
+    @Test
+    public void lanesExceedingStepBudgetStopLikeSeparateExecutions() {
+        // given lanes of which some run away, as their counter starts below zero
+        var random = new Random(7);
+        var inputs = new ArrayList<int[]>();
+        for (int l = 0; l < 200; l++) {
+            inputs.add(registers(random.nextInt(40) - 10, 1 + random.nextInt(5), random.nextInt(3)));
+        }
+        var limits = ExecutionLimits.NONE.withMaxSteps(120);
+        var outputs = new MemoryOutputSink[inputs.size()];
+
+        // when
+        var results = new LockstepBatch(program, 1).execute(inputs, limits, l -> outputs[l] = new MemoryOutputSink());
+
+        // then
+        assertTrue(results.stream().anyMatch(LaneResult::stopped));
+        assertTrue(results.stream().anyMatch(LaneResult::succeeded));
+        assertLanesEndLikeSeparateExecutions(inputs, results, limits, outputs);
+    }
+
+    @Test
+    public void lanesPastStepBudgetBeforeDivergingEndLikeSeparateExecutions() throws Exception {
+        // given a budget smaller than the forward code before a bnz on which the lanes diverge, so that the lanes
+        // left to the interpreter have already used more steps than the budget
+        var forward = Program.of(List.of(
+                new LinInstruction("a0", 6, 1),
+                new LinInstruction("a1", 7, 2),
+                new LinInstruction("a2", 8, 3),
+                new BnzInstruction("a3", 1, "a5"),
+                new LinInstruction("a4", 6, 4),
+                new LinInstruction("a5", 7, 5)
+        ));
+        var inputs = new ArrayList<int[]>();
+        for (int l = 0; l < 6; l++) {
+            inputs.add(registers(l < 3 ? 1 : 0, 0, 0));
+        }
+        var limits = ExecutionLimits.NONE.withMaxSteps(2);
+        var outputs = new MemoryOutputSink[inputs.size()];
+
+        // when
+        var results = new LockstepBatch(forward).execute(inputs, limits, l -> outputs[l] = new MemoryOutputSink());
+
+        // then
+        assertTrue(results.stream().allMatch(LaneResult::succeeded));
+        assertEquals(5, results.get(0).registers().getRegister(7));
+        assertEquals(4, results.get(5).registers().getRegister(6));
+        assertLanesEndLikeSeparateExecutions(forward, inputs, results, limits, outputs);
+    }
+
+    @Test
+    public void runawayLanesOnInterpreterAreStopped() {
+        // given
+        var inputs = List.of(registers(-1, 2, 0), registers(3, 2, 1));
+        var limits = ExecutionLimits.NONE.withMaxSteps(1000);
+
+        // when
+        var results = new LockstepBatch(program).execute(inputs, limits, l -> OutputSink.DISCARD);
+
+        // then
+        assertEquals(ExecutionResult.Status.STEP_LIMIT_REACHED, results.get(0).status());
+        assertEquals(2, results.get(0).pc());
+        assertTrue(results.get(1).succeeded());
+    }
+
+    @Test
+    public void resultsDoNotHoldOutputWrittenToSinks() {
+        // given
+        var inputs = List.of(registers(5, 2, 1), registers(5, 2, 1), registers(5, 2, 1), registers(5, 2, 1));
+
+        // when
+        var results = new LockstepBatch(program).execute(inputs, ExecutionLimits.NONE, l -> OutputSink.DISCARD);
+
+        // then
+        for (var result : results) {
+            assertTrue(result.succeeded());
+            assertNull(result.output());
+            assertEquals(32, result.registers().getRegister(2));
+        }
+    }
+
+    @Test
+    public void divisionByZeroFailsOnlyItsLane() {
+        // given
+        var inputs = List.of(registers(3, 2, 1), registers(3, 2, 0), registers(3, 2, 1), registers(3, 2, 1));
+
+        // when
+        var results = new LockstepBatch(program, 1).execute(inputs);
+
+        // then
+        assertTrue(results.get(0).succeeded());
+        assertTrue(results.get(1).error() instanceof ArithmeticException);
+        assertEquals(9, results.get(1).pc());
+        assertEquals(8, results.get(1).registers().getRegister(2));
+        assertTrue(results.get(2).succeeded());
+        assertEquals(10, results.get(2).pc());
+        assertEquals(2 + 8, results.get(2).registers().getRegister(7));
+    }
+
+    @Test
+    public void runsProgramWhichCannotBeLoweredOnInterpreter() throws Exception {
+        // given
+        var unknown = Program.of(List.of(new LinInstruction("f0", 1, 5) { }, new AddInstruction("f1", 2, 1, 3)));
+        var inputs = List.of(registers(0, 1, 0), registers(0, 7, 0));
+
+        // when
+        var results = new LockstepBatch(unknown).execute(inputs);
+
+        // then
+        assertEquals(6, results.get(0).registers().getRegister(2));
+        assertEquals(12, results.get(1).registers().getRegister(2));
+    }
+
+    @Test
+    public void rejectsLaneWithoutValueForEveryRegister() {
+        // given
+        var batch = new LockstepBatch(program);
+
+        // when
+        assertThrows(IllegalArgumentException.class, () -> batch.execute(List.of(new int[3])));
+    }
+
+    /**
+     * Return registers setting the number of iterations, the factor and whether to print.
+     */
+    private static int[] registers(int iterations, int factor, int print) {
+        var registers = new int[Registers.NUMBER_OF_REGISTERS];
+        registers[1] = iterations;
+        registers[3] = factor;
+        registers[4] = print;
+        return registers;
+    }
+
+    private void assertLanesEndLikeSeparateExecutions(List<int[]> inputs, List<LaneResult> results) {
+        var outputs = new MemoryOutputSink[inputs.size()];
+        for (int l = 0; l < outputs.length; l++) {
+            outputs[l] = new MemoryOutputSink();
+            for (var value : results.get(l).output()) {
+                outputs[l].write(value);
+            }
+        }
+        assertLanesEndLikeSeparateExecutions(inputs, results, ExecutionLimits.NONE, outputs);
+    }
+
+    private void assertLanesEndLikeSeparateExecutions(List<int[]> inputs, List<LaneResult> results,
+                                                      ExecutionLimits limits, MemoryOutputSink[] outputs) {
+        assertLanesEndLikeSeparateExecutions(program, inputs, results, limits, outputs);
+    }
+
+    private static void assertLanesEndLikeSeparateExecutions(Program program, List<int[]> inputs,
+                                                             List<LaneResult> results, ExecutionLimits limits,
+                                                             MemoryOutputSink[] outputs) {
+        assertEquals(inputs.size(), results.size());
+        for (int l = 0; l < inputs.size(); l++) {
+            var machine = new Machine(program);
+            var registers = new Registers();
+            registers.setRegisters(inputs.get(l));
+            machine.setRegisters(registers);
+            var output = new MemoryOutputSink();
+            machine.setOutput(output);
+            RuntimeException error = null;
+            var status = ExecutionResult.Status.COMPLETED;
+            try {
+                status = machine.resume(limits).status();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            var result = results.get(l);
+            assertEquals(machine.getRegisters(), result.registers(), "lane " + l);
+            assertEquals(machine.getPc(), result.pc(), "lane " + l);
+            assertArrayEquals(output.getValues(), outputs[l].getValues(), "lane " + l);
+            assertEquals(status, result.status(), "lane " + l);
+            assertEquals(error == null, result.error() == null, "lane " + l);
+        }
+    }
+}
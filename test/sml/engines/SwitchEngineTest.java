@@ -0,0 +1,197 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.ExecutionLimits;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.Registers;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.LinInstruction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.engines.EngineTestSupport.captureOutput;
+import static sml.engines.EngineTestSupport.load;
+
+class SwitchEngineTest {
+    private final SwitchEngine engine = new SwitchEngine();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void lowersEveryInstructionIntoOneSlot() throws UnknownLabelException {
+        // given
+        var machine = load(Path.of("sample-files/test2.sml"));
+
+        // when
+        var packed = PackedProgram.lower(machine.getProg());
+
+        // then
+        assertNotNull(packed);
+        assertEquals(7, packed.size());
+        assertArrayEquals(new int[]{PackedProgram.BNZ, 20, 3 * PackedProgram.SLOT_SIZE, 0},
+                Arrays.copyOfRange(packed.code(), 5 * PackedProgram.SLOT_SIZE, 6 * PackedProgram.SLOT_SIZE));
+    }
+
+    @Test
+    public void packedProgramProducesSameStateAsInterpreter() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{
+                "L0 lin 1 100000",
+                "L1 lin 2 -7",
+                "L2 lin 3 1",
+                "L3 add 4 4 1",
+                "L4 div 5 4 2",
+                "L5 mul 6 5 2",
+                "L6 sub 1 1 3",
+                "L7 bnz 1 L3",
+                "L8 out 6"
+        };
+        var interpreted = load(tempDir, program);
+        var packed = load(tempDir, program);
+        var expectedOutput = captureOutput(interpreted::execute);
+
+        // when
+        var output = captureOutput(() -> engine.prepare(packed.getProg()).execute(packed));
+
+        // then
+        assertEquals(interpreted.getRegisters(), packed.getRegisters());
+        assertEquals(interpreted.getPc(), packed.getPc());
+        assertEquals(expectedOutput, output);
+    }
+
+    @Test
+    public void packedProgramLeavesSameStateAsInterpreterWhenDividingByZero() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{"L0 lin 1 5", "L1 lin 2 0", "L2 div 3 1 2", "L3 lin 4 9"};
+        var interpreted = load(tempDir, program);
+        var packed = load(tempDir, program);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        var executable = engine.prepare(packed.getProg());
+
+        // when
+        assertThrows(ArithmeticException.class, () -> executable.execute(packed));
+
+        // then
+        assertEquals(interpreted.getRegisters(), packed.getRegisters());
+        assertEquals(interpreted.getPc(), packed.getPc());
+    }
+
+    @Test
+    public void packedProgramThrowsLikeInterpreterIfRegisterDoesNotExist() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 5", "L1 add 2 1 32");
+
+        // when
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> engine.prepare(machine.getProg()).execute(machine));
+
+        // then
+        assertEquals(5, machine.getRegisters().getRegister(1));
+        assertEquals(2, machine.getPc());
+    }
+
+    @Test
+    public void executesEmptyProgram() {
+        // given
+        var machine = new Machine();
+
+        // when
+        engine.prepare(machine.getProg()).execute(machine);
+
+        // then
+        assertEquals(0, machine.getPc());
+        assertEquals(new Registers(), machine.getRegisters());
+    }
+
+    @Test
+    public void doesNotLowerProgramWithUnknownInstruction() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 5");
+        var program = new ArrayList<>(machine.getProg());
+        program.add(new LinInstruction("L1", 2, 6) { });
+        machine.setProg(program);
+
+        // when
+        var packed = PackedProgram.lower(program);
+        engine.prepare(program).execute(machine);
+
+        // then
+        assertNull(packed);
+        assertEquals(5, machine.getRegisters().getRegister(1));
+        assertEquals(6, machine.getRegisters().getRegister(2));
+    }
+
+    @Test
+    public void writesOutputToMachineSink() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 3", "L1 out 1", "L2 lin 2 1", "L3 sub 1 1 2", "L4 bnz 1 L1");
+        var output = new MemoryOutputSink();
+        machine.setOutput(output);
+
+        // when
+        var printed = captureOutput(() -> engine.prepare(machine.getProg()).execute(machine));
+
+        // then
+        assertEquals("", printed);
+        assertArrayEquals(new int[]{3, 2, 1}, output.getValues());
+    }
+
+    @Test
+    public void stopsAtStepLimitInSameStateAsInterpreter() throws IOException, UnknownLabelException {
+        // given a loop with a forward jump, so that runs of instructions are cut short
+        var program = new String[]{
+                "L0 lin 1 50",
+                "L1 lin 2 1",
+                "L2 lin 3 0",
+                "L3 bnz 3 L5",
+                "L4 add 4 4 1",
+                "L5 sub 1 1 2",
+                "L6 bnz 1 L3",
+                "L7 out 4"
+        };
+        var interpreted = load(tempDir, program);
+        var packed = load(tempDir, program);
+        interpreted.setOutput(new MemoryOutputSink());
+        packed.setOutput(new MemoryOutputSink());
+        var executable = engine.prepare(packed.getProg());
+
+        for (var maxSteps = 0; maxSteps < 250; maxSteps += 7) {
+            var limits = ExecutionLimits.NONE.withMaxSteps(maxSteps);
+
+            // when
+            var expected = interpreted.execute(limits);
+            var result = executable.execute(packed, limits);
+
+            // then
+            assertEquals(expected, result, "max steps " + maxSteps);
+            assertEquals(interpreted.getPc(), packed.getPc(), "max steps " + maxSteps);
+            assertEquals(interpreted.getRegisters(), packed.getRegisters(), "max steps " + maxSteps);
+        }
+    }
+
+    @Test
+    public void resumesFromStateOfStoppedExecution() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{"L0 lin 1 1000", "L1 lin 2 1", "L2 add 3 3 1", "L3 sub 1 1 2", "L4 bnz 1 L2"};
+        var expected = load(tempDir, program);
+        expected.execute();
+        var machine = load(tempDir, program);
+        var executable = engine.prepare(machine.getProg());
+        executable.execute(machine, ExecutionLimits.NONE.withMaxSteps(500));
+
+        // when
+        var result = executable.resume(machine, ExecutionLimits.NONE);
+
+        // then
+        assertTrue(result.completed());
+        assertEquals(3 * 1000 + 2 - 500, result.steps());
+        assertEquals(expected.getRegisters(), machine.getRegisters());
+        assertEquals(expected.getPc(), machine.getPc());
+    }
+}
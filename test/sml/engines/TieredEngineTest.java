@@ -0,0 +1,139 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.MemoryOutputSink;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.LinInstruction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.engines.EngineTestSupport.captureOutput;
+import static sml.engines.EngineTestSupport.load;
+
+class TieredEngineTest {
+    // Compiles on the interpreting thread as soon as the threshold is reached, so that transfers are deterministic
+    private final TieredEngine engine = new TieredEngine(10, Runnable::run);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void transfersIntoCompiledProgramAtLoopHeader() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{
+                "L0 lin 1 1000",
+                "L1 lin 2 1",
+                "L2 lin 3 3",
+                "L3 add 4 4 3",
+                "L4 out 4",
+                "L5 sub 1 1 2",
+                "L6 bnz 1 L3"
+        };
+        var interpreted = load(tempDir, program);
+        var tiered = load(tempDir, program);
+        var interpretedOutput = new MemoryOutputSink();
+        var tieredOutput = new MemoryOutputSink();
+        interpreted.setOutput(interpretedOutput);
+        tiered.setOutput(tieredOutput);
+        interpreted.execute();
+        var executable = engine.prepare(tiered.getProg());
+
+        // when
+        executable.execute(tiered);
+
+        // then
+        assertEquals(1, executable.transfers());
+        assertArrayEquals(interpretedOutput.getValues(), tieredOutput.getValues());
+        assertEquals(interpreted.getRegisters(), tiered.getRegisters());
+        assertEquals(interpreted.getPc(), tiered.getPc());
+    }
+
+    @Test
+    public void shortProgramIsNotCompiled() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(Path.of("sample-files/test2.sml"));
+        var executable = engine.prepare(machine.getProg());
+
+        // when
+        var output = captureOutput(() -> executable.execute(machine));
+
+        // then
+        assertFalse(executable.awaitCompilation());
+        assertEquals(0, executable.transfers());
+        assertEquals("720" + System.lineSeparator(), output);
+    }
+
+    @Test
+    public void laterExecutionsStartInCompiledProgram() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 100", "L1 lin 2 1", "L2 add 3 3 1", "L3 sub 1 1 2", "L4 bnz 1 L2");
+        var executable = engine.prepare(machine.getProg());
+        executable.execute(machine);
+
+        // when
+        executable.execute(machine);
+
+        // then
+        assertTrue(executable.awaitCompilation());
+        assertEquals(1, executable.transfers());
+        assertEquals(100 * 101 / 2, machine.getRegisters().getRegister(3));
+        assertEquals(5, machine.getPc());
+    }
+
+    @Test
+    public void compiledProgramLeavesSameStateAsInterpreterWhenDividingByZero() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{"L0 lin 1 50", "L1 lin 2 1", "L2 lin 3 7", "L3 sub 1 1 2", "L4 div 4 3 1", "L5 bnz 1 L3"};
+        var interpreted = load(tempDir, program);
+        var tiered = load(tempDir, program);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        var executable = engine.prepare(tiered.getProg());
+
+        // when
+        assertThrows(ArithmeticException.class, () -> executable.execute(tiered));
+
+        // then
+        assertEquals(1, executable.transfers());
+        assertEquals(interpreted.getRegisters(), tiered.getRegisters());
+        assertEquals(interpreted.getPc(), tiered.getPc());
+    }
+
+    @Test
+    public void staysInInterpreterIfProgramCannotBeCompiled() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 100", "L1 lin 2 1", "L2 sub 1 1 2", "L3 bnz 1 L2");
+        var program = new ArrayList<>(machine.getProg());
+        program.add(new LinInstruction("L4", 5, 6) { });
+        machine.setProg(program);
+        var executable = engine.prepare(program);
+
+        // when
+        executable.execute(machine);
+
+        // then
+        assertFalse(executable.awaitCompilation());
+        assertEquals(0, executable.transfers());
+        assertEquals(6, machine.getRegisters().getRegister(5));
+        assertEquals(5, machine.getPc());
+    }
+
+    @Test
+    public void compilesHotProgramInBackground() throws IOException, UnknownLabelException {
+        // given a loop long enough for the background compilation to finish while it runs
+        var machine = load(tempDir, "L0 lin 1 50000000", "L1 lin 2 1", "L2 lin 3 3", "L3 add 4 4 3",
+                "L4 sub 1 1 2", "L5 bnz 1 L3");
+        var executable = new TieredEngine().prepare(machine.getProg());
+
+        // when
+        executable.execute(machine);
+
+        // then
+        assertTrue(executable.awaitCompilation());
+        assertEquals(3 * 50000000, machine.getRegisters().getRegister(4));
+        assertEquals(6, machine.getPc());
+    }
+}
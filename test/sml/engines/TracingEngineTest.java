@@ -0,0 +1,164 @@
+package sml.engines;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.VerifiedProgram;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static sml.engines.EngineTestSupport.load;
+
+class TracingEngineTest {
+    private final TracingEngine engine = new TracingEngine(10);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void tracedLoopProducesSameStateAndOutputAsInterpreter() throws IOException, UnknownLabelException {
+        // given a loop whose inner bnz alternates, so that the guard of the trace fails every other iteration
+        var program = new String[]{
+                "L0 lin 1 200",
+                "L1 lin 2 1",
+                "L2 lin 6 0",
+                "L3 sub 6 2 6",
+                "L4 bnz 6 L6",
+                "L5 add 7 7 1",
+                "L6 out 7",
+                "L7 sub 1 1 2",
+                "L8 bnz 1 L3"
+        };
+        var interpreted = load(tempDir, program);
+        var traced = load(tempDir, program);
+        var interpretedOutput = runInterpreter(interpreted);
+        var executable = engine.prepare(traced.getProg());
+        var tracedOutput = new MemoryOutputSink();
+        traced.setOutput(tracedOutput);
+
+        // when
+        executable.execute(traced);
+
+        // then
+        assertNotNull(executable.getTrace(3));
+        assertArrayEquals(interpretedOutput.getValues(), tracedOutput.getValues());
+        assertEquals(interpreted.getRegisters(), traced.getRegisters());
+        assertEquals(interpreted.getPc(), traced.getPc());
+    }
+
+    @Test
+    public void traceLeavesSameStateAsInterpreterWhenDividingByZero() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{"L0 lin 1 50", "L1 lin 2 1", "L2 lin 3 7", "L3 sub 1 1 2", "L4 div 4 3 1", "L5 bnz 2 L3"};
+        var interpreted = load(tempDir, program);
+        var traced = load(tempDir, program);
+        assertThrows(ArithmeticException.class, interpreted::execute);
+        var executable = engine.prepare(traced.getProg());
+
+        // when
+        assertThrows(ArithmeticException.class, () -> executable.execute(traced));
+
+        // then
+        assertNotNull(executable.getTrace(3));
+        assertEquals(interpreted.getRegisters(), traced.getRegisters());
+        assertEquals(interpreted.getPc(), traced.getPc());
+    }
+
+    @Test
+    public void traceOfVerifiedProgramProducesSameStateAsInterpreter() throws Exception {
+        // given
+        var program = new String[]{"L0 lin 1 100", "L1 lin 2 3", "L2 lin 3 1", "L3 div 4 1 2", "L4 add 5 5 4",
+                "L5 sub 1 1 3", "L6 bnz 1 L3"};
+        var interpreted = load(tempDir, program);
+        var traced = load(tempDir, program);
+        interpreted.execute();
+        var verified = VerifiedProgram.verify(traced.getProg());
+        var executable = engine.prepare(verified);
+
+        // when
+        executable.execute(traced);
+
+        // then
+        assertTrue(verified.hasNonZeroDivisor(3));
+        assertNotNull(executable.getTrace(3));
+        assertEquals(interpreted.getRegisters(), traced.getRegisters());
+        assertEquals(interpreted.getPc(), traced.getPc());
+    }
+
+    @Test
+    public void tracesInnerLoopButNotOuterLoop() throws IOException, UnknownLabelException {
+        // given
+        var program = new String[]{
+                "L0 lin 1 30",
+                "L1 lin 2 1",
+                "L2 lin 3 40",
+                "L3 add 4 4 3",
+                "L4 sub 3 3 2",
+                "L5 bnz 3 L3",
+                "L6 sub 1 1 2",
+                "L7 bnz 1 L2"
+        };
+        var interpreted = load(tempDir, program);
+        var traced = load(tempDir, program);
+        interpreted.execute();
+        var executable = engine.prepare(traced.getProg());
+
+        // when
+        executable.execute(traced);
+
+        // then
+        assertNotNull(executable.getTrace(3));
+        assertNull(executable.getTrace(2));
+        assertEquals(30 * (40 * 41 / 2), traced.getRegisters().getRegister(4));
+        assertEquals(interpreted.getRegisters(), traced.getRegisters());
+        assertEquals(interpreted.getPc(), traced.getPc());
+    }
+
+    @Test
+    public void doesNotTraceLoopWithUnknownInstruction() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 100", "L1 lin 2 1", "L2 add 3 3 1", "L3 sub 1 1 2", "L4 bnz 1 L2");
+        var program = new ArrayList<>(machine.getProg());
+        program.set(2, new AddInstruction("L2", 3, 3, 1) { });
+        machine.setProg(program);
+        var executable = engine.prepare(program);
+
+        // when
+        executable.execute(machine);
+
+        // then
+        assertNull(executable.getTrace(2));
+        assertEquals(100 * 101 / 2, machine.getRegisters().getRegister(3));
+        assertEquals(5, machine.getPc());
+    }
+
+    @Test
+    public void tracesAreKeptAcrossExecutions() throws IOException, UnknownLabelException {
+        // given
+        var machine = load(tempDir, "L0 lin 1 100", "L1 lin 2 1", "L2 add 3 3 1", "L3 sub 1 1 2", "L4 bnz 1 L2");
+        var executable = engine.prepare(machine.getProg());
+        executable.execute(machine);
+        var trace = executable.getTrace(2);
+
+        // when
+        executable.execute(machine);
+
+        // then
+        assertNotNull(trace);
+        assertSame(trace, executable.getTrace(2));
+        assertEquals(100 * 101 / 2, machine.getRegisters().getRegister(3));
+    }
+
+    private static MemoryOutputSink runInterpreter(Machine machine) {
+        var output = new MemoryOutputSink();
+        machine.setOutput(output);
+        machine.execute();
+        return output;
+    }
+}
@@ -376,4 +376,68 @@ class InstructionFactoryTest {
             instructionFactory.createInstruction(line);
         });
     }
+
+    @Test
+    public void parsesManyInstructionsWithSameOpCodeCorrectly() throws InstructionParseFailedException {
+        // given
+        var opCode = "add";
+        testMapper.setProperty(opCode, AddInstruction.class.getName());
+
+        // when
+        var first = (AddInstruction) instructionFactory.createInstruction(Line.of("L0 add 1 2 3"));
+        var second = (AddInstruction) instructionFactory.createInstruction(Line.of("L1 add 4 5 6"));
+
+        // then
+        assertEquals("L0", first.getLabel());
+        assertEquals(1, first.getResultRegister());
+        assertEquals(3, first.getRegister2());
+        assertEquals("L1", second.getLabel());
+        assertEquals(4, second.getResultRegister());
+        assertEquals(6, second.getRegister2());
+    }
+
+    @Test
+    public void looksUpClassNameOncePerOpCode() throws InstructionParseFailedException {
+        // given
+        var lookups = new int[1];
+        var factory = new InstructionFactory(opCode -> {
+            lookups[0]++;
+            return LinInstruction.class.getName();
+        });
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            factory.createInstruction(Line.of("L" + i + " lin 1 " + i));
+        }
+
+        // then
+        assertEquals(1, lookups[0]);
+    }
+
+    @Test
+    public void throwsInstructionParseFailedExceptionOnEveryLineIfConstructorFails() {
+        // given
+        var opCode = "test";
+        testMapper.setProperty(opCode, InstructionWithBrokenConstructor.class.getName());
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            // then
+            assertThrows(InstructionParseFailedException.class,
+                    () -> instructionFactory.createInstruction(Line.of(String.format("L0 %s 123", opCode))));
+        }
+    }
+
+    @Test
+    public void throwsInstructionParseFailedExceptionIfClassIsNotAnInstruction() {
+        assertThrows(InstructionParseFailedException.class, () -> {
+            // given
+            var opCode = "test";
+            testMapper.setProperty(opCode, String.class.getName());
+            var line = Line.of(String.format("L0 %s abc", opCode));
+
+            // when
+            instructionFactory.createInstruction(line);
+        });
+    }
 }
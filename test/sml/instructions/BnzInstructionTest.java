@@ -104,6 +104,21 @@ class BnzInstructionTest {
     assertEquals(2, m.getPc());
   }
 
+  @Test
+  public void executeJumpsToGivenIndexIfAlreadyLinked() {
+    // given
+    regs.setRegister(1,1);
+    var jumpInstruction = new BnzInstruction("L1", 1, "L3", 2);
+    m.setProg(new ArrayList<>(Arrays.asList(jumpInstruction)));
+
+    // when
+    jumpInstruction.execute(m);
+
+    // then
+    assertEquals(2, jumpInstruction.getJumpToIndex());
+    assertEquals(2, m.getPc());
+  }
+
   @Test
   public void executeThrowsIfRegisterDoesNotExist() {
     assertThrows(ArrayIndexOutOfBoundsException.class, () -> {
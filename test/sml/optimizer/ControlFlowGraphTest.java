@@ -0,0 +1,52 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.Instruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlFlowGraphTest {
+    private final List<Instruction> program = List.of(
+            new LinInstruction("f0", 20, 6),
+            new LinInstruction("f1", 21, 1),
+            new MulInstruction("f3", 21, 21, 20),
+            new SubInstruction("f4", 20, 20, 21),
+            new BnzInstruction("f5", 20, "f3"),
+            new OutInstruction("f6", 21)
+    );
+
+    @Test
+    public void splitsProgramIntoBlocksAtJumpTargetsAndAfterJumps() {
+        // when
+        var cfg = ControlFlowGraph.of(program);
+
+        // then
+        assertEquals(List.of(
+                new ControlFlowGraph.BasicBlock(0, 2, List.of(1), false),
+                new ControlFlowGraph.BasicBlock(2, 5, List.of(1, 2), false),
+                new ControlFlowGraph.BasicBlock(5, 6, List.of(), true)
+        ), cfg.getBlocks());
+        assertEquals(1, cfg.blockOf(3));
+        assertTrue(cfg.isJumpTarget(2));
+        assertFalse(cfg.isJumpTarget(5));
+    }
+
+    @Test
+    public void ofThrowsIfJumpTargetDoesNotExist() {
+        // given
+        var jumpToNowhere = List.<Instruction>of(new BnzInstruction("L0", 1, "nowhere"));
+
+        // when
+        var exception = assertThrows(IllegalArgumentException.class, () -> ControlFlowGraph.of(jumpToNowhere));
+
+        // then
+        assertTrue(exception.getMessage().contains("'nowhere'"));
+    }
+}
@@ -0,0 +1,277 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.ExecutionLimits;
+import sml.ExecutionResult;
+import sml.Instruction;
+import sml.Machine;
+import sml.Program;
+import sml.Registers;
+import sml.engines.CompilingEngine;
+import sml.engines.LockstepBatch;
+import sml.engines.PackedProgram;
+import sml.engines.SwitchEngine;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountedLoopsTest {
+
+    @Test
+    public void replacesCountedLoopByOneInstruction() {
+        // given
+        var program = summingLoop(1000);
+
+        // when
+        var replaced = CountedLoops.replace(program);
+
+        // then
+        assertEquals(5, replaced.size());
+        assertTrue(replaced.get(3) instanceof CountedLoopInstruction);
+        assertEquals("b0", replaced.get(3).getLabel());
+        assertEquals(1, ((CountedLoopInstruction) replaced.get(3)).getCounterRegister());
+        assertEquals(2, ((CountedLoopInstruction) replaced.get(3)).getDecrementRegister());
+    }
+
+    @Test
+    public void evaluatesBillionIterationsInClosedForm() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var iterations = 1_000_000_000L;
+        var program = Program.of(CountedLoops.replace(summingLoop((int) iterations)));
+        var machine = new Machine(program);
+
+        // when
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> machine.execute());
+
+        // then register 3 holds 1 + 2 + ... + iterations and register 4 three times the iterations, both wrapped
+        assertEquals(0, machine.getRegisters().getRegister(1));
+        assertEquals((int) (iterations * (iterations + 1) / 2), machine.getRegisters().getRegister(3));
+        assertEquals((int) (3 * iterations), machine.getRegisters().getRegister(4));
+    }
+
+    @Test
+    public void leavesLoopsWhichAreNotAffineOrPrintAsTheyAre() {
+        // given the loop of sample-files/test2.sml multiplies two registers it changes, and a loop which prints
+        var factorial = List.<Instruction>of(
+                new LinInstruction("f0", 20, 6),
+                new LinInstruction("f1", 21, 1),
+                new LinInstruction("f2", 22, 1),
+                new MulInstruction("f3", 21, 21, 20),
+                new SubInstruction("f4", 20, 20, 22),
+                new BnzInstruction("f5", 20, "f3")
+        );
+        var printing = List.<Instruction>of(
+                new LinInstruction("p0", 1, 100),
+                new LinInstruction("p1", 2, 1),
+                new OutInstruction("p2", 1),
+                new SubInstruction("p3", 1, 1, 2),
+                new BnzInstruction("p4", 1, "p2")
+        );
+
+        // when
+        var replacedFactorial = CountedLoops.replace(factorial);
+        var replacedPrinting = CountedLoops.replace(printing);
+
+        // then
+        assertFalse(replacedFactorial.stream().anyMatch(ins -> ins instanceof CountedLoopInstruction));
+        assertFalse(replacedPrinting.stream().anyMatch(ins -> ins instanceof CountedLoopInstruction));
+    }
+
+    @Test
+    public void leavesLoopWhoseDecrementChangesAsItIs() {
+        // given register 2 is the decrement, and the body doubles it
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 64),
+                new LinInstruction("L1", 2, 1),
+                new SubInstruction("L2", 1, 1, 2),
+                new AddInstruction("L3", 2, 2, 2),
+                new BnzInstruction("L4", 1, "L2")
+        );
+
+        // when
+        var replaced = CountedLoops.replace(program);
+
+        // then
+        assertFalse(replaced.stream().anyMatch(ins -> ins instanceof CountedLoopInstruction));
+    }
+
+    @Test
+    public void linkingProgramWithUnknownInstructionsLeavesGivenProgramIntact()
+            throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var custom = new Instruction("L0", "custom") {
+            @Override
+            public void execute(Machine m) { }
+        };
+        var bnz = new BnzInstruction("L2", 1, "L1");
+        var program = List.of(custom, new SubInstruction("L1", 1, 1, 2), bnz);
+        Program.of(program);
+
+        // when
+        var replaced = new ArrayList<>(CountedLoops.replace(program));
+        replaced.add(0, new LinInstruction("L", 2, 1));
+        Program.of(replaced);
+
+        // then
+        assertEquals(1, bnz.getJumpToIndex());
+        assertEquals(2, ((BnzInstruction) replaced.get(3)).getJumpToIndex());
+    }
+
+    @Test
+    public void countedLoopsComputeSameRegistersAsInterpreter() throws UnknownLabelException, DuplicateLabelException {
+        var random = new Random(17);
+        for (int n = 0; n < 200; n++) {
+            // given both short loops, which run their body, and long ones, which are evaluated in closed form
+            var program = randomLoop(random);
+            var expected = new Machine(Program.of(program));
+            expected.execute();
+            var replaced = CountedLoops.replace(program);
+            var machine = new Machine(Program.of(replaced));
+
+            // when
+            machine.execute();
+
+            // then
+            assertTrue(replaced.stream().anyMatch(ins -> ins instanceof CountedLoopInstruction), "program " + n);
+            assertEquals(expected.getRegisters(), machine.getRegisters(), "program " + n);
+        }
+    }
+
+    @Test
+    public void countedLoopsRunOnTheOtherEnginesLikeInterpreter() throws Exception {
+        var random = new Random(23);
+        for (int n = 0; n < 50; n++) {
+            // given
+            var program = randomLoop(random);
+            var expected = new Machine(Program.of(program));
+            expected.execute();
+            var replaced = Program.of(CountedLoops.replace(program));
+            var switched = new Machine(replaced);
+            var compiled = new Machine(replaced);
+
+            // when
+            new SwitchEngine().prepare(replaced.getInstructions()).execute(switched);
+            new CompilingEngine().prepare(replaced.getInstructions()).execute(compiled);
+            var lockstep = new LockstepBatch(replaced).execute(List.of(new int[Registers.NUMBER_OF_REGISTERS]));
+
+            // then
+            assertNotNull(PackedProgram.lower(replaced.getInstructions()), "program " + n);
+            assertNotNull(new CompilingEngine().compile(replaced.getInstructions()), "program " + n);
+            assertEquals(expected.getRegisters(), switched.getRegisters(), "program " + n);
+            assertEquals(expected.getRegisters(), compiled.getRegisters(), "program " + n);
+            assertEquals(expected.getRegisters(), lockstep.get(0).registers(), "program " + n);
+        }
+    }
+
+    @Test
+    public void countedLoopOnSwitchEngineStopsLikeInterpreter() throws Exception {
+        // given the counter is decremented by 0, so the loop is run iteration by iteration
+        var program = Program.of(CountedLoops.replace(List.of(
+                new LinInstruction("a0", 1, 100),
+                new AddInstruction("b0", 3, 3, 1),
+                new SubInstruction("b1", 1, 1, 2),
+                new BnzInstruction("b2", 1, "b0")
+        )));
+        var machine = new Machine(program);
+
+        // when
+        var result = new SwitchEngine().prepare(program.getInstructions())
+                .execute(machine, ExecutionLimits.NONE.withMaxSteps(1000));
+
+        // then
+        assertEquals(ExecutionResult.Status.STEP_LIMIT_REACHED, result.status());
+        assertEquals(1000, result.steps());
+        assertEquals(1, machine.getPc());
+        assertEquals(100 * 999, machine.getRegisters().getRegister(3));
+    }
+
+    @Test
+    public void countedLoopWhichNeverEndsCanBeStopped() throws UnknownLabelException, DuplicateLabelException {
+        // given the counter is decremented by 0, so the loop is run iteration by iteration
+        var program = List.<Instruction>of(
+                new LinInstruction("a0", 1, 100),
+                new AddInstruction("b0", 3, 3, 1),
+                new SubInstruction("b1", 1, 1, 2),
+                new BnzInstruction("b2", 1, "b0")
+        );
+        var machine = new Machine(Program.of(CountedLoops.replace(program)));
+
+        // when
+        var result = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> {
+                    return machine.execute(ExecutionLimits.NONE.withMaxSteps(1000));
+                });
+
+        // then
+        assertEquals(ExecutionResult.Status.STEP_LIMIT_REACHED, result.status());
+        assertEquals(1, machine.getPc());
+        assertEquals(100 * 999, machine.getRegisters().getRegister(3));
+    }
+
+    /**
+     * Return a loop adding the counter to register 3 and 3 to register 4 in each iteration.
+     */
+    private static List<Instruction> summingLoop(int iterations) {
+        return List.of(
+                new LinInstruction("a0", 1, iterations),
+                new LinInstruction("a1", 2, 1),
+                new LinInstruction("a2", 5, 3),
+                new AddInstruction("b0", 3, 3, 1),
+                new AddInstruction("b1", 4, 4, 5),
+                new SubInstruction("b2", 1, 1, 2),
+                new BnzInstruction("b3", 1, "b0"),
+                new OutInstruction("c0", 3)
+        );
+    }
+
+    /**
+     * Return a counted loop with a random affine body over registers 3 to 7, counting register 1 down by register 2.
+     */
+    private static List<Instruction> randomLoop(Random random) {
+        var decrement = 1 + random.nextInt(3);
+        var iterations = random.nextBoolean() ? 1 + random.nextInt(CountedLoopInstruction.CLOSED_FORM_THRESHOLD)
+                : random.nextInt(100_000);
+        var program = new ArrayList<Instruction>();
+        program.add(new LinInstruction("a0", 1, (iterations + 1) * decrement));
+        program.add(new LinInstruction("a1", 2, decrement));
+        program.add(new LinInstruction("a2", 8, random.nextInt(5) - 2));
+        for (int r = 3; r <= 7; r++) {
+            program.add(new LinInstruction("i" + r, r, random.nextInt(21) - 10));
+        }
+        var size = 1 + random.nextInt(6);
+        var decrementAt = random.nextInt(size + 1);
+        for (int i = 0; i < size; i++) {
+            if (i == decrementAt) {
+                program.add(new SubInstruction("decrement", 1, 1, 2));
+            }
+            var label = "b" + i;
+            var r = 3 + random.nextInt(5);
+            var s1 = 1 + random.nextInt(7);
+            var s2 = 1 + random.nextInt(7);
+            program.add(switch (random.nextInt(4)) {
+                case 0 -> new LinInstruction(label, r, random.nextInt(5));
+                case 1 -> new AddInstruction(label, r, s1, s2);
+                case 2 -> new SubInstruction(label, r, s1, s2);
+                // multiply by the constant register 8 so that the body stays affine
+                default -> new MulInstruction(label, r, s1, 8);
+            });
+        }
+        if (decrementAt == size) {
+            program.add(new SubInstruction("decrement", 1, 1, 2));
+        }
+        program.add(new BnzInstruction("loop", 1, program.get(8).getLabel()));
+        return program;
+    }
+}
@@ -0,0 +1,248 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.Instruction;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.Program;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.DivInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataflowOptimizerTest {
+
+    @Test
+    public void foldsArithmeticOnConstantsIntoLin() {
+        // given
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 6),
+                new LinInstruction("L1", 2, 7),
+                new MulInstruction("L2", 3, 1, 2),
+                new OutInstruction("L3", 3)
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(4, optimized.size());
+        assertTrue(optimized.get(2) instanceof LinInstruction);
+        assertEquals(42, ((LinInstruction) optimized.get(2)).getValue());
+        assertEquals("L2", optimized.get(2).getLabel());
+    }
+
+    @Test
+    public void removesStoresOverwrittenBeforeBeingRead() {
+        // given
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 6),
+                new LinInstruction("L1", 1, 7),
+                new OutInstruction("L2", 1)
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(List.of("L1", "L2"), labelsOf(optimized));
+    }
+
+    @Test
+    public void removesLinStoringValueRegisterAlreadyHolds() {
+        // given registers start at 0
+        var program = List.<Instruction>of(new LinInstruction("L0", 1, 0), new OutInstruction("L1", 1));
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(List.of("L1"), labelsOf(optimized));
+    }
+
+    @Test
+    public void keepsStoresReadAroundLoop() {
+        // given registers changed by the loop are not constant inside it
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 5),
+                new LinInstruction("L1", 2, 1),
+                new AddInstruction("L2", 3, 3, 1),
+                new SubInstruction("L3", 1, 1, 2),
+                new BnzInstruction("L4", 1, "L2")
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(labelsOf(program), labelsOf(optimized));
+        assertTrue(optimized.get(2) instanceof AddInstruction);
+    }
+
+    @Test
+    public void keepsJumpTargets() {
+        // given L1 is overwritten before being read, but it is jumped to
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 2),
+                new LinInstruction("L1", 2, 9),
+                new LinInstruction("L2", 2, 1),
+                new SubInstruction("L3", 1, 1, 2),
+                new BnzInstruction("L4", 1, "L1")
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertTrue(labelsOf(optimized).contains("L1"));
+    }
+
+    @Test
+    public void doesNotFoldOrRemoveDivisionByZero() {
+        // given
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 5),
+                new DivInstruction("L1", 2, 1, 3),
+                new LinInstruction("L2", 2, 1)
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(labelsOf(program), labelsOf(optimized));
+        assertTrue(optimized.get(1) instanceof DivInstruction);
+    }
+
+    @Test
+    public void removesBranchOnRegisterKnownToBeZero() {
+        // given
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 3),
+                new SubInstruction("L1", 1, 1, 1),
+                new BnzInstruction("L2", 1, "L0"),
+                new OutInstruction("L3", 1)
+        );
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then without the jump, register 1 is known to end as 0, the value it starts with
+        assertEquals(List.of("L3"), labelsOf(optimized));
+    }
+
+    @Test
+    public void leavesProgramWithUnknownInstructionsUnchanged() {
+        // given
+        var custom = new Instruction("L1", "custom") {
+            @Override
+            public void execute(Machine m) { }
+        };
+        var program = List.of(new LinInstruction("L0", 1, 3), custom, new LinInstruction("L2", 1, 4));
+
+        // when
+        var optimized = DataflowOptimizer.optimize(program);
+
+        // then
+        assertEquals(program, optimized);
+    }
+
+    @Test
+    public void linkingProgramWithUnknownInstructionsLeavesGivenProgramIntact()
+            throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var custom = new Instruction("L1", "custom") {
+            @Override
+            public void execute(Machine m) { }
+        };
+        var bnz = new BnzInstruction("L2", 1, "L0");
+        var program = List.of(new LinInstruction("L0", 1, 3), custom, bnz);
+        Program.of(program);
+
+        // when
+        var optimized = new ArrayList<>(DataflowOptimizer.optimize(program));
+        optimized.add(0, new LinInstruction("L", 2, 1));
+        Program.of(optimized);
+
+        // then
+        assertEquals(0, bnz.getJumpToIndex());
+        assertEquals(1, ((BnzInstruction) optimized.get(3)).getJumpToIndex());
+    }
+
+    @Test
+    public void optimizedProgramsComputeSameRegistersAndOutput() throws UnknownLabelException, DuplicateLabelException {
+        var random = new Random(16);
+        for (int n = 0; n < 200; n++) {
+            // given
+            var program = randomProgram(random);
+            var expected = run(program);
+
+            // when
+            var optimized = run(DataflowOptimizer.optimize(program));
+
+            // then
+            assertEquals(expected.getRegisters(), optimized.getRegisters(), "program " + n);
+            assertArrayEquals(((MemoryOutputSink) expected.getOutput()).getValues(),
+                    ((MemoryOutputSink) optimized.getOutput()).getValues(), "program " + n);
+        }
+    }
+
+    /**
+     * Return a program of straight-line code around a loop counting down from a small constant.
+     */
+    private static List<Instruction> randomProgram(Random random) {
+        var program = new ArrayList<Instruction>();
+        randomCode(random, program, "a");
+        program.add(new LinInstruction("counter", 0, 1 + random.nextInt(5)));
+        program.add(new LinInstruction("one", 1, 1));
+        var loopStart = program.size();
+        randomCode(random, program, "b");
+        program.add(new SubInstruction("decrement", 0, 0, 1));
+        program.add(new BnzInstruction("loop", 0, program.get(loopStart).getLabel()));
+        randomCode(random, program, "c");
+        return program;
+    }
+
+    /**
+     * Append random instructions on registers 2 to 5 labelled with the given prefix.
+     */
+    private static void randomCode(Random random, List<Instruction> program, String prefix) {
+        var size = random.nextInt(6);
+        for (int i = 0; i < size; i++) {
+            var label = prefix + i;
+            var r = 2 + random.nextInt(4);
+            var s1 = 2 + random.nextInt(4);
+            var s2 = 2 + random.nextInt(4);
+            program.add(switch (random.nextInt(6)) {
+                case 0 -> new LinInstruction(label, r, random.nextInt(7) - 3);
+                case 1 -> new AddInstruction(label, r, s1, s2);
+                case 2 -> new SubInstruction(label, r, s1, s2);
+                case 3 -> new MulInstruction(label, r, s1, s2);
+                case 4 -> new LinInstruction(label, r, 1 + random.nextInt(3));
+                default -> new OutInstruction(label, s1);
+            });
+        }
+    }
+
+    private static Machine run(List<Instruction> instructions) throws UnknownLabelException, DuplicateLabelException {
+        var machine = new Machine(Program.of(instructions));
+        machine.setOutput(new MemoryOutputSink());
+        machine.execute();
+        return machine;
+    }
+
+    private static List<String> labelsOf(List<Instruction> program) {
+        return program.stream().map(Instruction::getLabel).toList();
+    }
+}
@@ -0,0 +1,35 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.Instruction;
+import sml.Program;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizerTest {
+
+    @Test
+    public void linkingProgramOptimizedWithoutPassesLeavesGivenProgramIntact()
+            throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var bnz = new BnzInstruction("L1", 1, "L0");
+        var program = List.<Instruction>of(new LinInstruction("L0", 1, 3), bnz);
+        Program.of(program);
+
+        // when
+        var optimized = new ArrayList<>(new Optimizer().optimize(program));
+        optimized.add(0, new LinInstruction("L", 2, 1));
+        Program.of(optimized);
+
+        // then
+        assertEquals(0, bnz.getJumpToIndex());
+        assertEquals(1, ((BnzInstruction) optimized.get(2)).getJumpToIndex());
+    }
+}
@@ -0,0 +1,150 @@
+package sml.optimizer;
+
+import org.junit.jupiter.api.Test;
+import sml.Instruction;
+import sml.Machine;
+import sml.Program;
+import sml.Translator;
+import sml.engines.CompilingEngine;
+import sml.engines.PackedProgram;
+import sml.engines.SwitchEngine;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.SubInstruction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuperinstructionFusionTest {
+
+    @Test
+    public void fusesLinPairsAndDecrementAndBranch() throws UnknownLabelException {
+        // given
+        var program = load("sample-files/test2.sml");
+
+        // when
+        var fused = SuperinstructionFusion.fuse(program);
+
+        // then
+        assertEquals(5, fused.size());
+        assertTrue(fused.get(0) instanceof FusedInstruction);
+        assertTrue(fused.get(1) instanceof LinInstruction);
+        assertTrue(fused.get(3) instanceof FusedInstruction);
+        assertEquals("sub+bnz", fused.get(3).getOpcode());
+        assertEquals("f4", fused.get(3).getLabel());
+    }
+
+    @Test
+    public void doesNotFuseInstructionWhichIsJumpedTo() {
+        // given
+        var program = List.<Instruction>of(
+                new LinInstruction("L0", 1, 3),
+                new SubInstruction("L1", 1, 1, 2),
+                new BnzInstruction("L2", 1, "L2")
+        );
+
+        // when
+        var fused = SuperinstructionFusion.fuse(program);
+
+        // then
+        assertEquals(3, fused.size());
+        assertFalse(fused.stream().anyMatch(ins -> ins instanceof FusedInstruction));
+    }
+
+    @Test
+    public void fusedProgramProducesSameRegistersAsOriginal() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var original = Program.of(load("sample-files/test2.sml"));
+        var fused = Program.of(SuperinstructionFusion.fuse(original.getInstructions()));
+        var expected = new Machine(original);
+        expected.execute();
+        var machine = new Machine(fused);
+
+        // when
+        machine.execute();
+
+        // then
+        assertEquals(expected.getRegisters(), machine.getRegisters());
+    }
+
+    @Test
+    public void linkingFusedProgramLeavesOriginalIntact() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var program = load("sample-files/test2.sml");
+        var jump = (BnzInstruction) program.get(5);
+
+        // when
+        Program.of(SuperinstructionFusion.fuse(program));
+
+        // then
+        assertEquals(3, jump.getJumpToIndex());
+    }
+
+    @Test
+    public void linkingProgramFusedTwiceLeavesOnceFusedProgramIntact()
+            throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var program = SuperinstructionFusion.fuse(List.of(
+                new LinInstruction("L0", 1, 3),
+                new SubInstruction("L1", 1, 1, 2),
+                new BnzInstruction("L2", 1, "L1")));
+        Program.of(program);
+        var jump = (BnzInstruction) ((FusedInstruction) program.get(1)).getSecond();
+
+        // when
+        var fused = new ArrayList<>(SuperinstructionFusion.fuse(program));
+        fused.add(0, new LinInstruction("L", 2, 1));
+        Program.of(fused);
+
+        // then
+        assertEquals(1, jump.getJumpToIndex());
+        assertEquals(2, ((BnzInstruction) ((FusedInstruction) fused.get(2)).getSecond()).getJumpToIndex());
+    }
+
+    @Test
+    public void leavesProgramWithUnknownInstructionsUnchanged() {
+        // given
+        var custom = new Instruction("L2", "custom") {
+            @Override
+            public void execute(Machine m) { }
+        };
+        var program = List.of(new LinInstruction("L0", 1, 3), new LinInstruction("L1", 2, 4), custom);
+
+        // when
+        var fused = SuperinstructionFusion.fuse(program);
+
+        // then
+        assertEquals(program, fused);
+    }
+
+    @Test
+    public void enginesRunFusedProgramNatively() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var original = Program.of(load("sample-files/test2.sml"));
+        var fused = Program.of(SuperinstructionFusion.fuse(original.getInstructions()));
+        var expected = new Machine(original);
+        expected.execute();
+        var switched = new Machine(fused);
+        var compiled = new Machine(fused);
+
+        // when
+        new SwitchEngine().prepare(fused.getInstructions()).execute(switched);
+        new CompilingEngine().prepare(fused.getInstructions()).execute(compiled);
+
+        // then
+        assertNotNull(PackedProgram.lower(fused.getInstructions()));
+        assertEquals(expected.getRegisters(), switched.getRegisters());
+        assertEquals(expected.getRegisters(), compiled.getRegisters());
+    }
+
+    private static List<Instruction> load(String fileName) throws UnknownLabelException {
+        var machine = new Machine();
+        assertTrue(new Translator(fileName).readAndTranslate(machine.getLabels(), machine.getProg()));
+        machine.link();
+        return new ArrayList<>(machine.getProg());
+    }
+}
@@ -0,0 +1,158 @@
+package sml.profiler;
+
+import org.junit.jupiter.api.Test;
+import sml.Instruction;
+import sml.Machine;
+import sml.MemoryOutputSink;
+import sml.Program;
+import sml.exceptions.DuplicateLabelException;
+import sml.exceptions.UnknownLabelException;
+import sml.instructions.AddInstruction;
+import sml.instructions.BnzInstruction;
+import sml.instructions.LinInstruction;
+import sml.instructions.MulInstruction;
+import sml.instructions.OutInstruction;
+import sml.instructions.SubInstruction;
+import sml.optimizer.CountedLoopInstruction;
+import sml.optimizer.FusedInstruction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfilerTest {
+    // sample-files/test2.sml
+    private final List<Instruction> program = List.of(
+            new LinInstruction("f0", 20, 6),
+            new LinInstruction("f1", 21, 1),
+            new LinInstruction("f2", 22, 1),
+            new MulInstruction("f3", 21, 21, 20),
+            new SubInstruction("f4", 20, 20, 22),
+            new BnzInstruction("f5", 20, "f3"),
+            new OutInstruction("f6", 21)
+    );
+
+    @Test
+    public void countsInstructionsAndBranches() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var machine = new Machine(Program.of(program));
+        machine.setOutput(new MemoryOutputSink());
+
+        // when
+        var profile = Profiler.execute(machine);
+
+        // then
+        assertEquals(1, profile.getCount(0));
+        assertEquals(6, profile.getCount(3));
+        assertEquals(5, profile.getTaken(5));
+        assertEquals(1, profile.getNotTaken(5));
+        assertEquals(0, profile.getTaken(4));
+        assertTrue(profile.getNanos(3) > 0);
+        assertTrue(profile.getTotalNanos() >= profile.getNanos(3));
+    }
+
+    @Test
+    public void runsProgramLikeMachineExecute() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var expected = new Machine(Program.of(program));
+        var expectedOutput = new MemoryOutputSink();
+        expected.setOutput(expectedOutput);
+        expected.execute();
+        var machine = new Machine(Program.of(program));
+        var output = new MemoryOutputSink();
+        machine.setOutput(output);
+
+        // when
+        Profiler.execute(machine);
+
+        // then
+        assertEquals(expected.getRegisters(), machine.getRegisters());
+        assertEquals(expected.getPc(), machine.getPc());
+        assertArrayEquals(expectedOutput.getValues(), output.getValues());
+    }
+
+    @Test
+    public void reportsLoopsClosedByBackwardJumps() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var machine = new Machine(Program.of(program));
+        machine.setOutput(new MemoryOutputSink());
+
+        // when
+        var loops = Profiler.execute(machine).getHotLoops();
+
+        // then
+        assertEquals(1, loops.size());
+        assertEquals("f3", loops.get(0).startLabel());
+        assertEquals("f5", loops.get(0).endLabel());
+        assertEquals(5, loops.get(0).iterations());
+        assertEquals(18, loops.get(0).instructions());
+    }
+
+    @Test
+    public void reportsProfileAsTextAndJson() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var machine = new Machine(Program.of(program));
+        machine.setOutput(new MemoryOutputSink());
+        var profile = Profiler.execute(machine);
+
+        // when
+        var text = profile.toText();
+        var json = profile.toJson();
+
+        // then
+        assertTrue(text.contains("f3..f5: 5 iterations"));
+        assertTrue(json.startsWith("{\"totalNanos\":"));
+        assertTrue(json.contains("{\"index\":5,\"label\":\"f5\",\"opcode\":\"bnz\",\"count\":6,\"nanos\":"));
+        assertTrue(json.contains("\"taken\":5,\"notTaken\":1}"));
+        assertTrue(json.contains("\"hotLoops\":[{\"startLabel\":\"f3\",\"endLabel\":\"f5\",\"iterations\":5,"));
+    }
+
+    @Test
+    public void countsFusedBranchesAndTheirLoops() throws UnknownLabelException, DuplicateLabelException {
+        // given
+        var fused = List.of(
+                program.get(0), program.get(1), program.get(2), program.get(3),
+                new FusedInstruction(program.get(4), program.get(5)),
+                program.get(6)
+        );
+        var machine = new Machine(Program.of(fused));
+        machine.setOutput(new MemoryOutputSink());
+
+        // when
+        var profile = Profiler.execute(machine);
+
+        // then
+        assertEquals(5, profile.getTaken(4));
+        assertEquals(1, profile.getNotTaken(4));
+        assertTrue(profile.toText().contains("f3..f4: 5 iterations"));
+        assertTrue(profile.toJson().contains("\"opcode\":\"sub+bnz\",\"count\":6,"));
+        assertTrue(profile.toJson().contains("\"taken\":5,\"notTaken\":1}"));
+    }
+
+    @Test
+    public void countsCountedLoopsJumpingBackToThemselves() throws UnknownLabelException, DuplicateLabelException {
+        // given a loop too short to be evaluated in closed form
+        var loop = List.of(
+                new LinInstruction("f0", 1, 3),
+                new LinInstruction("f1", 2, 1),
+                new CountedLoopInstruction(List.of(
+                        new AddInstruction("f2", 3, 3, 1),
+                        new SubInstruction("f3", 1, 1, 2)), 1, 2)
+        );
+        var machine = new Machine(Program.of(loop));
+        machine.setOutput(new MemoryOutputSink());
+
+        // when
+        var profile = Profiler.execute(machine);
+
+        // then
+        assertEquals(3, profile.getCount(2));
+        assertEquals(2, profile.getTaken(2));
+        assertEquals(1, profile.getNotTaken(2));
+        var loops = profile.getHotLoops();
+        assertEquals(1, loops.size());
+        assertEquals("f2", loops.get(0).startLabel());
+        assertEquals("f2", loops.get(0).endLabel());
+        assertEquals(2, loops.get(0).iterations());
+    }
+}
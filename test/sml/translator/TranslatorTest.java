@@ -5,6 +5,8 @@ import sml.Instruction;
 import sml.Machine;
 import sml.Translator;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -58,6 +60,18 @@ public class TranslatorTest {
         assertEquals(6, instructions.size());
     }
 
+    @Test
+    public void returnsSuccessFalseWhenLabelDefinedTwice() {
+        // given
+        var translator = new Translator(pathPrefix + "duplicates.sml");
+
+        // when
+        var success = translator.readAndTranslate(machine.getLabels(), instructions);
+
+        // then
+        assertFalse(success);
+    }
+
     @Test
     public void returnsSuccessFalseWhenFileNotFound() {
         // given
@@ -71,6 +85,46 @@ public class TranslatorTest {
         assertThatLabelsAndInstructionsEmpty();
     }
 
+    @Test
+    public void parsesCompleteFileInParallelCorrectly() {
+        // given
+        var translator = new Translator("sample-files/test1.sml");
+
+        // when
+        var success = translator.readAndTranslateInParallel(machine.getLabels(), instructions);
+
+        // then
+        assertTrue(success);
+        assertEquals("(L1, Thing, L2, L3, L4, L5)", "" + machine.getLabels());
+        assertEquals(6, instructions.size());
+    }
+
+    @Test
+    public void reportsLineNumberOfInvalidInstruction() {
+        // given
+        var translator = new Translator(pathPrefix + "invalid.sml");
+
+        // when
+        var sequentialError = captureError(() -> assertFalse(translator.readAndTranslate(machine.getLabels(), instructions)));
+        var parallelError = captureError(() -> assertFalse(translator.readAndTranslateInParallel(machine.getLabels(), instructions)));
+
+        // then
+        assertTrue(sequentialError.startsWith("Error while parsing the instruction on line 3."));
+        assertTrue(parallelError.startsWith("Error while parsing the instruction on line 3."));
+    }
+
+    private String captureError(Runnable action) {
+        var original = System.err;
+        var error = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(error, true));
+        try {
+            action.run();
+        } finally {
+            System.setErr(original);
+        }
+        return error.toString();
+    }
+
     private void assertThatLabelsAndInstructionsEmpty() {
         assertEquals("()", "" + machine.getLabels());
         assertEquals(0, instructions.size());